@@ -0,0 +1,49 @@
+package com.samples.flironecamera;
+
+import java.util.List;
+
+import okhttp3.MultipartBody;
+import retrofit2.Call;
+import retrofit2.http.Multipart;
+import retrofit2.http.POST;
+import retrofit2.http.Part;
+
+public interface ApiServices {
+    @Multipart
+    @POST("api/image/")
+    Call<String> sendImage(@Part("device_id") String strDevId,
+                           @Part("min_temperature") int minTemperature,
+                           @Part("max_temperature") int maxTemperature,
+                           @Part MultipartBody.Part photoImage,
+                           @Part MultipartBody.Part thermalImage,
+                           @Part MultipartBody.Part sceneStatistics);
+
+    /**
+     * Upload one frame encoded with {@code RadiometricFrameCodec}, exact temperatures instead of JPEG images
+     */
+    @Multipart
+    @POST("api/radiometric/")
+    Call<String> sendRadiometric(@Part("device_id") String strDevId,
+                                 @Part MultipartBody.Part radiometricFrame);
+
+    /**
+     * Upload one subject that left the view: a JSON description of the subject and the frame where it was warmest
+     */
+    @Multipart
+    @POST("api/subject/")
+    Call<String> sendSubject(@Part("device_id") String strDevId,
+                             @Part("min_temperature") int minTemperature,
+                             @Part("max_temperature") int maxTemperature,
+                             @Part MultipartBody.Part subject,
+                             @Part MultipartBody.Part photoImage,
+                             @Part MultipartBody.Part thermalImage);
+
+    /**
+     * Upload several frames in one request, see {@code UploadRecord.toBatchCall} in the app for the manifest
+     */
+    @Multipart
+    @POST("api/image/batch/")
+    Call<String> sendBatch(@Part("device_id") String strDevId,
+                           @Part("manifest") String manifest,
+                           @Part List<MultipartBody.Part> frames);
+}
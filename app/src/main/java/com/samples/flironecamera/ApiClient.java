@@ -0,0 +1,77 @@
+package com.samples.flironecamera;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+/**
+ * The app's single HTTP layer, one long-lived {@link OkHttpClient} shared by every {@link ApiServices} instance.
+ * <p>
+ * Changing the base URL only creates a new thin Retrofit facade on top of the same client, so the connection pool
+ * (warm TCP/TLS connections, HTTP/2 when the server offers it over TLS) and the dispatcher survive it.
+ * Response gzip is handled transparently by OkHttp.
+ */
+final class ApiClient {
+
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static ApiClient instance;
+
+    private final ConnectionMetrics metrics = new ConnectionMetrics();
+    private final OkHttpClient httpClient;
+
+    private String baseUrl;
+    private ApiServices service;
+
+    static synchronized ApiClient getInstance() {
+        if (instance == null) {
+            instance = new ApiClient();
+        }
+        return instance;
+    }
+
+    private ApiClient() {
+        httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .callTimeout(30, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(metrics)
+                .build();
+    }
+
+    /**
+     * Get the API for {@code baseUrl}, the facade is only rebuilt when the URL changed
+     *
+     * @throws IllegalArgumentException if the URL is not a valid http(s) URL
+     */
+    synchronized ApiServices getService(String baseUrl) {
+        if (service == null || !baseUrl.equals(this.baseUrl)) {
+            service = new Retrofit.Builder()
+                    .baseUrl(baseUrl)
+                    .client(httpClient)
+                    .addConverterFactory(ScalarsConverterFactory.create())
+                    .build()
+                    .create(ApiServices.class);
+            this.baseUrl = baseUrl;
+        }
+        return service;
+    }
+
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,213 @@
+package com.samples.flironecamera;
+
+import java.util.Locale;
+
+/**
+ * State of the connection to one camera, kept across sessions by the {@link CameraRegistry}. When a connection drops
+ * it is tried again after a delay that doubles with every failed attempt, from {@link #MIN_BACKOFF_MILLIS} up to
+ * {@link #MAX_BACKOFF_MILLIS}, until it comes back or is {@link #close() closed}. The time from a drop to the first
+ * frame after it is the recovery time, kept in a histogram.
+ * <pre>
+ * DISCONNECTED -connecting-> CONNECTING -connected-> CONNECTED -dropped-> WAITING -connecting-> CONNECTING
+ *                            CONNECTING -failed-> WAITING (or DISCONNECTED when it never was connected)
+ * any -close-> DISCONNECTED
+ * </pre>
+ * Thread safe.
+ */
+class CameraConnection {
+
+    static final long MIN_BACKOFF_MILLIS = 500;
+    static final long MAX_BACKOFF_MILLIS = 30000;
+
+    enum State {
+        DISCONNECTED, CONNECTING, CONNECTED, WAITING
+    }
+
+    /**
+     * Called on the thread that changed the state, don't block
+     */
+    interface Listener {
+        void stateChanged(CameraConnection connection, State state);
+    }
+
+    private final String name;
+    private State state = State.DISCONNECTED;
+    private Listener listener;
+    //A drop is being recovered from, the next connect is a reconnect
+    private boolean recovering;
+    private long droppedNanos;
+    private long backoff = MIN_BACKOFF_MILLIS;
+    private long drops, reconnects, failedAttempts;
+    //Drop to first frame, in microseconds
+    private final LatencyHistogram recovery = new LatencyHistogram();
+    private long lastRecoveryMicros = -1;
+
+    /**
+     * @param name of the camera, for {@link #toString()}
+     */
+    CameraConnection(String name) {
+        this.name = name;
+    }
+
+    synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Whether the connection dropped and is still being recovered, up to the first frame
+     */
+    synchronized boolean isRecovering() {
+        return recovering;
+    }
+
+    /**
+     * An attempt to connect starts, the first one or after {@link #dropped} or {@link #failed}
+     */
+    void connecting() {
+        setState(State.CONNECTING);
+    }
+
+    /**
+     * The camera is connected again, the delays start over
+     */
+    void connected() {
+        synchronized (this) {
+            backoff = MIN_BACKOFF_MILLIS;
+            if (recovering) {
+                reconnects++;
+            }
+        }
+        setState(State.CONNECTED);
+    }
+
+    /**
+     * An attempt to connect failed
+     *
+     * @return milliseconds to wait before the next attempt, or -1 when the camera never was connected and it is not
+     * tried again
+     */
+    long failed() {
+        long delay;
+        synchronized (this) {
+            failedAttempts++;
+            if (!recovering) {
+                delay = -1;
+            } else {
+                delay = backoff;
+                backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+            }
+        }
+        setState(delay < 0 ? State.DISCONNECTED : State.WAITING);
+        return delay;
+    }
+
+    /**
+     * The connection dropped without being asked to, eg the cable was pulled
+     *
+     * @return milliseconds to wait before the first attempt to reconnect
+     */
+    long dropped(long nowNanos) {
+        long delay;
+        synchronized (this) {
+            drops++;
+            if (!recovering) {
+                recovering = true;
+                droppedNanos = nowNanos;
+            }
+            delay = backoff;
+            backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+        }
+        setState(State.WAITING);
+        return delay;
+    }
+
+    /**
+     * A frame arrived, ends a recovery if there is one. Cheap enough to call on every frame.
+     *
+     * @return the recovery time in microseconds, or -1 when it didn't end a recovery
+     */
+    synchronized long frame(long nowNanos) {
+        if (!recovering || state != State.CONNECTED) {
+            return -1;
+        }
+        recovering = false;
+        lastRecoveryMicros = (nowNanos - droppedNanos) / 1000;
+        recovery.record(lastRecoveryMicros);
+        return lastRecoveryMicros;
+    }
+
+    /**
+     * Disconnected on purpose, nothing is tried again
+     */
+    void close() {
+        synchronized (this) {
+            recovering = false;
+            backoff = MIN_BACKOFF_MILLIS;
+        }
+        setState(State.DISCONNECTED);
+    }
+
+    private void setState(State next) {
+        Listener notify;
+        synchronized (this) {
+            if (state == next) {
+                return;
+            }
+            state = next;
+            notify = listener;
+        }
+        if (notify != null) {
+            notify.stateChanged(this, next);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    synchronized long getDrops() {
+        return drops;
+    }
+
+    synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    synchronized long getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    /**
+     * Time from the latest drop to the first frame after it, -1 before the first recovery
+     */
+    synchronized long getLastRecoveryMicros() {
+        return lastRecoveryMicros;
+    }
+
+    LatencyHistogram getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * One line for the UI, eg "CONNECTED, 2 drops, recovery p50 1.2s max 3.4s"
+     */
+    synchronized String summary() {
+        if (drops == 0) {
+            return state.toString();
+        }
+        return String.format(Locale.US, "%s, %d drops, recovery p50 %.1fs max %.1fs", state, drops,
+                recovery.percentile(0.5) / 1e6, recovery.getMaxMicros() / 1e6);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CameraConnection{" + name + ", " + state + ", drops=" + drops + ", reconnects=" + reconnects
+                + ", failedAttempts=" + failedAttempts + ", recovering=" + recovering + ", backoff=" + backoff
+                + "ms, recovery p50=" + recovery.percentile(0.5) + "us p99=" + recovery.percentile(0.99)
+                + "us max=" + recovery.getMaxMicros() + "us}";
+    }
+}
@@ -0,0 +1,161 @@
+package com.samples.flironecamera;
+
+import com.flir.thermalsdk.live.Identity;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cameras found by discovery, each once, keyed by its device id and indexed by its {@link Type}, so a camera found
+ * again on every rescan is not added again and looking one up doesn't scan the list. Every camera keeps its
+ * {@link CameraConnection}, and with it its drops and recovery times, from one session to the next.
+ * <p>
+ * Every method taking an {@link Identity} has a twin taking its device id, the unit tests use those as an Identity
+ * can't be made without the SDK.
+ * <p>
+ * Thread safe.
+ */
+class CameraRegistry {
+
+    enum Type {
+        FLIR_ONE, FLIR_ONE_EMULATOR, CPP_EMULATOR;
+
+        /**
+         * The type of a camera, from its device id
+         */
+        static Type of(String deviceId) {
+            if (deviceId.contains("EMULATED FLIR ONE")) {
+                return FLIR_ONE_EMULATOR;
+            }
+            if (deviceId.contains("C++ Emulator")) {
+                return CPP_EMULATOR;
+            }
+            return FLIR_ONE;
+        }
+    }
+
+    /**
+     * A known camera
+     */
+    static final class Entry {
+        final String deviceId;
+        final Identity identity;
+        final Type type;
+        final CameraConnection connection;
+
+        private Entry(String deviceId, Identity identity) {
+            this.deviceId = deviceId;
+            this.identity = identity;
+            this.type = Type.of(deviceId);
+            this.connection = new CameraConnection(deviceId);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + connection;
+        }
+    }
+
+    //In the order they were found
+    private final Map<String, Entry> byDeviceId = new LinkedHashMap<>();
+    private final Map<Type, List<Entry>> byType = new EnumMap<>(Type.class);
+
+    /**
+     * Add a found camera
+     *
+     * @return false if it was known already
+     */
+    boolean add(Identity identity) {
+        return add(identity.deviceId, identity);
+    }
+
+    synchronized boolean add(String deviceId, Identity identity) {
+        if (byDeviceId.containsKey(deviceId)) {
+            return false;
+        }
+        entry(deviceId, identity);
+        return true;
+    }
+
+    /**
+     * The entry of a camera, added when it is not known yet, eg connected to without discovery
+     */
+    Entry entry(Identity identity) {
+        return entry(identity.deviceId, identity);
+    }
+
+    synchronized Entry entry(String deviceId, Identity identity) {
+        Entry entry = byDeviceId.get(deviceId);
+        if (entry == null) {
+            entry = new Entry(deviceId, identity);
+            byDeviceId.put(deviceId, entry);
+            List<Entry> ofType = byType.get(entry.type);
+            if (ofType == null) {
+                ofType = new ArrayList<>();
+                byType.put(entry.type, ofType);
+            }
+            ofType.add(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * The first found camera of a type, null when there is none
+     */
+    @Nullable
+    Identity get(Type type) {
+        Entry first = first(type);
+        return first == null ? null : first.identity;
+    }
+
+    @Nullable
+    synchronized Entry first(Type type) {
+        List<Entry> ofType = byType.get(type);
+        return ofType == null ? null : ofType.get(0);
+    }
+
+    /**
+     * A copy of the found cameras, in the order they were found
+     */
+    synchronized List<Identity> getIdentities() {
+        List<Identity> identities = new ArrayList<>(byDeviceId.size());
+        for (Entry entry : byDeviceId.values()) {
+            identities.add(entry.identity);
+        }
+        return Collections.unmodifiableList(identities);
+    }
+
+    /**
+     * Forget the found cameras that are not connected, the connected ones keep their entries
+     */
+    synchronized void clear() {
+        //No removeIf, it needs API 24
+        for (Iterator<Entry> entries = byDeviceId.values().iterator(); entries.hasNext(); ) {
+            Entry entry = entries.next();
+            if (entry.connection.getState() == CameraConnection.State.DISCONNECTED) {
+                entries.remove();
+                List<Entry> ofType = byType.get(entry.type);
+                ofType.remove(entry);
+                if (ofType.isEmpty()) {
+                    byType.remove(entry.type);
+                }
+            }
+        }
+    }
+
+    synchronized int size() {
+        return byDeviceId.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CameraRegistry" + byDeviceId.values();
+    }
+}
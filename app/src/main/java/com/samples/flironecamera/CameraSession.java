@@ -0,0 +1,802 @@
+package com.samples.flironecamera;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.flir.thermalsdk.ErrorCode;
+import com.flir.thermalsdk.androidsdk.image.BitmapAndroid;
+import com.flir.thermalsdk.image.Rectangle;
+import com.flir.thermalsdk.image.TemperatureUnit;
+import com.flir.thermalsdk.image.ThermalImage;
+import com.flir.thermalsdk.image.fusion.FusionMode;
+import com.flir.thermalsdk.live.Camera;
+import com.flir.thermalsdk.live.Identity;
+import com.flir.thermalsdk.live.connectivity.ConnectionStatusListener;
+import com.flir.thermalsdk.live.streaming.ThermalImageStreamListener;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One camera, or another source of frames, with everything that processes its frames: its own pipeline stages and
+ * their threads, frame buffers, converter, statistics and auto-ranging, detector, subject tracker, latency tracer
+ * and recorder. The frames of a session are uploaded with its device id.
+ * <p>
+ * Sessions are opened by {@link CameraHandler#openSession(String)}, which shares the cores between them: the
+ * conversion bands of every session run on a lane of the handler's {@link FairExecutor}. A session is used for one
+ * connection, it can't be used anymore once it is disconnected.
+ * <p>
+ * When the connection to the camera drops the session connects again on the handler's reconnect thread, with the
+ * delays of the camera's {@link CameraConnection}, and subscribes to the stream again; the stages keep running
+ * meanwhile. The first frame after it ends the recovery.
+ */
+class CameraSession {
+
+    private static final String TAG = "CameraSession";
+
+    //Per frame events go to the binary EventLog, not to logcat
+    private static final EventLog eventLog = EventLog.getInstance();
+    private static final EventLog.Event IMAGE_RECEIVED = EventLog.event(EventLog.VERBOSE, TAG, "image received");
+    private static final EventLog.Event FRAME_ACQUIRED = EventLog.event(EventLog.DEBUG, TAG, "acquired", "frame", "due");
+    private static final EventLog.Event FRAME_IDLE = EventLog.event(EventLog.DEBUG, TAG, "not needed", "frame");
+    private static final EventLog.Event FRAME_READY = EventLog.event(EventLog.DEBUG, TAG, "ready", "frame", "busy_us");
+    private static final EventLog.Event RECOVERED = EventLog.event(EventLog.INFO, TAG, "recovered", "frame", "recovery_us");
+
+    //Frame ids of session n start at n * 1e9, so the events of all sessions can be told apart
+    private static final long FRAME_ID_STRIDE = 1_000_000_000L;
+
+    private final int number;
+    private final String deviceId;
+    private volatile CameraHandler.StreamDataListener streamDataListener;
+
+    //The camera of this session, null when it streams from another source or while it is reconnecting
+    private volatile Camera camera;
+    private Identity identity;
+    private final CameraRegistry registry;
+    //State of the camera's connection, null when the session streams from another source
+    private volatile CameraConnection connection;
+    private CameraConnection.Listener connectionListener;
+    private ConnectionStatusListener connectionStatusListener;
+    //Connects again after a drop
+    private final ScheduledExecutorService reconnector;
+    private ScheduledFuture<?> reconnect;
+    //Set by disconnect(), the camera is not connected again
+    private boolean closed;
+
+    //Fixed range of the grayscale bitmap when auto-ranging is off
+    private static final double DEFAULT_MIN_TEMPERATURE = 30.0;
+    private static final double DEFAULT_MAX_TEMPERATURE = 45.0;
+
+    //Maps the temperatures to a grayscale bitmap, the fixed range above or the auto-range, rows are split in bands
+    // converted on the session's lane
+    private final FairExecutor.Lane conversionLane;
+    private final TemperatureConverter temperatureConverter;
+
+    //Scene statistics, counted while converting, and the auto-ranging they drive
+    private final FrameStatistics frameStatistics = new FrameStatistics();
+    //The 1st to 99th percentile, smoothed over about 10 frames, at least 5 degrees, narrows 0.5 degree late
+    private final AutoRange autoRange = new AutoRange(0.1, 5.0, 0.01, 0.99, 0.5, DEFAULT_MIN_TEMPERATURE, DEFAULT_MAX_TEMPERATURE);
+    private volatile boolean autoRanging;
+
+    //Temperature bitmaps and pixel buffers are recycled between frames
+    private final FramePool framePool;
+
+    //Skin temperature regions of at least 200 full resolution pixels, the 16 largest
+    private static final int HOT_SPOT_MIN_AREA = 200;
+    private final HotSpotDetector hotSpotDetector = new HotSpotDetector(34.0, HOT_SPOT_MIN_AREA, 16);
+
+    //Resolution of the detection and radiometric uploads, full resolution by default
+    private volatile FrameBinner binner = new FrameBinner(1, FrameBinner.MODE_MEAN);
+    private FrameBinner appliedBinner = binner;
+
+    //Products each frame has to have, registered by the consumers
+    private final FrameDemand frameDemand = new FrameDemand();
+    //Products that are computed from the temperature matrix
+    private static final int NEEDS_TEMPERATURES = FrameDemand.TEMPERATURES | FrameDemand.TEMPERATURE_BITMAP
+            | FrameDemand.STATISTICS | FrameDemand.HOT_SPOTS | FrameDemand.MEASUREMENTS;
+
+    //acquire -> convert -> analyze, the convert and analyze stages keep the latest 2 frames waiting for them
+    private final StageStats acquireStats = new StageStats("acquire", 0);
+    private final PipelineStage<FrameProducts> convertStage = new PipelineStage<>("convert", 2,
+            PipelineStage.DROP_OLDEST, this::convert, FrameProducts::recycle);
+    private final PipelineStage<FrameProducts> analyzeStage = new PipelineStage<>("analyze", 2,
+            PipelineStage.DROP_OLDEST, this::analyze, FrameProducts::recycle);
+    private final FramePipeline pipeline = new FramePipeline()
+            .add(acquireStats)
+            .add(convertStage.getStats())
+            .add(analyzeStage.getStats());
+
+    //Frames from another source than the camera, null when streaming from the camera
+    private volatile FrameSource frameSource;
+    //Appends the temperatures of the frames to a recording, null when not recording
+    private static final int RECORDING_KEYFRAME_INTERVAL = 30;
+    private volatile FrameRecorder recorder;
+
+    //Time from the SDK callback to every later hand-off of a frame
+    private final LatencyTracer latencyTracer;
+
+    //CPU time spent on a frame in all stages
+    private long frames;
+    private long processingNanos;
+
+    //A subject's event is sent when it was out of view for 5 frames, it has to be seen on 3 frames
+    private final SubjectTracker subjectTracker = new SubjectTracker(5, 3);
+
+    /**
+     * @param number         of the session, sets the range of its frame ids
+     * @param framePoolSize  number of idle frame buffers kept for reuse, should cover the frames in flight between
+     *                       the camera, the UI and the uploader
+     * @param conversionLane converts the bands of the session's frames, shut down with the session
+     * @param bands          number of row bands a frame is split in for the conversion
+     * @param registry       keeps the state of the connection to the camera
+     * @param reconnector    runs the attempts to connect again after a drop
+     */
+    CameraSession(int number, String deviceId, int framePoolSize, FairExecutor.Lane conversionLane, int bands,
+                  CameraRegistry registry, ScheduledExecutorService reconnector) {
+        this.number = number;
+        this.registry = registry;
+        this.reconnector = reconnector;
+        this.deviceId = deviceId;
+        this.framePool = new FramePool(framePoolSize);
+        this.conversionLane = conversionLane;
+        this.temperatureConverter = new TemperatureConverter(DEFAULT_MIN_TEMPERATURE, DEFAULT_MAX_TEMPERATURE, bands,
+                conversionLane);
+        this.latencyTracer = new LatencyTracer(number * FRAME_ID_STRIDE);
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    /**
+     * The device id its frames are uploaded with
+     */
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * The connected camera, null when the session streams from another source
+     */
+    @Nullable
+    public Identity getIdentity() {
+        return identity;
+    }
+
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * The detector run on every frame, its threshold and min area can be changed from any thread
+     */
+    public HotSpotDetector getHotSpotDetector() {
+        return hotSpotDetector;
+    }
+
+    /**
+     * Get one event per subject that leaves the view, called on the analyze thread
+     */
+    public void setSubjectListener(SubjectTracker.Listener listener) {
+        subjectTracker.setListener(listener);
+    }
+
+    public SubjectTracker getSubjectTracker() {
+        return subjectTracker;
+    }
+
+    /**
+     * The stages of the frames, the consumers add theirs after the analyze stage
+     */
+    public FramePipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Latencies of the frames since the SDK callback, the consumers mark their own hand-offs with
+     * {@link FrameDataHolder#trace}
+     */
+    public LatencyTracer getLatencyTracer() {
+        return latencyTracer;
+    }
+
+    /**
+     * Register what a consumer needs from the frames, only products that are needed are computed
+     */
+    public FrameDemand getFrameDemand() {
+        return frameDemand;
+    }
+
+    /**
+     * Analyse frames at a lower resolution, every {@code factor x factor} pixels become one. The bitmaps, the
+     * measurements and the scene statistics stay at full resolution.
+     *
+     * @param factor 1, 2 or 4
+     * @param mode   {@link FrameBinner#MODE_MEAN} or {@link FrameBinner#MODE_MAX}
+     */
+    public void setBinning(int factor, int mode) {
+        binner = new FrameBinner(factor, mode);
+    }
+
+    /**
+     * Average CPU time per frame since the binning last changed, in ms
+     */
+    public synchronized double getAverageProcessingMillis() {
+        return frames == 0 ? 0 : processingNanos / 1e6 / frames;
+    }
+
+    /**
+     * Map the scene's own temperature range to the grayscale bitmap instead of the fixed 30-45 degrees, it takes
+     * effect from the next frame
+     */
+    public void setAutoRanging(boolean enabled) {
+        autoRanging = enabled;
+    }
+
+    public AutoRange getAutoRange() {
+        return autoRange;
+    }
+
+    /**
+     * Get the state changes of the connection to the camera, eg to show them, set before {@link #connect}
+     */
+    public void setConnectionListener(CameraConnection.Listener listener) {
+        connectionListener = listener;
+    }
+
+    /**
+     * The connection to the camera, null before {@link #connect} and when the session streams from another source
+     */
+    @Nullable
+    public CameraConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Connect to the camera, blocking. When the connection drops later on it is connected again, the
+     * {@code connectionStatusListener} is told about every drop.
+     *
+     * @throws IOException if the camera can't be connected, it isn't tried again then
+     */
+    public void connect(Identity identity, ConnectionStatusListener connectionStatusListener) throws IOException {
+        this.identity = identity;
+        this.connectionStatusListener = connectionStatusListener;
+        CameraConnection connection = registry.entry(identity).connection;
+        connection.setListener(connectionListener);
+        this.connection = connection;
+        connection.connecting();
+        Camera connecting = new Camera();
+        try {
+            connecting.connect(identity, dropListener);
+        } catch (IOException e) {
+            connection.failed();
+            throw e;
+        }
+        camera = connecting;
+        connection.connected();
+    }
+
+    /**
+     * Told by the SDK when the camera is disconnected, by {@link #disconnect()} or because the connection dropped
+     */
+    private final ConnectionStatusListener dropListener = new ConnectionStatusListener() {
+        @Override
+        public void onDisconnected(@Nullable ErrorCode errorCode) {
+            connectionStatusListener.onDisconnected(errorCode);
+            long delay;
+            synchronized (CameraSession.this) {
+                if (closed) {
+                    return;
+                }
+                camera = null;
+                delay = connection.dropped(System.nanoTime());
+                reconnect = reconnector.schedule(CameraSession.this::reconnect, delay, TimeUnit.MILLISECONDS);
+            }
+            Log.i(TAG, "connection dropped, " + errorCode + ", connecting again in " + delay + "ms, " + connection);
+        }
+    };
+
+    /**
+     * Connect to the camera again and subscribe to its stream, on the reconnect thread
+     */
+    private void reconnect() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        connection.connecting();
+        Camera connecting = new Camera();
+        try {
+            connecting.connect(identity, dropListener);
+        } catch (IOException e) {
+            long delay = connection.failed();
+            synchronized (this) {
+                if (!closed) {
+                    reconnect = reconnector.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+            Log.d(TAG, "reconnect failed, " + e + ", trying again in " + delay + "ms");
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                //Disconnected while connecting
+                connecting.disconnect();
+                return;
+            }
+            camera = connecting;
+        }
+        connection.connected();
+        if (streamDataListener != null) {
+            connecting.subscribeStream(thermalImageStreamListener);
+        }
+        Log.i(TAG, "reconnected " + connection);
+    }
+
+    /**
+     * Stop streaming, disconnect the camera and stop the session's threads
+     */
+    public void disconnect() {
+        FrameSource source = frameSource;
+        if (source != null) {
+            source.stop();
+            frameSource = null;
+        }
+        Camera closing;
+        synchronized (this) {
+            closed = true;
+            if (reconnect != null) {
+                reconnect.cancel(false);
+            }
+            closing = camera;
+            camera = null;
+        }
+        if (closing != null) {
+            if (closing.isGrabbing()) {
+                closing.unsubscribeAllStreams();
+            }
+            closing.disconnect();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        stopRecording();
+        convertStage.stop();
+        analyzeStage.stop();
+        conversionLane.shutdown();
+        //Nobody is in view anymore
+        subjectTracker.clear();
+    }
+
+    /**
+     * Start a stream of {@link ThermalImage}s images from a FLIR ONE or emulator
+     */
+    public void startStream(CameraHandler.StreamDataListener listener) {
+        this.streamDataListener = listener;
+        convertStage.start();
+        analyzeStage.start();
+        Camera streaming = camera;
+        //Otherwise it is reconnecting, and subscribes once it is back
+        if (streaming != null) {
+            streaming.subscribeStream(thermalImageStreamListener);
+        }
+    }
+
+    /**
+     * Start a stream of frames from another source than a camera, eg a {@link SyntheticFrameSource} or a
+     * {@link RecordedFrameSource}, {@link #disconnect()} stops it
+     *
+     * @throws IOException if the source can't be opened
+     */
+    public void startStream(FrameSource source, CameraHandler.StreamDataListener listener) throws IOException {
+        this.streamDataListener = listener;
+        convertStage.start();
+        analyzeStage.start();
+        try {
+            source.start(frame -> acquire(frame, null));
+        } catch (IOException e) {
+            convertStage.stop();
+            analyzeStage.stop();
+            throw e;
+        }
+        frameSource = source;
+    }
+
+    /**
+     * Append the full resolution temperatures of every frame that has them to {@code file}, in the format
+     * {@link RecordedFrameSource} plays. Register {@link FrameDemand#TEMPERATURES} to record every frame.
+     *
+     * @throws IOException if the file can't be opened
+     */
+    public void startRecording(File file) throws IOException {
+        stopRecording();
+        recorder = new FrameRecorder(file, deviceId, RECORDING_KEYFRAME_INTERVAL);
+    }
+
+    public void stopRecording() {
+        FrameRecorder stopped = recorder;
+        recorder = null;
+        if (stopped == null) {
+            return;
+        }
+        try {
+            stopped.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not close " + stopped.getFile(), e);
+        }
+        Log.d(TAG, "stopRecording(), " + stopped);
+    }
+
+    /**
+     * Stop a stream of {@link ThermalImage}s images from a FLIR ONE or emulator
+     */
+    public void stopStream(ThermalImageStreamListener listener) {
+        Camera current = camera;
+        //Null while reconnecting
+        if (current != null) {
+            current.unsubscribeStream(listener);
+        }
+    }
+
+    private void withImage(ThermalImageStreamListener listener, Camera.Consumer<ThermalImage> functionToRun) {
+        Camera current = camera;
+        //Dropped meanwhile
+        if (current != null) {
+            current.withImage(listener, functionToRun);
+        }
+    }
+
+    /**
+     * Called whenever there is a new Thermal Image available, should be used in conjunction with {@link Camera.Consumer}
+     */
+    private final ThermalImageStreamListener thermalImageStreamListener = new ThermalImageStreamListener() {
+        @Override
+        public void onImageReceived() {
+            //Will be called on a non-ui thread
+            eventLog.log(IMAGE_RECEIVED);
+            withImage(this, handleIncomingImage);
+        }
+    };
+
+    /**
+     * Take a new binning into use, on the analyze thread
+     */
+    private FrameBinner selectBinner() {
+        FrameBinner selected = binner;
+        if (selected != appliedBinner) {
+            appliedBinner = selected;
+            int factor = selected.getFactor();
+            hotSpotDetector.setMinArea(HOT_SPOT_MIN_AREA / (factor * factor));
+            synchronized (this) {
+                Log.d(TAG, "binning " + factor + "x" + factor + ", " + getAverageProcessingMillis() + "ms per frame before");
+                frames = 0;
+                processingNanos = 0;
+            }
+        }
+        return selected;
+    }
+
+    private synchronized void addProcessingTime(long nanos) {
+        frames++;
+        processingNanos += nanos;
+    }
+
+    /**
+     * Pick the range of the next frame, on the convert thread
+     */
+    private void updateRange() {
+        if (autoRanging) {
+            if (autoRange.update(frameStatistics)) {
+                temperatureConverter.setRange(autoRange.getMin(), autoRange.getMax());
+            }
+        } else if (temperatureConverter.getMinTemperature() != DEFAULT_MIN_TEMPERATURE
+                || temperatureConverter.getMaxTemperature() != DEFAULT_MAX_TEMPERATURE) {
+            temperatureConverter.setRange(DEFAULT_MIN_TEMPERATURE, DEFAULT_MAX_TEMPERATURE);
+            autoRange.reset(DEFAULT_MIN_TEMPERATURE, DEFAULT_MAX_TEMPERATURE);
+        }
+    }
+
+    /**
+     * Acquire stage: copy what is due out of the Thermal Image, it is only valid inside this callback, and hand the
+     * rest of the work to the convert stage
+     */
+    private final Camera.Consumer<ThermalImage> handleIncomingImage = new Camera.Consumer<ThermalImage>() {
+        @Override
+        public void accept(ThermalImage thermalImage) {
+            //Will be called on a non-ui thread,
+            // extract information on the background thread and send the specific information to the UI thread
+            acquire(new ThermalImageFrame(thermalImage), thermalImage);
+        }
+    };
+
+    /**
+     * Acquire stage of every source
+     *
+     * @param thermalImage the frame's image when it comes from the camera, for the photo and the MSX render
+     */
+    private void acquire(FrameSource.Frame source, @Nullable ThermalImage thermalImage) {
+        FrameTrace trace = latencyTracer.start();
+        long startNanos = trace.getAcquiredNanos();
+        acquireStats.offered();
+        CameraConnection connected = connection;
+        if (connected != null) {
+            //The first frame after a drop ends the recovery
+            long recoveryMicros = connected.frame(startNanos);
+            if (recoveryMicros >= 0) {
+                eventLog.log(RECOVERED, trace.getFrameId(), recoveryMicros);
+            }
+        }
+        int due = frameDemand.due(SystemClock.elapsedRealtime());
+        if (due == 0) {
+            //Nobody needs this frame, don't even read the temperatures
+            eventLog.log(FRAME_IDLE, trace.getFrameId());
+            acquireStats.dropped();
+            return;
+        }
+
+        //The size depends on the camera model, eg 480x640 for a FLIR ONE Pro
+        eventLog.log(FRAME_ACQUIRED, trace.getFrameId(), due);
+        FrameProducts products = new FrameProducts(trace, due, source.getWidth(), source.getHeight(),
+                source.getTimestamp());
+        if ((due & NEEDS_TEMPERATURES) != 0 || recorder != null) {
+            products.temperatures = source.getTemperatures();
+        }
+        if ((due & FrameDemand.MSX) != 0 && thermalImage != null) {
+            products.msxBitmap = renderMsx(thermalImage);
+        }
+        if ((due & FrameDemand.PHOTO) != 0 && thermalImage != null) {
+            //Get a bitmap with the visual image, it might have different dimensions then the bitmap from THERMAL_ONLY
+            products.photo = BitmapAndroid.createBitmap(thermalImage.getFusion().getPhoto()).getBitMap();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        products.busyNanos += nanos;
+        acquireStats.done(nanos);
+        convertStage.offer(products);
+    }
+
+    /**
+     * A camera frame, the temperatures are read from the SDK when asked for
+     */
+    private static final class ThermalImageFrame implements FrameSource.Frame {
+        private final ThermalImage thermalImage;
+        private final long timestamp = System.currentTimeMillis();
+
+        ThermalImageFrame(ThermalImage thermalImage) {
+            this.thermalImage = thermalImage;
+        }
+
+        @Override
+        public int getWidth() {
+            return thermalImage.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return thermalImage.getHeight();
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double[] getTemperatures() {
+            // Set temperature unit and get the values
+            thermalImage.setTemperatureUnit(TemperatureUnit.CELSIUS);
+//            Log.d(TAG, "tempBefore: " + thermalImage.getValueAt(new Point(216, 395)));
+            Rectangle rect = new Rectangle(0, 0, thermalImage.getWidth(), thermalImage.getHeight());
+//            Log.d(TAG, "temperature: " + pixelsTemp[216 + 395 * 480]);
+            return thermalImage.getValues(rect);
+        }
+    }
+
+    /**
+     * Bitmap with only IR data, rendered by the SDK
+     */
+    private static Bitmap renderMsx(ThermalImage thermalImage) {
+//        final List<Palette> palettes = PaletteManager.getDefaultPalettes();
+        /*
+            0: Iron
+            1: Gray
+            2: Rainbow
+            3: Contrast
+            from Flir-one android default app
+         */
+//        thermalImage.setPalette(palettes.get(0));  // Somehow this causes temperature reading error, probably the pixels temperature are converted
+        thermalImage.getFusion().setFusionMode(FusionMode.THERMAL_ONLY);
+        //thermalImage.getFusion().setFusionMode(FusionMode.MSX);
+        Bitmap msxBitmap = BitmapAndroid.createBitmap(thermalImage.getImage()).getBitMap();
+//        // for debugging: save to a file
+//        try {
+//            Log.i(TAG, "filename: " + Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS).getPath() + "/msxImage.jpg");
+//            thermalImage.saveAs(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS).getPath() + "/msxImage.jpg");
+//        } catch (IOException e) {
+//            e.printStackTrace();
+//        }
+        return msxBitmap;
+    }
+
+    /**
+     * Convert stage: scale the temperatures to a grayscale bitmap, counting the scene statistics in the same pass,
+     * and pick the range of the next frame. Owns the converter, the statistics and the auto-ranging.
+     */
+    private boolean convert(FrameProducts products) {
+        long startNanos = System.nanoTime();
+        products.minTemperature = temperatureConverter.getMinTemperature();
+        products.maxTemperature = temperatureConverter.getMaxTemperature();
+        int width = products.width;
+        int height = products.height;
+        if ((products.due & FrameDemand.TEMPERATURE_BITMAP) != 0) {
+            products.temperaturePixels = framePool.acquirePixels(width * height);
+            if (!temperatureConverter.convert(products.temperatures, products.temperaturePixels, width, height,
+                    frameStatistics)) {
+                //Interrupted by stop(), the bands have finished but the pixels and statistics are incomplete
+                return false;
+            }
+            products.temperatureBitmap = framePool.acquireBitmap(width, height);
+            products.temperatureBitmap.setPixels(products.temperaturePixels, 0, width, 0, 0, width, height);
+            if ((products.due & FrameDemand.PHOTO) != 0 && products.photo == null) {
+                //Sources without a visual camera stand in the thermal image, so image and subject uploads still work,
+                // the same pooled bitmap instead of a copy per frame
+                products.photo = products.temperatureBitmap;
+            }
+//            Log.d(TAG, "temperature: " + Color.red(temperatureBitmap.getPixel(216, 395)));
+        } else if ((products.due & FrameDemand.STATISTICS) != 0) {
+            //Without the bitmap the statistics need a pass of their own
+            frameStatistics.reset();
+            for (int i = 0; i < width * height; i++) {
+                frameStatistics.add(products.temperatures[i]);
+            }
+        }
+        if ((products.due & (FrameDemand.TEMPERATURE_BITMAP | FrameDemand.STATISTICS)) != 0) {
+            products.statistics = frameStatistics.snapshot();
+            updateRange();
+        }
+        products.busyNanos += System.nanoTime() - startNanos;
+        products.trace.mark(LatencyTracer.CONVERTED);
+        analyzeStage.offer(products);
+        return true;
+    }
+
+    /**
+     * Analyze stage: binning, hot spots, measurements and subject tracking, then the frame goes to the listener.
+     * Owns the detector, the binner and the subject tracker.
+     */
+    private boolean analyze(FrameProducts products) {
+        long startNanos = System.nanoTime();
+        int width = products.width;
+        int height = products.height;
+        if ((products.due & (FrameDemand.TEMPERATURES | FrameDemand.HOT_SPOTS)) != 0) {
+            FrameBinner binner = selectBinner();
+            int factor = binner.getFactor();
+            products.analysisWidth = binner.binnedSize(width);
+            products.analysisHeight = binner.binnedSize(height);
+            if (factor > 1) {
+                products.analysisTemperatures = framePool.acquireValues(products.analysisWidth * products.analysisHeight);
+                binner.bin(products.temperatures, width, height, products.analysisTemperatures);
+            } else {
+                products.analysisTemperatures = products.temperatures;
+            }
+            if ((products.due & FrameDemand.HOT_SPOTS) != 0) {
+                //Detection runs at the analysis resolution, its regions are scaled back to full resolution
+                HotSpotDetector.Region[] hotRegions = hotSpotDetector.detect(products.analysisTemperatures,
+                        products.analysisWidth, products.analysisHeight);
+                if (factor > 1) {
+                    for (int i = 0; i < hotRegions.length; i++) {
+                        hotRegions[i] = hotRegions[i].scaled(factor, width, height);
+                    }
+                }
+                products.hotRegions = hotRegions;
+            }
+        }
+        if ((products.due & FrameDemand.MEASUREMENTS) != 0) {
+            products.query = framePool.acquireQuery().build(products.temperatures, width, height);
+        }
+        FrameRecorder recording = recorder;
+        if (recording != null && products.temperatures != null) {
+            try {
+                recording.record(products.temperatures, width, height, products.timestamp);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not record to " + recording.getFile(), e);
+                stopRecording();
+            }
+        }
+
+        FrameDataHolder frame = new FrameDataHolder(products.msxBitmap, products.photo, products.temperatureBitmap,
+                (int) products.minTemperature, (int) products.maxTemperature,
+                products.temperatures, width, height,
+                products.analysisTemperatures, products.analysisWidth, products.analysisHeight,
+                products.timestamp, products.trace, products.hotRegions, products.query, products.statistics, products.temperaturePixels,
+                framePool);
+        //The buffers belong to the frame now, a failure from here on must not recycle them with the products
+        products.handedOver();
+        if (frame.hotRegions != null) {
+            subjectTracker.onFrame(frame);
+        }
+        long busyNanos = products.busyNanos + System.nanoTime() - startNanos;
+        addProcessingTime(busyNanos);
+        eventLog.log(FRAME_READY, frame.trace.getFrameId(), busyNanos / 1000);
+        frame.trace.mark(LatencyTracer.ANALYZED);
+        streamDataListener.images(frame);
+        return true;
+    }
+
+    /**
+     * The products of one frame on their way through the stages, each stage fills in its own and hands the products
+     * to the next one, which makes them visible to its thread
+     */
+    private final class FrameProducts {
+        final FrameTrace trace;
+        final int due;
+        final int width;
+        final int height;
+        final long timestamp;
+        //CPU time spent on this frame in all stages so far
+        long busyNanos;
+
+        double[] temperatures;
+        Bitmap msxBitmap, photo;
+
+        double minTemperature, maxTemperature;
+        int[] temperaturePixels;
+        Bitmap temperatureBitmap;
+        FrameStatistics.Snapshot statistics;
+
+        double[] analysisTemperatures;
+        int analysisWidth, analysisHeight;
+        HotSpotDetector.Region[] hotRegions;
+        TemperatureQuery query;
+
+        FrameProducts(FrameTrace trace, int due, int width, int height, long timestamp) {
+            this.trace = trace;
+            this.due = due;
+            this.timestamp = timestamp;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * The buffers were handed to a {@link FrameDataHolder}, which releases them from now on
+         */
+        void handedOver() {
+            temperatureBitmap = null;
+            temperaturePixels = null;
+            query = null;
+            temperatures = null;
+            analysisTemperatures = null;
+            msxBitmap = null;
+            photo = null;
+        }
+
+        /**
+         * The frame was dropped by a stage, hand its buffers back
+         */
+        void recycle() {
+            framePool.recycle(temperatureBitmap);
+            framePool.recycle(temperaturePixels);
+            framePool.recycle(query);
+            if (analysisTemperatures != temperatures) {
+                framePool.recycle(analysisTemperatures);
+            }
+            if (msxBitmap != null) {
+                msxBitmap.recycle();
+            }
+            if (photo != null && photo != temperatureBitmap) {
+                photo.recycle();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CameraSession{" + number + ", " + deviceId + ", " + (identity != null ? identity.deviceId : frameSource) + "}";
+    }
+}
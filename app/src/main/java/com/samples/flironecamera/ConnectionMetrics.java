@@ -0,0 +1,139 @@
+package com.samples.flironecamera;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Connection level numbers of the shared OkHttp client: how often a pooled connection is reused and how long
+ * DNS, TCP connect and the TLS handshake take when a new one is needed.
+ * <p>
+ * Install with {@link okhttp3.OkHttpClient.Builder#eventListenerFactory(EventListener.Factory)}, every call gets its
+ * own listener that adds to the shared totals.
+ */
+class ConnectionMetrics implements EventListener.Factory {
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong http2Connections = new AtomicLong();
+    private final AtomicLong dnsCount = new AtomicLong();
+    private final AtomicLong dnsNanos = new AtomicLong();
+    private final AtomicLong connectNanos = new AtomicLong();
+    private final AtomicLong tlsCount = new AtomicLong();
+    private final AtomicLong tlsNanos = new AtomicLong();
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallListener();
+    }
+
+    long getCalls() {
+        return calls.get();
+    }
+
+    long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    /**
+     * Share of calls that got an already open connection from the pool, 0..1
+     */
+    double getReuseRatio() {
+        long acquired = connectionsAcquired.get();
+        return acquired == 0 ? 0 : (double) (acquired - connectionsOpened.get()) / acquired;
+    }
+
+    double getAverageDnsMillis() {
+        return average(dnsNanos, dnsCount);
+    }
+
+    double getAverageConnectMillis() {
+        return average(connectNanos, connectionsOpened);
+    }
+
+    double getAverageTlsMillis() {
+        return average(tlsNanos, tlsCount);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ConnectionMetrics{calls=%d, failed=%d, reuse=%.2f, opened=%d, http2=%d, dns=%.1fms, connect=%.1fms, tls=%.1fms}",
+                calls.get(), failedCalls.get(), getReuseRatio(), connectionsOpened.get(), http2Connections.get(),
+                getAverageDnsMillis(), getAverageConnectMillis(), getAverageTlsMillis());
+    }
+
+    private static double average(AtomicLong nanos, AtomicLong count) {
+        long n = count.get();
+        return n == 0 ? 0 : nanos.get() / 1e6 / n;
+    }
+
+    /**
+     * Timings of one call, OkHttp calls it from the thread executing the call
+     */
+    private final class CallListener extends EventListener {
+        private long dnsStart, connectStart, tlsStart;
+
+        @Override
+        public void callStart(Call call) {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsNanos.addAndGet(System.nanoTime() - dnsStart);
+            dnsCount.incrementAndGet();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsNanos.addAndGet(System.nanoTime() - tlsStart);
+            tlsCount.incrementAndGet();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connectNanos.addAndGet(System.nanoTime() - connectStart);
+            connectionsOpened.incrementAndGet();
+            if (protocol == Protocol.HTTP_2) {
+                http2Connections.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            connectionsAcquired.incrementAndGet();
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            failedCalls.incrementAndGet();
+        }
+    }
+}
@@ -12,18 +12,112 @@ package com.samples.flironecamera;
 
 import android.graphics.Bitmap;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds everything extracted from one ThermalImage.
+ * <p>
+ * A holder is reference counted, it starts with one reference owned by whoever created it. Every consumer that keeps
+ * the frame beyond the call it was handed in (the UI showing it, the uploader encoding it) has to {@link #retain()}
+ * it and {@link #release()} it when done. When the last reference is released the buffers go back to the
+ * {@link FramePool} and the holder must not be used anymore.
+ */
 class FrameDataHolder {
 
     public final Bitmap msxBitmap;
+    // The visual photo, or the same bitmap as scaledTemperatureBitmap for sources without a visual camera
     public final Bitmap dcBitmap;
     public final Bitmap scaledTemperatureBitmap;
     public final int minTemp, maxTemp; // Min max temperature in Celcius
 
-    FrameDataHolder(Bitmap msxBitmap, Bitmap dcBitmap, Bitmap temperatureBitmap, int minTemp, int maxTemp){
+    // Raw temperatures in Celcius, row-major, width * height values
+    public final double[] temperatures;
+    public final int width, height;
+    // Temperatures at the analysis resolution, the same array as temperatures unless the frame was binned
+    public final double[] analysisTemperatures;
+    public final int analysisWidth, analysisHeight;
+    public final long timestamp; // Wall clock time in ms when the frame was received
+    // Frame id and the hand-off times since the SDK callback
+    public final FrameTrace trace;
+    // Warm regions found by the HotSpotDetector, largest first
+    public final HotSpotDetector.Region[] hotRegions;
+    // Spot, box and line measurements on the temperatures, valid until the frame is released
+    public final TemperatureQuery query;
+    // Min, max, mean and percentiles of the scene, minTemp and maxTemp are the range of the bitmap
+    public final FrameStatistics.Snapshot statistics;
+
+    private final int[] temperaturePixels;
+    private final FramePool pool;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    FrameDataHolder(Bitmap msxBitmap, Bitmap dcBitmap, Bitmap temperatureBitmap, int minTemp, int maxTemp,
+                    double[] temperatures, int width, int height,
+                    double[] analysisTemperatures, int analysisWidth, int analysisHeight, long timestamp,
+                    FrameTrace trace, HotSpotDetector.Region[] hotRegions,
+                    TemperatureQuery query, FrameStatistics.Snapshot statistics, int[] temperaturePixels, FramePool pool) {
         this.msxBitmap = msxBitmap;
         this.dcBitmap = dcBitmap;
         this.scaledTemperatureBitmap = temperatureBitmap;
         this.minTemp = minTemp;
         this.maxTemp = maxTemp;
+        this.temperatures = temperatures;
+        this.width = width;
+        this.height = height;
+        this.analysisTemperatures = analysisTemperatures;
+        this.analysisWidth = analysisWidth;
+        this.analysisHeight = analysisHeight;
+        this.timestamp = timestamp;
+        this.trace = trace;
+        this.hotRegions = hotRegions;
+        this.query = query;
+        this.statistics = statistics;
+        this.temperaturePixels = temperaturePixels;
+        this.pool = pool;
+    }
+
+    /**
+     * Take one more reference to this frame
+     */
+    FrameDataHolder retain() {
+        int count;
+        do {
+            count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("retain() on a released frame");
+            }
+        } while (!refCount.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Drop one reference, the last one hands the buffers back to the pool
+     */
+    void release() {
+        int count = refCount.decrementAndGet();
+        if (count > 0) {
+            return;
+        }
+        if (count < 0) {
+            throw new IllegalStateException("release() on a released frame");
+        }
+        if (pool != null) {
+            pool.recycle(scaledTemperatureBitmap);
+            pool.recycle(temperaturePixels);
+            pool.recycle(query);
+            if (analysisTemperatures != temperatures) {
+                pool.recycle(analysisTemperatures);
+            }
+        }
+        //SDK bitmaps are created per frame, free their native memory now instead of waiting for the GC
+        if (msxBitmap != null) {
+            msxBitmap.recycle();
+        }
+        if (dcBitmap != null && dcBitmap != scaledTemperatureBitmap) {
+            dcBitmap.recycle();
+        }
+    }
+
+    int getRefCount() {
+        return refCount.get();
     }
 }
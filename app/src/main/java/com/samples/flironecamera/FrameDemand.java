@@ -0,0 +1,109 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which products of a frame are needed, and how often, so the frame pipeline only computes what some consumer will
+ * use. Every consumer registers a {@link Need} with the products it uses and the rate it wants them at; for each new
+ * frame {@link #due(long)} returns the products of all needs that are due. A product computed for one consumer is
+ * shared with the others through the {@link FrameDataHolder}.
+ * <p>
+ * Can be used from any thread.
+ */
+class FrameDemand {
+
+    static final int MSX = 1;                   // THERMAL_ONLY bitmap rendered by the SDK
+    static final int PHOTO = 1 << 1;            // visual camera bitmap
+    static final int TEMPERATURES = 1 << 2;     // temperature matrix, also at the analysis resolution
+    static final int TEMPERATURE_BITMAP = 1 << 3;
+    static final int STATISTICS = 1 << 4;
+    static final int HOT_SPOTS = 1 << 5;
+    static final int MEASUREMENTS = 1 << 6;     // TemperatureQuery
+
+    private static final int PRODUCT_COUNT = 7;
+
+    /**
+     * What one consumer needs, change it with {@link #set}
+     */
+    static final class Need {
+        final String name;
+        int products;
+        long intervalMillis;
+        long lastServed = Long.MIN_VALUE / 2;
+
+        Need(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<Need> needs = new ArrayList<>();
+    private long frames, idleFrames;
+    private final long[] produced = new long[PRODUCT_COUNT];
+
+    /**
+     * Add a consumer that needs nothing yet
+     */
+    synchronized Need register(String name) {
+        Need need = new Need(name);
+        needs.add(need);
+        return need;
+    }
+
+    synchronized void unregister(Need need) {
+        needs.remove(need);
+    }
+
+    /**
+     * @param products {@link #PHOTO} etc or-ed together, 0 when nothing is needed right now
+     * @param rate     in Hz, 0 or less for every frame
+     */
+    synchronized void set(Need need, int products, double rate) {
+        long interval = rate > 0 ? (long) (1000 / rate) : 0;
+        //Counted from the last frame that served the need, so a shorter interval can make it due with the next frame
+        need.products = products;
+        need.intervalMillis = interval;
+    }
+
+    /**
+     * The products a frame arriving at {@code nowMillis} has to have, the needs served are due again one interval
+     * later
+     */
+    synchronized int due(long nowMillis) {
+        int products = 0;
+        for (Need need : needs) {
+            if (need.products != 0 && nowMillis - need.lastServed >= need.intervalMillis) {
+                products |= need.products;
+                need.lastServed = nowMillis;
+            }
+        }
+        frames++;
+        if (products == 0) {
+            idleFrames++;
+        }
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            if ((products & (1 << i)) != 0) {
+                produced[i]++;
+            }
+        }
+        return products;
+    }
+
+    synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Frames nobody needed anything from
+     */
+    synchronized long getIdleFrames() {
+        return idleFrames;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameDemand{frames=" + frames + ", idle=" + idleFrames + ", msx=" + produced[0] + ", photo=" + produced[1]
+                + ", temperatures=" + produced[2] + ", bitmap=" + produced[3] + ", statistics=" + produced[4]
+                + ", hotSpots=" + produced[5] + ", measurements=" + produced[6] + "}";
+    }
+}
@@ -0,0 +1,91 @@
+package com.samples.flironecamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single slot, latest-frame-wins hand-off between one producer (the SDK callback thread) and a consumer (the UI thread).
+ * <p>
+ * {@link #offer(FrameDataHolder)} never blocks: a frame still waiting in the slot is replaced by the newer one and
+ * released, so the consumer always gets the freshest frame and at most one stale frame is kept alive.
+ * The exchanger owns the reference of a frame while it sits in the slot, {@link #poll()} hands it over to the caller.
+ */
+class FrameExchanger {
+
+    private final AtomicReference<FrameDataHolder> slot = new AtomicReference<>();
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Publish a frame, an undelivered older frame is released
+     *
+     * @return true if an undelivered frame was superseded
+     */
+    boolean offer(FrameDataHolder frame) {
+        offered.incrementAndGet();
+        FrameDataHolder previous = slot.getAndSet(frame);
+        if (previous == null) {
+            return false;
+        }
+        superseded.incrementAndGet();
+        previous.release();
+        return true;
+    }
+
+    /**
+     * Take the latest frame, or null if nothing new arrived since the last poll
+     */
+    FrameDataHolder poll() {
+        FrameDataHolder frame = slot.getAndSet(null);
+        if (frame != null) {
+            delivered.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Drop a waiting frame, eg when the camera is disconnected
+     *
+     * @return true if a frame was dropped
+     */
+    boolean clear() {
+        FrameDataHolder frame = slot.getAndSet(null);
+        if (frame == null) {
+            return false;
+        }
+        dropped.incrementAndGet();
+        frame.release();
+        return true;
+    }
+
+    long getOffered() {
+        return offered.get();
+    }
+
+    long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Frames replaced in the slot by a newer frame before the consumer took them
+     */
+    long getSuperseded() {
+        return superseded.get();
+    }
+
+    /**
+     * Frames thrown away by {@link #clear()}
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameExchanger{offered=" + offered.get() + ", delivered=" + delivered.get()
+                + ", superseded=" + superseded.get() + ", dropped=" + dropped.get() + "}";
+    }
+}
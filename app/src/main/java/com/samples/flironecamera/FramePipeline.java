@@ -0,0 +1,49 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The stages a frame goes through, in order: acquire (the SDK callback copies what is due out of the ThermalImage),
+ * convert (bitmap and scene statistics), analyze (hot spots, measurements, subject tracking), render (the UI thread),
+ * encode and upload. Each stage has its own thread and queue, see {@link PipelineStage}; the ones that run on
+ * threads owned by someone else, like the UI, only report their {@link StageStats}.
+ * <p>
+ * Thread safe.
+ */
+class FramePipeline {
+
+    private final List<StageStats> stages = new ArrayList<>();
+
+    /**
+     * Add the next stage
+     */
+    synchronized FramePipeline add(StageStats stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    synchronized List<StageStats> getStages() {
+        return Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    /**
+     * One line per stage
+     */
+    synchronized String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (StageStats stage : stages) {
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            summary.append(stage.summary());
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FramePipeline" + stages;
+    }
+}
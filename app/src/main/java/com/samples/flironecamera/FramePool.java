@@ -0,0 +1,185 @@
+package com.samples.flironecamera;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the per frame buffers the app allocates itself: the ARGB temperature bitmap, the int[] pixel buffer
+ * it is converted through, the binned temperatures and the tables of the frame's {@link TemperatureQuery}.
+ * <p>
+ * Buffers are handed out with {@link #acquireBitmap(int, int)} / {@link #acquirePixels(int)} and come back when the
+ * last reference to the owning {@link FrameDataHolder} is released. At most {@code capacity} idle buffers of each
+ * kind are kept, anything above that is left to the GC.
+ * <p>
+ * Can be used from any thread.
+ */
+class FramePool {
+
+    private final int capacity;
+
+    private final ArrayDeque<Bitmap> idleBitmaps = new ArrayDeque<>();
+    private final ArrayDeque<int[]> idlePixels = new ArrayDeque<>();
+    private final ArrayDeque<TemperatureQuery> idleQueries = new ArrayDeque<>();
+    private final ArrayDeque<double[]> idleValues = new ArrayDeque<>();
+
+    //Acquired buffers that were idle, idle buffers dropped for having the wrong size, buffers created
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * @param capacity max number of idle buffers kept of each kind
+     */
+    FramePool(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get a mutable ARGB_8888 bitmap, the content is undefined
+     */
+    Bitmap acquireBitmap(int width, int height) {
+        synchronized (idleBitmaps) {
+            Bitmap bitmap;
+            while ((bitmap = idleBitmaps.poll()) != null) {
+                if (!bitmap.isRecycled() && bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    hits.incrementAndGet();
+                    return bitmap;
+                }
+                //Resolution changed, drop the stale buffer
+                misses.incrementAndGet();
+                bitmap.recycle();
+            }
+        }
+        allocations.incrementAndGet();
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Get a pixel buffer of exactly {@code length} ints, the content is undefined
+     */
+    int[] acquirePixels(int length) {
+        synchronized (idlePixels) {
+            int[] pixels;
+            while ((pixels = idlePixels.poll()) != null) {
+                if (pixels.length == length) {
+                    hits.incrementAndGet();
+                    return pixels;
+                }
+                misses.incrementAndGet();
+            }
+        }
+        allocations.incrementAndGet();
+        return new int[length];
+    }
+
+    /**
+     * Get a temperature buffer of exactly {@code length} doubles, eg for a binned matrix, the content is undefined
+     */
+    double[] acquireValues(int length) {
+        synchronized (idleValues) {
+            double[] values;
+            while ((values = idleValues.poll()) != null) {
+                if (values.length == length) {
+                    hits.incrementAndGet();
+                    return values;
+                }
+                misses.incrementAndGet();
+            }
+        }
+        allocations.incrementAndGet();
+        return new double[length];
+    }
+
+    /**
+     * Get a query object to {@link TemperatureQuery#build} for a new frame
+     */
+    TemperatureQuery acquireQuery() {
+        synchronized (idleQueries) {
+            TemperatureQuery query = idleQueries.poll();
+            if (query != null) {
+                hits.incrementAndGet();
+                return query;
+            }
+        }
+        allocations.incrementAndGet();
+        return new TemperatureQuery();
+    }
+
+    void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (idleBitmaps) {
+            if (idleBitmaps.size() < capacity) {
+                idleBitmaps.add(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    void recycle(int[] pixels) {
+        if (pixels == null) {
+            return;
+        }
+        synchronized (idlePixels) {
+            if (idlePixels.size() < capacity) {
+                idlePixels.add(pixels);
+            }
+        }
+    }
+
+    void recycle(double[] values) {
+        if (values == null) {
+            return;
+        }
+        synchronized (idleValues) {
+            if (idleValues.size() < capacity) {
+                idleValues.add(values);
+            }
+        }
+    }
+
+    void recycle(TemperatureQuery query) {
+        if (query == null) {
+            return;
+        }
+        synchronized (idleQueries) {
+            if (idleQueries.size() < capacity) {
+                idleQueries.add(query);
+            }
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Idle buffers that were dropped because the frame size changed
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Buffers that had to be created, together with the hits the number of acquired buffers
+     */
+    long getAllocations() {
+        return allocations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FramePool{hits=" + hits.get() + ", misses=" + misses.get() + ", allocations=" + allocations.get() + "}";
+    }
+}
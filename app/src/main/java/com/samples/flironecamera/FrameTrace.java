@@ -0,0 +1,49 @@
+package com.samples.flironecamera;
+
+/**
+ * Identity and hand-off times of one frame. A trace is created when the SDK hands over the frame and every later
+ * hand-off {@link #mark(int) marks} the time since then in its {@link LatencyTracer}.
+ * <p>
+ * Can be marked from any thread, a point can be marked more than once, eg one {@link LatencyTracer#ACKNOWLEDGED} per
+ * upload.
+ */
+class FrameTrace {
+
+    private final LatencyTracer tracer;
+    private final long frameId;
+    private final long acquiredNanos;
+
+    FrameTrace(LatencyTracer tracer, long frameId, long acquiredNanos) {
+        this.tracer = tracer;
+        this.frameId = frameId;
+        this.acquiredNanos = acquiredNanos;
+    }
+
+    /**
+     * Monotonic, unique per {@link LatencyTracer}
+     */
+    long getFrameId() {
+        return frameId;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the SDK handed over the frame
+     */
+    long getAcquiredNanos() {
+        return acquiredNanos;
+    }
+
+    /**
+     * Record that the frame reached {@code point} now
+     *
+     * @param point {@link LatencyTracer#CONVERTED} etc
+     */
+    void mark(int point) {
+        tracer.record(point, System.nanoTime() - acquiredNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameTrace{" + frameId + "}";
+    }
+}
@@ -0,0 +1,503 @@
+package com.samples.flironecamera;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Encodes frames on a background thread and posts them, as JPEGs with {@link ApiServices#sendImage} or as a lossless
+ * temperature matrix with {@link ApiServices#sendRadiometric}, and subject events with {@link ApiServices#sendSubject}.
+ * <p>
+ * Frames are encoded straight from the {@link FrameDataHolder} into pooled in-memory buffers which back the
+ * multipart bodies, no temporary files are written. A buffer goes back to the pool when its request has finished.
+ * Uploads that fail can be kept in an {@link UploadQueue} and are delivered from there later. Optionally several
+ * uploads are sent together with {@link ApiServices#sendBatch}.
+ * <p>
+ * Only one frame is encoded at the time, {@link #upload} skips a frame when the encoder is still busy.
+ */
+class FrameUploader {
+
+    private static final String TAG = "FrameUploader";
+
+    private static final String IMAGE = "image/*";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final String JSON = "application/json";
+    private static final int JPEG_QUALITY = 100;
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ScheduledExecutorService encodeExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean encoding = new AtomicBoolean(false);
+
+    //The encode and upload stages of the frame pipeline, an upload is in the upload stage until its request is done
+    private final StageStats encodeStats = new StageStats("encode", 1);
+    private final StageStats uploadStats = new StageStats("upload", 0);
+
+    private final int bufferPoolSize;
+    private final ArrayDeque<EncodeBuffer> idleBuffers = new ArrayDeque<>();
+
+    //Only used on the encode thread
+    private final DeltaFrameEncoder radiometricEncoder;
+    private int sequence;
+
+    private volatile UploadQueue uploadQueue;
+
+    /**
+     * Result of an upload, called on the UI thread. Besides the server's answer or a failure to reach it, an upload
+     * can be {@link #onQueued() queued} behind earlier ones without being sent; it is then delivered by the
+     * {@link UploadQueue} later, and is neither a response nor a failure.
+     */
+    interface UploadCallback extends Callback<String> {
+        void onQueued();
+    }
+
+    private volatile int batchMaxFrames = 1;
+    private volatile long batchMaxDelayMillis;
+    //Batch being collected, only used on the encode thread
+    private final List<PendingUpload> batch = new ArrayList<>();
+    private ApiServices batchService;
+    private int batchGeneration;
+    private long batchesSent, framesBatched;
+    //Requests with radiometric uploads sent so far, only used on the encode thread
+    private long radiometricCalls;
+
+    /**
+     * @param bufferPoolSize   number of idle encode buffers kept for reuse, each request uses two
+     * @param keyframeInterval radiometric uploads send a full frame every this many uploads and deltas in between
+     * @param tolerance        max error of the radiometric deltas in centi-kelvin
+     */
+    FrameUploader(int bufferPoolSize, int keyframeInterval, int tolerance) {
+        this.bufferPoolSize = bufferPoolSize;
+        this.radiometricEncoder = new DeltaFrameEncoder(keyframeInterval, tolerance);
+    }
+
+    /**
+     * Keep uploads the server could not take in {@code uploadQueue} and send them from there once it is back.
+     * While the queue is not empty new uploads are appended to it as well, so they reach the server in order.
+     * <p>
+     * A radiometric upload that fails while a later one is already on its way can't be put back in order, a delta
+     * retried behind it would be applied to the wrong frame. It is dropped instead and the stream restarts with a
+     * keyframe, as it does when the queue drops or evicts a radiometric upload.
+     */
+    void setUploadQueue(UploadQueue uploadQueue) {
+        if (uploadQueue != null) {
+            uploadQueue.setDropListener(record -> onLost(record, false));
+        }
+        this.uploadQueue = uploadQueue;
+    }
+
+    StageStats getEncodeStats() {
+        return encodeStats;
+    }
+
+    StageStats getUploadStats() {
+        return uploadStats;
+    }
+
+    /**
+     * Encode and send a frame in the background
+     *
+     * @param frame    retained until it's encoded, the caller keeps its own reference
+     * @param callback called on the UI thread when the request is done
+     * @return false if the frame lacks the images and statistics, the previous one is still being encoded or the
+     * uploader is shut down
+     */
+    boolean upload(ApiServices service, String deviceId, FrameDataHolder frame, UploadCallback callback) {
+        encodeStats.offered();
+        if (frame.dcBitmap == null || frame.scaledTemperatureBitmap == null || frame.statistics == null
+                || !encoding.compareAndSet(false, true)) {
+            encodeStats.dropped();
+            return false;
+        }
+        frame.retain();
+        final int minTemp = frame.minTemp;
+        final int maxTemp = frame.maxTemp;
+        final byte[] statistics = frame.statistics.toJson().getBytes(UTF_8);
+        try {
+            encodeExecutor.execute(() -> {
+                long startNanos = System.nanoTime();
+                EncodeBuffer photoBuffer = obtainBuffer();
+                EncodeBuffer thermalBuffer = obtainBuffer();
+                try {
+                    frame.dcBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, photoBuffer);
+                    frame.scaledTemperatureBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, thermalBuffer);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error encoding frame", e);
+                    recycle(photoBuffer, thermalBuffer);
+                    return;
+                } finally {
+                    frame.release();
+                    encoding.set(false);
+                    encodeStats.done(System.nanoTime() - startNanos);
+                }
+
+                UploadRecord record = new UploadRecord(UploadRecord.KIND_IMAGES, deviceId, minTemp, maxTemp)
+                        .addPart("photo_image", "photoImage.jpg", IMAGE, photoBuffer.array(), photoBuffer.size())
+                        .addPart("thermal_image", "thermalImage.jpg", IMAGE, thermalBuffer.array(), thermalBuffer.size())
+                        .addPart("scene_statistics", "statistics.json", JSON, statistics, statistics.length);
+                frame.trace.mark(LatencyTracer.ENCODED);
+                send(service, record, frame.trace, callback, photoBuffer, thermalBuffer);
+            });
+        } catch (RejectedExecutionException e) {
+            //Shut down
+            rejected(frame);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Encode and send the best frame of a subject in the background. Unlike frames, subject events are never skipped,
+     * they wait for the encoder.
+     *
+     * @param event    its frame is released once encoded, or right away if it lacks the images
+     * @param callback called on the UI thread when the request is done
+     */
+    void uploadSubject(ApiServices service, String deviceId, SubjectTracker.SubjectEvent event, UploadCallback callback) {
+        FrameDataHolder frame = event.frame;
+        HotSpotDetector.Region region = event.region;
+        encodeStats.offered();
+        if (frame.dcBitmap == null || frame.scaledTemperatureBitmap == null) {
+            //Tracked before the subject upload asked for the images
+            Log.d(TAG, "Subject " + event.subjectId + " has no images, not sent");
+            encodeStats.dropped();
+            frame.release();
+            return;
+        }
+        double boxMean = frame.query != null
+                ? frame.query.mean(region.minX, region.minY, region.maxX, region.maxY) : region.mean;
+        byte[] subject = String.format(Locale.US,
+                "{\"subject_id\":%d,\"peak_temperature\":%.2f,\"mean_temperature\":%.2f,\"peak_x\":%d,\"peak_y\":%d,"
+                                + "\"area\":%d,\"box_mean_temperature\":%.2f,\"frames\":%d,\"first_seen\":%d,\"last_seen\":%d,\"timestamp\":%d}",
+                event.subjectId, region.peak, region.mean, region.peakX, region.peakY, region.area,
+                boxMean, event.frames,
+                event.firstSeen, event.lastSeen, frame.timestamp).getBytes(UTF_8);
+        try {
+            encodeExecutor.execute(() -> {
+                long startNanos = System.nanoTime();
+                EncodeBuffer photoBuffer = obtainBuffer();
+                EncodeBuffer thermalBuffer = obtainBuffer();
+                try {
+                    frame.dcBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, photoBuffer);
+                    frame.scaledTemperatureBitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, thermalBuffer);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error encoding subject", e);
+                    recycle(photoBuffer, thermalBuffer);
+                    return;
+                } finally {
+                    frame.release();
+                    encodeStats.done(System.nanoTime() - startNanos);
+                }
+
+                UploadRecord record = new UploadRecord(UploadRecord.KIND_SUBJECT, deviceId, frame.minTemp, frame.maxTemp)
+                        .addPart("subject", "subject.json", JSON, subject, subject.length)
+                        .addPart("photo_image", "photoImage.jpg", IMAGE, photoBuffer.array(), photoBuffer.size())
+                        .addPart("thermal_image", "thermalImage.jpg", IMAGE, thermalBuffer.array(), thermalBuffer.size());
+                frame.trace.mark(LatencyTracer.ENCODED);
+                send(service, record, frame.trace, callback, photoBuffer, thermalBuffer);
+            });
+        } catch (RejectedExecutionException e) {
+            //Shut down
+            encodeStats.dropped();
+            frame.release();
+        }
+    }
+
+    /**
+     * Encode the frame's temperature matrix, at the analysis resolution, with {@link DeltaFrameEncoder} and send it in
+     * the background. An upload that is lost, not queued, makes the next one a keyframe so the server can resync.
+     *
+     * @return false if the frame has no temperatures, the previous one is still being encoded or the uploader is shut
+     * down
+     */
+    boolean uploadRadiometric(ApiServices service, String deviceId, FrameDataHolder frame, UploadCallback callback) {
+        encodeStats.offered();
+        if (frame.analysisTemperatures == null || !encoding.compareAndSet(false, true)) {
+            encodeStats.dropped();
+            return false;
+        }
+        frame.retain();
+        try {
+            encodeExecutor.execute(() -> {
+                long startNanos = System.nanoTime();
+                EncodeBuffer frameBuffer = obtainBuffer();
+                try {
+                    radiometricEncoder.encode(frame.analysisTemperatures, frame.analysisWidth, frame.analysisHeight, frame.timestamp,
+                            sequence++, deviceId, frameBuffer);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Error encoding radiometric frame", e);
+                    //Its sequence number is used up, a delta after it would not follow its reference
+                    radiometricEncoder.requestKeyframe();
+                    recycle(frameBuffer);
+                    return;
+                } finally {
+                    frame.release();
+                    encoding.set(false);
+                    encodeStats.done(System.nanoTime() - startNanos);
+                }
+
+                UploadRecord record = new UploadRecord(UploadRecord.KIND_RADIOMETRIC, deviceId, 0, 0)
+                        .addPart("radiometric_frame", "frame.awrf", OCTET_STREAM, frameBuffer.array(), frameBuffer.size());
+                frame.trace.mark(LatencyTracer.ENCODED);
+                send(service, record, frame.trace, callback, frameBuffer);
+            });
+        } catch (RejectedExecutionException e) {
+            //Shut down
+            rejected(frame);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The encoder is shut down, give back what {@link #upload} took
+     */
+    private void rejected(FrameDataHolder frame) {
+        frame.release();
+        encoding.set(false);
+        encodeStats.dropped();
+    }
+
+    void shutdown() {
+        encodeExecutor.execute(this::flushBatch);
+        encodeExecutor.shutdown();
+        Log.d(TAG, "shutdown(), " + radiometricEncoder + " batches:" + batchesSent + " batched frames:" + framesBatched);
+    }
+
+    /**
+     * Send in batches of up to {@code maxFrames} uploads, a batch that doesn't fill up is sent {@code maxDelayMillis}
+     * after its first upload. The callback of a batched upload is called when its batch is done.
+     *
+     * @param maxFrames 1 sends every upload on its own
+     */
+    void setBatching(int maxFrames, long maxDelayMillis) {
+        this.batchMaxDelayMillis = maxDelayMillis;
+        this.batchMaxFrames = maxFrames;
+    }
+
+    /**
+     * Send on the network, or queue when the server is behind, called on the encode thread. The frame's latency is
+     * only traced up to the server's answer when it is sent right away.
+     */
+    private void send(ApiServices service, UploadRecord record, FrameTrace trace, UploadCallback callback,
+                      EncodeBuffer... buffers) {
+        final UploadQueue queue = uploadQueue;
+        if (queue != null && !queue.isEmpty()) {
+            //Keep the order, this upload goes behind the ones still waiting for the server
+            flushBatch();
+            onLost(record, queue.append(record));
+            recycle(buffers);
+            mainHandler.post(callback::onQueued);
+            return;
+        }
+
+        PendingUpload pending = new PendingUpload(record, trace, callback, buffers);
+        int maxFrames = batchMaxFrames;
+        if (maxFrames <= 1) {
+            flushBatch();
+            dispatch(record.toCall(service), Collections.singletonList(pending));
+            return;
+        }
+
+        if (!batch.isEmpty() && (batchService != service || !batch.get(0).record.deviceId.equals(record.deviceId))) {
+            flushBatch();
+        }
+        batch.add(pending);
+        batchService = service;
+        if (batch.size() >= maxFrames) {
+            flushBatch();
+        } else if (batch.size() == 1) {
+            final int generation = batchGeneration;
+            encodeExecutor.schedule(() -> {
+                if (generation == batchGeneration) {
+                    flushBatch();
+                }
+            }, batchMaxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the uploads collected so far as one request, called on the encode thread
+     */
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PendingUpload> pending = new ArrayList<>(batch);
+        List<UploadRecord> records = new ArrayList<>(pending.size());
+        for (PendingUpload upload : pending) {
+            records.add(upload.record);
+        }
+        batch.clear();
+        batchGeneration++;
+        batchesSent++;
+        framesBatched += records.size();
+        dispatch(UploadRecord.toBatchCall(batchService, records), pending);
+    }
+
+    private void dispatch(Call<String> call, List<PendingUpload> uploads) {
+        final UploadQueue queue = uploadQueue;
+        final long startNanos = System.nanoTime();
+        boolean radiometric = false;
+        for (PendingUpload upload : uploads) {
+            uploadStats.offered();
+            radiometric |= upload.record.kind == UploadRecord.KIND_RADIOMETRIC;
+        }
+        if (radiometric) {
+            radiometricCalls++;
+            for (PendingUpload upload : uploads) {
+                upload.radiometricCall = radiometricCalls;
+            }
+        }
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                long nanos = System.nanoTime() - startNanos;
+                for (PendingUpload upload : uploads) {
+                    uploadStats.done(nanos);
+                    if (response.isSuccessful() && upload.trace != null) {
+                        upload.trace.mark(LatencyTracer.ACKNOWLEDGED);
+                    }
+                    //Only a server error is worth trying again, the server will keep rejecting anything else
+                    if (response.code() >= 500) {
+                        retryLater(queue, upload);
+                    } else {
+                        if (!response.isSuccessful()) {
+                            onLost(upload.record, false);
+                        }
+                        recycle(upload.buffers);
+                    }
+                    upload.callback.onResponse(call, response);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                long nanos = System.nanoTime() - startNanos;
+                for (PendingUpload upload : uploads) {
+                    uploadStats.done(nanos);
+                    retryLater(queue, upload);
+                    upload.callback.onFailure(call, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hand a failed upload to the queue, the copy to disk is done on the encode thread instead of the UI thread. The
+     * uploads sent after it go behind it in the queue, unless they were sent before it failed.
+     */
+    private void retryLater(UploadQueue queue, PendingUpload upload) {
+        UploadRecord record = upload.record;
+        if (queue == null) {
+            onLost(record, false);
+            recycle(upload.buffers);
+            return;
+        }
+        try {
+            encodeExecutor.execute(() -> {
+                if (record.kind == UploadRecord.KIND_RADIOMETRIC && upload.radiometricCall != radiometricCalls) {
+                    //A later frame went out directly, behind it this one would be applied to the wrong reference
+                    Log.d(TAG, "retryLater(), dropping radiometric upload, " + (radiometricCalls - upload.radiometricCall) + " later requests were sent before it failed");
+                    onLost(record, false);
+                } else {
+                    onLost(record, queue.append(record));
+                }
+                recycle(upload.buffers);
+            });
+        } catch (RejectedExecutionException e) {
+            //Shut down
+            onLost(record, false);
+            recycle(upload.buffers);
+        }
+    }
+
+    /**
+     * An upload didn't make it to the server now, a radiometric stream has to restart with a keyframe unless the
+     * upload will still be delivered from the queue
+     */
+    private void onLost(UploadRecord record, boolean queued) {
+        if (record.kind == UploadRecord.KIND_RADIOMETRIC && !queued) {
+            radiometricEncoder.requestKeyframe();
+        }
+    }
+
+    private EncodeBuffer obtainBuffer() {
+        EncodeBuffer buffer;
+        synchronized (idleBuffers) {
+            buffer = idleBuffers.poll();
+        }
+        if (buffer == null) {
+            buffer = new EncodeBuffer();
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    private static final class PendingUpload {
+        final UploadRecord record;
+        final FrameTrace trace;
+        final UploadCallback callback;
+        final EncodeBuffer[] buffers;
+        //Which request with radiometric uploads it was sent in, set on the encode thread
+        long radiometricCall;
+
+        PendingUpload(UploadRecord record, FrameTrace trace, UploadCallback callback, EncodeBuffer[] buffers) {
+            this.record = record;
+            this.trace = trace;
+            this.callback = callback;
+            this.buffers = buffers;
+        }
+    }
+
+    private void recycle(EncodeBuffer... buffers) {
+        for (EncodeBuffer buffer : buffers) {
+            recycle(buffer);
+        }
+    }
+
+    private void recycle(EncodeBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        synchronized (idleBuffers) {
+            if (idleBuffers.size() < bufferPoolSize) {
+                idleBuffers.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * Growable byte buffer whose backing array is sent as is, without the copy {@link #toByteArray()} makes
+     */
+    private static final class EncodeBuffer extends ByteArrayOutputStream {
+
+        EncodeBuffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.samples.flironecamera;
+
+/**
+ * Decides whether a frame is worth uploading from its {@link HotSpotDetector} regions: only when a warm region shows
+ * up, or the regions changed noticeably since the last uploaded frame. Frames without regions are never uploaded, null
+ * counts as no regions.
+ * <p>
+ * Not thread safe, in this app it is only used from the UI thread.
+ */
+class HotSpotGate {
+
+    private final double peakDelta;
+    private final double moveFraction;
+
+    private HotSpotDetector.Region[] uploaded = HotSpotDetector.NO_REGIONS;
+    private long passed, suppressed;
+
+    /**
+     * @param peakDelta    change of a region's peak temperature in degrees that counts as a change
+     * @param moveFraction centroid movement that counts as a change, as a fraction of the frame's larger side
+     */
+    HotSpotGate(double peakDelta, double moveFraction) {
+        this.peakDelta = peakDelta;
+        this.moveFraction = moveFraction;
+    }
+
+    /**
+     * @return true if the frame with these regions should be uploaded, confirm with {@link #onUploaded} once it is
+     */
+    boolean shouldUpload(HotSpotDetector.Region[] regions, int width, int height) {
+        if (regions == null || regions.length == 0) {
+            //Everybody left, the next region is a new event
+            uploaded = HotSpotDetector.NO_REGIONS;
+            suppressed++;
+            return false;
+        }
+        if (changed(regions, Math.max(width, height) * moveFraction)) {
+            passed++;
+            return true;
+        }
+        suppressed++;
+        return false;
+    }
+
+    void onUploaded(HotSpotDetector.Region[] regions) {
+        uploaded = regions != null ? regions : HotSpotDetector.NO_REGIONS;
+    }
+
+    long getPassed() {
+        return passed;
+    }
+
+    long getSuppressed() {
+        return suppressed;
+    }
+
+    @Override
+    public String toString() {
+        return "HotSpotGate{passed=" + passed + ", suppressed=" + suppressed + "}";
+    }
+
+    /**
+     * Both arrays are sorted by area, regions are compared by rank
+     */
+    private boolean changed(HotSpotDetector.Region[] regions, double maxMove) {
+        if (regions.length != uploaded.length) {
+            return true;
+        }
+        for (int i = 0; i < regions.length; i++) {
+            HotSpotDetector.Region now = regions[i];
+            HotSpotDetector.Region then = uploaded[i];
+            if (Math.abs(now.peak - then.peak) >= peakDelta) {
+                return true;
+            }
+            double dx = now.centroidX - then.centroidX;
+            double dy = now.centroidY - then.centroidY;
+            if (dx * dx + dy * dy >= maxMove * maxMove) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
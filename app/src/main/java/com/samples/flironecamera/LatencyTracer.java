@@ -0,0 +1,109 @@
+package com.samples.flironecamera;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end latency of the frames, from the SDK callback to each later hand-off: conversion done, analysis done,
+ * on screen, encoded and acknowledged by the server. Every hand-off has its own {@link LatencyHistogram}.
+ * <p>
+ * Thread safe, recording is lock free.
+ */
+class LatencyTracer {
+
+    static final int CONVERTED = 0;
+    static final int ANALYZED = 1;
+    static final int DISPLAYED = 2;
+    static final int ENCODED = 3;
+    static final int ACKNOWLEDGED = 4;
+
+    private static final String[] POINTS = {"converted", "analyzed", "displayed", "encoded", "acknowledged"};
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[POINTS.length];
+    private final long firstFrameId;
+    private final AtomicLong nextFrameId;
+
+    LatencyTracer() {
+        this(0);
+    }
+
+    /**
+     * @param firstFrameId id of the first frame, tracers writing to the same {@link EventLog} start far apart so
+     *                     their frame ids don't collide
+     */
+    LatencyTracer(long firstFrameId) {
+        this.firstFrameId = firstFrameId;
+        this.nextFrameId = new AtomicLong(firstFrameId);
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Start the trace of a new frame, called by the SDK callback
+     */
+    FrameTrace start() {
+        return new FrameTrace(this, nextFrameId.getAndIncrement(), System.nanoTime());
+    }
+
+    void record(int point, long nanos) {
+        histograms[point].record(nanos / 1000);
+    }
+
+    LatencyHistogram getHistogram(int point) {
+        return histograms[point];
+    }
+
+    long getFrames() {
+        return nextFrameId.get() - firstFrameId;
+    }
+
+    void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * One line per hand-off with its median and tail in ms, for the overlay
+     */
+    String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < POINTS.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            if (i > 0) {
+                summary.append('\n');
+            }
+            summary.append(String.format(Locale.US, "%-12s p50 %.1f  p90 %.1f  p99 %.1f  max %.1f ms (%d)", POINTS[i],
+                    histogram.percentile(0.5) / 1000.0, histogram.percentile(0.9) / 1000.0,
+                    histogram.percentile(0.99) / 1000.0, histogram.getMaxMicros() / 1000.0, histogram.getCount()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Write all hand-offs as CSV, latencies in ms since the SDK callback
+     */
+    void writeCsv(Writer writer) throws IOException {
+        writer.write("point,count,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms\n");
+        for (int i = 0; i < POINTS.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            writer.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n", POINTS[i],
+                    histogram.getCount(), histogram.getMeanMicros() / 1000, histogram.percentile(0.5) / 1000.0,
+                    histogram.percentile(0.9) / 1000.0, histogram.percentile(0.99) / 1000.0,
+                    histogram.percentile(0.999) / 1000.0, histogram.getMaxMicros() / 1000.0));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder("LatencyTracer{frames=").append(getFrames());
+        for (int i = 0; i < POINTS.length; i++) {
+            string.append(", ").append(POINTS[i]).append(" p50=").append(histograms[i].percentile(0.5))
+                    .append("us p99=").append(histograms[i].percentile(0.99)).append("us");
+        }
+        return string.append("}").toString();
+    }
+}
@@ -10,16 +10,19 @@
  * ******************************************************************/
 package com.samples.flironecamera;
 
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.drawable.BitmapDrawable;
+import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.AdapterView;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -32,33 +35,31 @@ import com.flir.thermalsdk.live.connectivity.ConnectionStatusListener;
 import com.flir.thermalsdk.live.discovery.DiscoveryEventListener;
 import com.flir.thermalsdk.log.ThermalLog;
 
-import org.jetbrains.annotations.NotNull;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import androidx.appcompat.app.AppCompatActivity;
 
-import okhttp3.MediaType;
-import okhttp3.MultipartBody;
-import okhttp3.RequestBody;
-import okhttp3.ResponseBody;
 import retrofit2.Call;
-import retrofit2.Callback;
 import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
-import retrofit2.converter.scalars.ScalarsConverterFactory;
 
 /**
  * Sample application for scanning a FLIR ONE or a built in emulator
  * <p>
  * See the {@link CameraHandler} for how to preform discovery of a FLIR ONE camera, connecting to it and start streaming images
  * <p>
+ * Two cameras can be connected at the same time, eg both emulators with Sim1 and Sim2. Each one is shown in a
+ * {@link CameraSlot} of its own and uploads with the device id typed in for it.
+ * <p>
+ * The UI is drawn first, the Thermal SDK and the networking are set up in the background meanwhile and discovery
+ * starts as soon as the SDK is ready. {@link StartupTrace} times it up to the first camera frame on screen.
+ * <p>
  * The MainActivity is primarily focused to "glue" different helper classes together and updating the UI components
  * <p/>
  * Please note, this is <b>NOT</b> production quality code, error handling has been kept to a minimum to keep the code as clear and concise as possible
@@ -67,35 +68,81 @@ public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
 
+    private static final EventLog.Event UPLOAD_STARTED = EventLog.event(EventLog.DEBUG, TAG, "upload",
+            new String[]{"frame", "rate_hz"}, new int[]{EventLog.TYPE_LONG, EventLog.TYPE_DOUBLE});
+
+    // Failed uploads kept on disk: 4MB segment files, at most 64MB, 5 tries when the server rejects an upload
+    private static final int UPLOAD_QUEUE_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long UPLOAD_QUEUE_DISK_BUDGET = 64L * 1024 * 1024;
+    private static final int UPLOAD_QUEUE_MAX_ATTEMPTS = 5;
+
+    // Batch uploads: up to 8 frames per request, a batch waits at most 2s for more frames
+    private static final int BATCH_MAX_FRAMES = 8;
+    private static final long BATCH_MAX_DELAY_MILLIS = 2000;
+    private static final int MAX_IN_FLIGHT = 2;
+
+    // Analysis resolutions of the binning spinner
+    private static final int[] BINNING_FACTORS = {1, 2, 2, 4, 4};
+    private static final int[] BINNING_MODES = {FrameBinner.MODE_MEAN, FrameBinner.MODE_MEAN, FrameBinner.MODE_MAX,
+            FrameBinner.MODE_MEAN, FrameBinner.MODE_MAX};
+
+    // Half size of the measurement box around the center
+    private static final int CENTER_BOX = 20;
+    private static final long TARGET_RTT_MILLIS = 1000;
+
     //Handles Android permission for eg Network
     private PermissionHandler permissionHandler;
 
     //Handles network camera operations
     private CameraHandler cameraHandler;
 
-    private Identity connectedIdentity = null;
-    private TextView connectionStatus;
-    private TextView centerPosTemperatureStatus;
-    private boolean isConnected = false;
+    //The cameras on screen, the connect buttons use the first free one
+    private CameraSlot[] slots;
     private TextView discoveryStatus;
     private EditText sendUrlText;
 
     private TextView sendFreqStatus;
     private SeekBar sendFreqSlider;
+    private Switch sendRadiometricSwitch;
+    private Switch sendBatchSwitch;
+    private Switch sendOnHotSpotSwitch;
+    private Switch sendPerSubjectSwitch;
+    private Switch autoRangeSwitch;
+    private Spinner binningSpinner;
+    private Switch recordSwitch;
+    // The camera the record switch records, null when not recording
+    private CameraSlot recordingSlot;
     private double sendFreq;  // Send frequency in Hz
-
-    private ImageView msxImage;
-    private ImageView photoImage;
-    private File photoImageFile;  // save to a file for POST API
-    private File thermalImageFile;
-    private File temperatureImageFile;
-    private int minTemperature, maxTemperature;
-
-    private LinkedBlockingQueue<FrameDataHolder> framesBuffer = new LinkedBlockingQueue(21);
+    private TextView uploadStatus;
+    private TextView pipelineStatus;
+    private Switch latencyOverlaySwitch;
+    private TextView latencyOverlay;
+
+    // Shared by the uploaders of all cameras
+    private UploadQueue uploadQueue;
+    // Runs the upload timers of all cameras
+    private final Handler uploadHandler = new Handler();
+    // Whether the activity is visible, the preview is only computed then
+    private boolean visible;
+
+    // What the preview, the frame uploads and the subject uploads need from the frame pipeline
+    private static final int PREVIEW_PRODUCTS = FrameDemand.PHOTO | FrameDemand.TEMPERATURE_BITMAP
+            | FrameDemand.STATISTICS | FrameDemand.MEASUREMENTS;
+    private static final int IMAGE_UPLOAD_PRODUCTS = FrameDemand.PHOTO | FrameDemand.TEMPERATURE_BITMAP
+            | FrameDemand.STATISTICS;
+    private static final int SUBJECT_PRODUCTS = FrameDemand.HOT_SPOTS | FrameDemand.PHOTO
+            | FrameDemand.TEMPERATURE_BITMAP | FrameDemand.MEASUREMENTS;
+    private Switch replayMaxSpeedSwitch;
+    private Switch replayLoopSwitch;
     private UsbPermissionHandler usbPermissionHandler = new UsbPermissionHandler();
 
-    private Retrofit retrofit;
+    // Null until it is built in the background, or while the URL is not valid
     private ApiServices retroService;
+    // The networking is set up, the URL typed in is picked up on connect from then on
+    private boolean networkReady;
+    // ThermalSdkAndroid is initiated, discovery can start
+    private boolean sdkReady;
+    private final StartupTrace startupTrace = StartupTrace.getInstance();
 
     /**
      * Show message on the screen
@@ -110,32 +157,20 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         ThermalLog.LogLevel enableLoggingInDebug = BuildConfig.DEBUG ? ThermalLog.LogLevel.DEBUG : ThermalLog.LogLevel.NONE;
-
-        //ThermalSdkAndroid has to be initiated from a Activity with the Application Context to prevent leaking Context,
-        // and before ANY using any ThermalSdkAndroid functions
-        //ThermalLog will show log from the Thermal SDK in standards android log framework
-        ThermalSdkAndroid.init(getApplicationContext(), enableLoggingInDebug);
+        //Per frame events only in debug builds, release builds keep the info ones
+        EventLog.getInstance().setLevel(BuildConfig.DEBUG ? EventLog.DEBUG : EventLog.INFO);
 
         permissionHandler = new PermissionHandler(showMessage, MainActivity.this);
 
         cameraHandler = new CameraHandler();
 
         setupViews();
+        markFirstDraw();
 
-        // Prepare files location and name
-        File filesDir = getApplicationContext().getFilesDir();
-        photoImageFile = new File(filesDir, "photoImage.jpg");
-        thermalImageFile = new File(filesDir, "thermalImage.jpg");
-        temperatureImageFile = new File(filesDir, "temperatureImage.jpg");
-
-        showSDKversion(ThermalSdkAndroid.getVersion());
-
-        // Initialize retrofit for the REST API operation
-        retrofit = new Retrofit.Builder()
-                .baseUrl(sendUrlText.getText().toString())
-                .addConverterFactory(ScalarsConverterFactory.create())
-                .build();
-        retroService = retrofit.create(ApiServices.class);
+        // The Thermal SDK and the networking are set up in parallel in the background while the UI is drawn
+        showSDKversion(getString(R.string.sdk_starting_text));
+        initSdk(enableLoggingInDebug);
+        initNetwork(sendUrlText.getText().toString());
 
         /**
          * Initialize send freq slider and update UI
@@ -180,69 +215,234 @@ public class MainActivity extends AppCompatActivity {
                 }
         );
 
-        /**
-         * Post images every period defined in send freq
-         */
-        final Handler handler = new Handler();
+        startupTrace.mark(StartupTrace.Phase.ACTIVITY_CREATED);
+    }
 
-        Runnable runnable = new Runnable() {
-            @Override
-            public void run() {
+    /**
+     * Initiate the Thermal SDK on a background thread, discovery starts as soon as it is ready
+     */
+    private void initSdk(ThermalLog.LogLevel logLevel) {
+        Context context = getApplicationContext();
+        new Thread(() -> {
+            //ThermalSdkAndroid has to be initiated with the Application Context to prevent leaking Context,
+            // and before ANY using any ThermalSdkAndroid functions
+            //ThermalLog will show log from the Thermal SDK in standards android log framework
+            ThermalSdkAndroid.init(context, logLevel);
+            String version = ThermalSdkAndroid.getVersion();
+            startupTrace.mark(StartupTrace.Phase.SDK_READY);
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                sdkReady = true;
+                showSDKversion(version);
+                startDiscovery();
+            });
+        }, "sdk-init").start();
+    }
 
-                // Any code which goes here will be executed every 'updateInterval'
-                if (isConnected && photoImage.getDrawable() != null && msxImage.getDrawable() != null) {
-                    Log.d(TAG, "Freq " + sendFreq + "Hz" + " URL: " + sendUrlText.getText().toString());
-
-                    // --- Get image from ImageView and save it to a file
-                    BitmapDrawable photoDrawable = (BitmapDrawable) photoImage.getDrawable();
-                    Bitmap photoBitmap = photoDrawable.getBitmap();
-                    BitmapDrawable thermalDrawable = (BitmapDrawable) msxImage.getDrawable();
-                    Bitmap thermalBitmap = thermalDrawable.getBitmap();
-                    OutputStream photo_os, thermal_os;
-                    try {
-                        photo_os = new FileOutputStream(photoImageFile);
-                        thermal_os = new FileOutputStream(thermalImageFile);
-                        photoBitmap.compress(Bitmap.CompressFormat.JPEG, 100, photo_os);
-                        thermalBitmap.compress(Bitmap.CompressFormat.JPEG, 100, thermal_os);
-                        photo_os.flush();
-                        photo_os.close();
-                        thermal_os.flush();
-                        thermal_os.close();
-                    } catch (Exception e) {
-                        Log.e(getClass().getSimpleName(), "Error writing bitmap", e);
+    /**
+     * Build the REST API and open the upload queue on a background thread, the uploads start once they are ready
+     */
+    private void initNetwork(String url) {
+        File queueDir = new File(new FileHandler(getApplicationContext()).getImageStoragePath(), "upload-queue");
+        new Thread(() -> {
+            // REST API operation, the HTTP client is shared and kept for the lifetime of the app
+            ApiServices service = null;
+            String error = null;
+            try {
+                service = ApiClient.getInstance().getService(url);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "initNetwork(), invalid URL " + url, e);
+                error = e.getMessage();
+            }
+
+            // Uploads the server could not take are kept on disk and sent once it is reachable again
+            UploadQueue queue = null;
+            try {
+                queue = new UploadQueue(queueDir, UPLOAD_QUEUE_SEGMENT_SIZE, UPLOAD_QUEUE_DISK_BUDGET, UPLOAD_QUEUE_MAX_ATTEMPTS);
+            } catch (IOException e) {
+                Log.e(TAG, "initNetwork(), unable to open upload queue, failed uploads will be lost", e);
+            }
+            UploadQueue opened = queue;
+            ApiServices built = service;
+            String urlError = error;
+            startupTrace.mark(StartupTrace.Phase.NETWORK_READY);
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    //onDestroy() didn't see it, the next activity opens the same directory
+                    if (opened != null) {
+                        opened.close();
+                    }
+                    return;
+                }
+                if (urlError != null) {
+                    showMessage.show("Invalid URL, nothing is uploaded until it is fixed: " + urlError);
+                }
+                networkReady = true;
+                retroService = built;
+                if (opened != null) {
+                    uploadQueue = opened;
+                    uploadQueue.setService(retroService);
+                    uploadQueue.start();
+                    for (CameraSlot slot : slots) {
+                        slot.frameUploader.setUploadQueue(uploadQueue);
                     }
+                }
+                startUploads();
+            });
+        }, "network-init").start();
+    }
 
-                    // Arrange the images to the requestbody
-                    RequestBody reqBodyPhotoImage = RequestBody.create(MediaType.parse("image/*"), photoImageFile);
-                    MultipartBody.Part photoImageBody = MultipartBody.Part.createFormData("photo_image", photoImageFile.getName(), reqBodyPhotoImage);
-                    RequestBody reqBodyThermalImage = RequestBody.create(MediaType.parse("image/*"), thermalImageFile);
-                    MultipartBody.Part thermalImageBody = MultipartBody.Part.createFormData("thermal_image", thermalImageFile.getName(), reqBodyThermalImage);
-
-                    // call the API and wait for the result
-//                    Call<String> call = retroService.sendImage("0001", photoImageBody, thermalImageBody, temperatureImageBody);
-                    Call<String> call = retroService.sendImage("0001", minTemperature, maxTemperature, photoImageBody, thermalImageBody);
-                    call.enqueue(new Callback<String>() {
-                        @Override
-                        public void onResponse(Call<String> call, Response<String> response) {
-                            Log.d("APP_LOG:Server Response", "" + response.body());
-                            Toast.makeText(MainActivity.this, "" + response.toString(), Toast.LENGTH_SHORT).show();
-                        }
-
-                        @Override
-                        public void onFailure(Call<String> call, Throwable t) {
-                            Log.e("APP_LOG:Server Error", "" + t.getMessage());
-                            Toast.makeText(MainActivity.this, "Something went wrong!", Toast.LENGTH_SHORT).show();
-                        }
-                    });
+    /**
+     * Post images every period defined in send freq, every camera at the rate its own uploads allow
+     */
+    private void startUploads() {
+        for (CameraSlot slot : slots) {
+            uploadHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    slot.uploadLatestFrame();
+                    updateStatusTexts();
+                    uploadHandler.postDelayed(this, slot.uploadRateController.getIntervalMillis());
                 }
+            }, slot.uploadRateController.getIntervalMillis()); // For initial delay
+        }
+    }
 
-                int updateInterval = (int) (1000 / sendFreq);
-                handler.postDelayed(this, updateInterval);
+    /**
+     * Mark the first time the UI is drawn
+     */
+    private void markFirstDraw() {
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            @Override
+            public void onDraw() {
+                if (startupTrace.mark(StartupTrace.Phase.FIRST_DRAW)) {
+                    //Can't be removed while it is being called
+                    content.post(() -> content.getViewTreeObserver().removeOnDrawListener(this));
+                }
             }
-        };
+        });
+    }
+
+    /**
+     * The products of the next frame upload, asked for at twice the upload rate so a fresh frame is ready when the
+     * timer fires
+     */
+    private int uploadProducts() {
+        if (sendPerSubjectSwitch.isChecked()) {
+            return 0;
+        }
+        int products = sendRadiometricSwitch.isChecked() ? FrameDemand.TEMPERATURES : IMAGE_UPLOAD_PRODUCTS;
+        if (sendOnHotSpotSwitch.isChecked()) {
+            products |= FrameDemand.HOT_SPOTS;
+        }
+        return products;
+    }
+
+    /**
+     * Send frames in batches or one by one. A batched frame is in flight until its batch is answered, so the rate
+     * controller allows more of them and expects slower answers.
+     */
+    private void setBatching(boolean enabled) {
+        for (CameraSlot slot : slots) {
+            if (enabled) {
+                slot.frameUploader.setBatching(BATCH_MAX_FRAMES, BATCH_MAX_DELAY_MILLIS);
+                slot.uploadRateController.setLimits(2 * BATCH_MAX_FRAMES, TARGET_RTT_MILLIS + BATCH_MAX_DELAY_MILLIS);
+            } else {
+                slot.frameUploader.setBatching(1, 0);
+                slot.uploadRateController.setLimits(MAX_IN_FLIGHT, TARGET_RTT_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Upload, pipeline and latency status of all cameras, one after the other with their device ids
+     */
+    private void updateStatusTexts() {
+        StringBuilder upload = new StringBuilder();
+        StringBuilder pipeline = new StringBuilder();
+        StringBuilder latency = new StringBuilder();
+        for (CameraSlot slot : slots) {
+            if (slot.session == null) {
+                continue;
+            }
+            String deviceId = slot.session.getDeviceId();
+            if (upload.length() > 0) {
+                upload.append('\n');
+                pipeline.append('\n');
+                latency.append('\n');
+            }
+            upload.append(deviceId).append(": ").append(getString(R.string.upload_status_text,
+                    String.format(Locale.US, "%.2f", slot.uploadRateController.getRate()),
+                    slot.uploadRateController.getInFlight(),
+                    slot.uploadRateController.getSmoothedRttMillis(),
+                    uploadQueue != null ? uploadQueue.size() : 0));
+            pipeline.append(deviceId).append('\n').append(slot.session.getPipeline().summary());
+            latency.append(deviceId).append('\n').append(slot.session.getLatencyTracer().summary());
+        }
+        uploadStatus.setText(upload);
+        pipelineStatus.setText(startupTrace.summary() + "\n" + pipeline);
+        if (latencyOverlaySwitch.isChecked()) {
+            latencyOverlay.setText(latency);
+        }
+    }
+
+    /**
+     * Result of an upload, called on the UI thread
+     */
+    private final FrameUploader.UploadCallback uploadCallback = new FrameUploader.UploadCallback() {
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            Log.d("APP_LOG:Server Response", "" + response.body());
+            Toast.makeText(MainActivity.this, "" + response.toString(), Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            Log.e("APP_LOG:Server Error", "" + t.getMessage());
+            Toast.makeText(MainActivity.this, "Something went wrong!", Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onQueued() {
+            //Not a failure, the upload queue sends it once the server took the ones before it
+            Log.d(TAG, "upload queued behind " + (uploadQueue != null ? uploadQueue.size() : 0) + " uploads");
+        }
+    };
 
-        int updateInterval = (int) (1000 / sendFreq);
-        handler.postDelayed(runnable, updateInterval); // For initial delay
+    @Override
+    protected void onStart() {
+        super.onStart();
+        visible = true;
+        for (CameraSlot slot : slots) {
+            slot.setNeed(slot.previewNeed, PREVIEW_PRODUCTS, 0);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        //Nothing is shown, keep computing only what the uploads need
+        visible = false;
+        for (CameraSlot slot : slots) {
+            slot.setNeed(slot.previewNeed, 0, 0);
+        }
+        super.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        //The timers would keep uploading through the shut down uploaders
+        uploadHandler.removeCallbacksAndMessages(null);
+        for (CameraSlot slot : slots) {
+            slot.frameUploader.shutdown();
+        }
+        //Recreating the activity opens the queue again
+        if (uploadQueue != null) {
+            uploadQueue.close();
+        }
+        super.onDestroy();
     }
 
     public void startDiscovery(View view) {
@@ -266,8 +466,88 @@ public class MainActivity extends AppCompatActivity {
         connect(cameraHandler.getFlirOneEmulator());
     }
 
+    /**
+     * Stream generated frames, 480x640 like a FLIR ONE Pro at 9 fps with 3 people walking around
+     */
+    public void connectSynthetic(View view) {
+        connect(new SyntheticFrameSource(480, 640, 9, 3, 0.05, 0.5, System.nanoTime()), "SYNTHETIC");
+    }
+
+    /**
+     * Stream the frames recorded with the record switch
+     */
+    public void connectReplay(View view) {
+        File recording = getRecordingFile();
+        if (!recording.exists()) {
+            showMessage.show("Nothing recorded yet");
+            return;
+        }
+        double speed = replayMaxSpeedSwitch.isChecked() ? 0 : 1;
+        connect(new RecordedFrameSource(recording, speed, replayLoopSwitch.isChecked()), "REPLAY");
+    }
+
+    /**
+     * Disconnect all cameras
+     */
     public void disconnect(View view) {
-        disconnect();
+        for (CameraSlot slot : slots) {
+            if (slot.isInUse()) {
+                slot.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Write the latency histograms of every camera as CSV to the app's external files directory, readable over USB
+     */
+    public void exportLatency(View view) {
+        long now = System.currentTimeMillis();
+        for (CameraSlot slot : slots) {
+            if (slot.session == null) {
+                continue;
+            }
+            File file = new File(getExportDir(), "latency-" + slot.session.getDeviceId() + "-" + now + ".csv");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                slot.session.getLatencyTracer().writeCsv(writer);
+                showMessage.show("Latency written to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not write " + file, e);
+                showMessage.show("Could not write latency: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Save the binary event log, and the same events decoded to text, next to the latency exports
+     */
+    public void dumpEventLog(View view) {
+        String name = "events-" + System.currentTimeMillis();
+        File binary = new File(getExportDir(), name + ".bin");
+        File text = new File(getExportDir(), name + ".txt");
+        try (OutputStream out = new FileOutputStream(binary);
+             Writer writer = new OutputStreamWriter(new FileOutputStream(text), "UTF-8")) {
+            EventLog.getInstance().write(out);
+            EventLog.getInstance().dump(writer);
+            showMessage.show("Events written to " + text);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write " + binary, e);
+            showMessage.show("Could not write events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Where the record switch appends to and the replay button plays from
+     */
+    private File getRecordingFile() {
+        return new File(getExportDir(), "recording.awrf");
+    }
+
+    /**
+     * The app's external files directory, readable over USB, or the internal one when there is no external storage
+     */
+    private File getExportDir() {
+        File dir = getExternalFilesDir(null);
+        return dir != null ? dir : new FileHandler(getApplicationContext()).getImageStoragePath();
     }
 
     /**
@@ -279,25 +559,85 @@ public class MainActivity extends AppCompatActivity {
         permissionHandler.onRequestPermissionsResult(requestCode, permissions, grantResults);
     }
 
+    /**
+     * The first slot without a camera, null when all are in use
+     */
+    private CameraSlot freeSlot() {
+        for (CameraSlot slot : slots) {
+            if (!slot.isInUse()) {
+                return slot;
+            }
+        }
+        Log.d(TAG, "connect(), in *this* code sample we support " + slots.length + " camera connections at the time");
+        showMessage.show("connect(), in *this* code sample we support " + slots.length + " camera connections at the time");
+        return null;
+    }
+
+    /**
+     * The slot connected or connecting to {@code identity}, null when there is none
+     */
+    private CameraSlot findSlot(Identity identity) {
+        for (CameraSlot slot : slots) {
+            if (identity.equals(slot.connectedIdentity)) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Connect to a source of frames other than a camera
+     */
+    private void connect(FrameSource source, String name) {
+        updateService();
+        CameraSlot slot = freeSlot();
+        if (slot == null) {
+            return;
+        }
+        slot.open();
+        try {
+            slot.session.startStream(source, slot.streamDataListener);
+        } catch (IOException e) {
+            Log.d(TAG, "Could not start " + source + ": " + e);
+            showMessage.show("Could not start " + name + ": " + e.getMessage());
+            slot.disconnect();
+            return;
+        }
+        slot.connectedSource = source;
+        slot.isConnected = true;
+        startupTrace.mark(StartupTrace.Phase.CONNECTED);
+        slot.connectionStatus.setText(getString(R.string.connection_status_text, name + " CONNECTED"));
+    }
+
+    /**
+     * Pick up a changed URL, the connections to an unchanged server are reused
+     */
+    private void updateService() {
+        if (!networkReady) {
+            //Still being built in the background, with the URL of the start
+            return;
+        }
+        String url = sendUrlText.getText().toString();
+        try {
+            retroService = ApiClient.getInstance().getService(url);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "updateService(), invalid URL " + url, e);
+            showMessage.show("Invalid URL, nothing is uploaded until it is fixed: " + e.getMessage());
+            retroService = null;
+        }
+        if (uploadQueue != null) {
+            uploadQueue.setService(retroService);
+        }
+    }
+
     /**
      * Connect to a Camera
      */
     private void connect(Identity identity) {
         //We don't have to stop a discovery but it's nice to do if we have found the camera that we are looking for
-        cameraHandler.stopDiscovery(discoveryStatusListener);
-
-        // Initialize retrofit for the REST API operation
-        retrofit = new Retrofit.Builder()
-                .baseUrl(sendUrlText.getText().toString())
-                .addConverterFactory(ScalarsConverterFactory.create())
-                .build();
-        retroService = retrofit.create(ApiServices.class);
-
-        if (connectedIdentity != null) {
-            Log.d(TAG, "connect(), in *this* code sample we only support one camera connection at the time");
-            showMessage.show("connect(), in *this* code sample we only support one camera connection at the time");
-            return;
-        }
+        stopDiscovery();
+
+        updateService();
 
         if (identity == null) {
             Log.d(TAG, "connect(), can't connect, no camera available");
@@ -305,15 +645,25 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        connectedIdentity = identity;
+        if (findSlot(identity) != null) {
+            showMessage.show("connect(), " + identity.deviceId + " is connected already");
+            return;
+        }
+
+        CameraSlot slot = freeSlot();
+        if (slot == null) {
+            return;
+        }
+        slot.open();
+        slot.connectedIdentity = identity;
 
-        updateConnectionText(identity, "CONNECTING");
+        slot.updateConnectionText(identity, "CONNECTING");
         //IF your using "USB_DEVICE_ATTACHED" and "usb-device vendor-id" in the Android Manifest
         // you don't need to request permission, see documentation for more information
         if (UsbPermissionHandler.isFlirOne(identity)) {
             usbPermissionHandler.requestFlirOnePermisson(identity, this, permissionListener);
         } else {
-            doConnect(identity);
+            slot.doConnect(identity);
         }
 
     }
@@ -321,74 +671,54 @@ public class MainActivity extends AppCompatActivity {
     private UsbPermissionHandler.UsbPermissionListener permissionListener = new UsbPermissionHandler.UsbPermissionListener() {
         @Override
         public void permissionGranted(Identity identity) {
-            doConnect(identity);
+            CameraSlot slot = findSlot(identity);
+            if (slot != null) {
+                slot.doConnect(identity);
+            }
         }
 
         @Override
         public void permissionDenied(Identity identity) {
             MainActivity.this.showMessage.show("Permission was denied for identity ");
+            release(identity);
         }
 
         @Override
         public void error(UsbPermissionHandler.UsbPermissionListener.ErrorType errorType, final Identity identity) {
             MainActivity.this.showMessage.show("Error when asking for permission for FLIR ONE, error:" + errorType + " identity:" + identity);
+            release(identity);
         }
-    };
 
-    private void doConnect(Identity identity) {
-        new Thread(() -> {
-            try {
-                cameraHandler.connect(identity, connectionStatusListener);
-                runOnUiThread(() -> {
-                    updateConnectionText(identity, "CONNECTED");
-                    isConnected = true;
-                    cameraHandler.startStream(streamDataListener);
-                });
-            } catch (IOException e) {
-                runOnUiThread(() -> {
-                    Log.d(TAG, "Could not connect: " + e);
-                    updateConnectionText(identity, "DISCONNECTED");
-                });
+        /**
+         * Free the slot that waited for the permission
+         */
+        private void release(Identity identity) {
+            CameraSlot slot = findSlot(identity);
+            if (slot != null) {
+                slot.disconnect();
             }
-        }).start();
-    }
-
-    /**
-     * Disconnect to a camera
-     */
-    private void disconnect() {
-        updateConnectionText(connectedIdentity, "DISCONNECTING");
-        connectedIdentity = null;
-        Log.d(TAG, "disconnect() called with: connectedIdentity = [" + connectedIdentity + "]");
-        new Thread(() -> {
-            cameraHandler.disconnect();
-            runOnUiThread(() -> {
-                updateConnectionText(null, "DISCONNECTED");
-                isConnected = false;
-            });
-        }).start();
-    }
-
-    /**
-     * Update the UI text for connection status
-     */
-    private void updateConnectionText(Identity identity, String status) {
-        String deviceId = identity != null ? identity.deviceId : "";
-        connectionStatus.setText(getString(R.string.connection_status_text, deviceId + " " + status));
-    }
+        }
+    };
 
     /**
      * Start camera discovery
      */
     private void startDiscovery() {
+        if (!sdkReady) {
+            showMessage.show("The Thermal SDK is still starting, discovery starts once it is ready");
+            return;
+        }
         cameraHandler.startDiscovery(cameraDiscoveryListener, discoveryStatusListener);
+        startupTrace.mark(StartupTrace.Phase.DISCOVERY_STARTED);
     }
 
     /**
      * Stop camera discovery
      */
     private void stopDiscovery() {
-        cameraHandler.stopDiscovery(discoveryStatusListener);
+        if (sdkReady) {
+            cameraHandler.stopDiscovery(discoveryStatusListener);
+        }
     }
 
     /**
@@ -407,70 +737,387 @@ public class MainActivity extends AppCompatActivity {
     };
 
     /**
-     * Camera connecting state thermalImageStreamListener, keeps track of if the camera is connected or not
-     * <p>
-     * Note that callbacks are received on a non-ui thread so have to eg use {@link #runOnUiThread(Runnable)} to interact view UI components
+     * Whether the frame has what {@link #uploadProducts()} asks for, hot regions are only needed when gating
      */
-    private ConnectionStatusListener connectionStatusListener = new ConnectionStatusListener() {
-        @Override
-        public void onDisconnected(@org.jetbrains.annotations.Nullable ErrorCode errorCode) {
-            Log.d(TAG, "onDisconnected errorCode:" + errorCode);
+    private boolean hasUploadProducts(FrameDataHolder frame) {
+        if (sendOnHotSpotSwitch.isChecked() && frame.hotRegions == null) {
+            return false;
+        }
+        if (sendRadiometricSwitch.isChecked()) {
+            return frame.analysisTemperatures != null;
+        }
+        return frame.dcBitmap != null && frame.scaledTemperatureBitmap != null && frame.statistics != null;
+    }
 
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    updateConnectionText(connectedIdentity, "DISCONNECTED");
+    /**
+     * One camera on screen: its session, its views, the frames it shows and uploads, and its own uploader and rate
+     * controller, so a slow camera or a radiometric delta chain never holds up the other one. Only touched on the UI
+     * thread, unless noted.
+     */
+    private final class CameraSlot {
+        final EditText deviceIdText;
+        final TextView connectionStatus;
+        final TextView centerPosTemperatureStatus;
+        final TextView sceneStatistics;
+        final ImageView msxImage;
+        final ImageView photoImage;
+
+        // Encodes and posts frames off the UI thread
+        // radiometric uploads: a keyframe every 10 uploads, deltas within 0.05 degrees in between
+        final FrameUploader frameUploader = new FrameUploader(2 * BATCH_MAX_FRAMES, 10, 5);
+        // Max 2 uploads waiting for the server, slow down when it takes more than a second to answer
+        final UploadRateController uploadRateController = new UploadRateController(MAX_IN_FLIGHT, TARGET_RTT_MILLIS, 0.5);
+        // Upload only when a warm region appears, or its peak changes by 0.3 degrees or it moves 5% of the frame
+        final HotSpotGate hotSpotGate = new HotSpotGate(0.3, 0.05);
+
+        final FrameExchanger framesBuffer = new FrameExchanger();
+        final AtomicBoolean showFramePending = new AtomicBoolean(false);
+        // The render stage of the frame pipeline, a frame is in it from the exchanger until it is on screen
+        final StageStats renderStats = new StageStats("render", 1);
+        // Frame currently shown in the ImageViews
+        FrameDataHolder displayedFrame;
+        // Latest frame with what the next upload needs
+        FrameDataHolder uploadFrame;
+
+        // The latest session, kept after it is disconnected for its statistics, null before the first connection
+        CameraSession session;
+        FrameDemand.Need previewNeed, uploadNeed, subjectNeed, recordNeed;
+        Identity connectedIdentity;
+        // Synthetic or replayed frames instead of a camera, null when none is connected
+        FrameSource connectedSource;
+        boolean isConnected;
+
+        CameraSlot(int deviceIdTextId, int connectionStatusId, int centerTempId, int sceneStatsId, int msxImageId,
+                   int photoImageId) {
+            deviceIdText = findViewById(deviceIdTextId);
+            connectionStatus = findViewById(connectionStatusId);
+            centerPosTemperatureStatus = findViewById(centerTempId);
+            sceneStatistics = findViewById(sceneStatsId);
+            msxImage = findViewById(msxImageId);
+            photoImage = findViewById(photoImageId);
+        }
+
+        boolean isInUse() {
+            return connectedIdentity != null || connectedSource != null;
+        }
+
+        /**
+         * Open a new session with the device id typed in, set up like the switches are
+         */
+        void open() {
+            session = cameraHandler.openSession(deviceIdText.getText().toString());
+            deviceIdText.setEnabled(false);
+            FrameDemand frameDemand = session.getFrameDemand();
+            previewNeed = frameDemand.register("preview");
+            uploadNeed = frameDemand.register("upload");
+            subjectNeed = frameDemand.register("subject");
+            recordNeed = frameDemand.register("record");
+            session.getPipeline()
+                    .add(renderStats)
+                    .add(frameUploader.getEncodeStats())
+                    .add(frameUploader.getUploadStats());
+            frameDemand.set(previewNeed, visible ? PREVIEW_PRODUCTS : 0, 0);
+            frameDemand.set(subjectNeed, sendPerSubjectSwitch.isChecked() ? SUBJECT_PRODUCTS : 0, 0);
+            session.setSubjectListener(subjectListener);
+            session.setAutoRanging(autoRangeSwitch.isChecked());
+            int binning = binningSpinner.getSelectedItemPosition();
+            session.setBinning(BINNING_FACTORS[binning], BINNING_MODES[binning]);
+        }
+
+        /**
+         * Set what a consumer needs from the frames, ignored before the first connection
+         */
+        void setNeed(FrameDemand.Need need, int products, double rate) {
+            if (session != null) {
+                session.getFrameDemand().set(need, products, rate);
+            }
+        }
+
+        void updateUploadNeed() {
+            double rate = uploadRateController.getRate();
+            setNeed(uploadNeed, isConnected && rate > 0 ? uploadProducts() : 0, 2 * rate);
+        }
+
+        /**
+         * Upload the latest frame if the rate controller lets it, called by the upload timer
+         */
+        void uploadLatestFrame() {
+            // Any code which goes here will be executed every 'updateInterval'
+            uploadRateController.setCeiling(sendFreq);
+            updateUploadNeed();
+            // In per subject mode the subject events are uploaded instead of frames
+            FrameDataHolder frame = uploadFrame;
+            if (frame != null && !hasUploadProducts(frame)) {
+                //Kept before a switch changed what the uploads need
+                dropUploadFrame();
+                frame = null;
+            }
+            boolean event = frame != null && !sendPerSubjectSwitch.isChecked() && (!sendOnHotSpotSwitch.isChecked()
+                    || hotSpotGate.shouldUpload(frame.hotRegions, frame.width, frame.height));
+            if (isConnected && event && retroService != null && uploadRateController.tryAcquire()) {
+                EventLog.getInstance().log(UPLOAD_STARTED, frame.trace.getFrameId(), uploadRateController.getRate());
+
+                // encode and call the API in the background, the result is posted back on the UI thread
+                FrameUploader.UploadCallback callback = rateControlledCallback(SystemClock.elapsedRealtime());
+                boolean started;
+                if (sendRadiometricSwitch.isChecked()) {
+                    started = frameUploader.uploadRadiometric(retroService, session.getDeviceId(), frame, callback);
+                } else {
+                    started = frameUploader.upload(retroService, session.getDeviceId(), frame, callback);
                 }
-            });
+                if (!started) {
+                    uploadRateController.cancel();
+                } else {
+                    hotSpotGate.onUploaded(frame.hotRegions);
+                }
+            }
         }
-    };
 
-    private final CameraHandler.StreamDataListener streamDataListener = new CameraHandler.StreamDataListener() {
+        /**
+         * Forget the frame kept for the next upload, eg when the switches changed what the uploads need
+         */
+        void dropUploadFrame() {
+            if (uploadFrame != null) {
+                uploadFrame.release();
+                uploadFrame = null;
+            }
+        }
 
-        @Override
-        public void images(FrameDataHolder dataHolder) {
+        /**
+         * Feed the round trip time of an upload started at {@code startMillis} to the rate controller
+         */
+        private FrameUploader.UploadCallback rateControlledCallback(long startMillis) {
+            return new FrameUploader.UploadCallback() {
+                @Override
+                public void onResponse(Call<String> call, Response<String> response) {
+                    uploadRateController.onResponse(SystemClock.elapsedRealtime() - startMillis, response.isSuccessful());
+                    updateStatusTexts();
+                    uploadCallback.onResponse(call, response);
+                }
 
-            runOnUiThread(new Runnable() {
                 @Override
-                public void run() {
-                    msxImage.setImageBitmap(dataHolder.msxBitmap);
-                    photoImage.setImageBitmap(dataHolder.dcBitmap);
+                public void onFailure(Call<String> call, Throwable t) {
+                    uploadRateController.onFailure();
+                    updateStatusTexts();
+                    uploadCallback.onFailure(call, t);
                 }
-            });
+
+                @Override
+                public void onQueued() {
+                    //No round trip to learn from, it is just no longer in flight
+                    uploadRateController.cancel();
+                    updateStatusTexts();
+                    uploadCallback.onQueued();
+                }
+            };
         }
 
-        @Override
-        public void images(Bitmap msxBitmap, Bitmap dcBitmap, Bitmap temperatureBitmap, double minTemp, double maxTemp) {
+        /**
+         * One upload per subject that leaves the view, with the frame where it was warmest
+         */
+        private final SubjectTracker.Listener subjectListener = new SubjectTracker.Listener() {
+            @Override
+            public void subject(SubjectTracker.SubjectEvent event) {
+                Log.d(TAG, "subject() " + event);
+                runOnUiThread(() -> {
+                    if (isConnected && sendPerSubjectSwitch.isChecked() && retroService != null) {
+                        frameUploader.uploadSubject(retroService, session.getDeviceId(), event, uploadCallback);
+                    } else {
+                        event.frame.release();
+                    }
+                });
+            }
+        };
 
-            try {
-                framesBuffer.put(new FrameDataHolder(msxBitmap, dcBitmap, temperatureBitmap, (int) minTemp, (int) maxTemp));
-            } catch (InterruptedException e) {
-                //if interrupted while waiting for adding a new item in the queue
-                Log.e(TAG, "images(), unable to add incoming images to frames buffer, exception:" + e);
+        void doConnect(Identity identity) {
+            CameraSession connecting = session;
+            connecting.setConnectionListener(connectionListener);
+            new Thread(() -> {
+                try {
+                    connecting.connect(identity, connectionStatusListener);
+                    startupTrace.mark(StartupTrace.Phase.CONNECTED);
+                    runOnUiThread(() -> {
+                        updateConnectionText(identity, "CONNECTED");
+                        isConnected = true;
+                        connecting.startStream(streamDataListener);
+                    });
+                } catch (IOException e) {
+                    runOnUiThread(() -> {
+                        Log.d(TAG, "Could not connect: " + e);
+                        disconnect();
+                    });
+                }
+            }).start();
+        }
+
+        /**
+         * Disconnect the camera, the slot can be connected again right away
+         */
+        void disconnect() {
+            CameraSession closing = session;
+            updateConnectionText(connectedIdentity, "DISCONNECTING");
+            connectedIdentity = null;
+            connectedSource = null;
+            Log.d(TAG, "disconnect() called with: connectedIdentity = [" + connectedIdentity + "]");
+            if (recordingSlot == this) {
+                recordSwitch.setChecked(false);
+            }
+            //Hand the buffers back, and don't upload a frame of this session after the next connect
+            dropUploadFrame();
+            if (displayedFrame != null) {
+                msxImage.setImageDrawable(null);
+                photoImage.setImageDrawable(null);
+                displayedFrame.release();
+                displayedFrame = null;
             }
+            new Thread(() -> {
+                cameraHandler.closeSession(closing);
+                if (framesBuffer.clear()) {
+                    renderStats.dropped();
+                }
+                Log.d(TAG, "disconnect(), " + closing + " " + closing.getFramePool() + " " + framesBuffer + " " + ApiClient.getInstance().getMetrics()
+                        + " " + closing.getHotSpotDetector() + " " + hotSpotGate + " " + closing.getSubjectTracker()
+                        + " " + closing.getAutoRange() + " " + closing.getFrameDemand()
+                        + " " + closing.getAverageProcessingMillis() + "ms per frame " + closing.getPipeline()
+                        + " " + closing.getLatencyTracer() + " " + closing.getConnection() + " " + cameraHandler.getConversionPool());
+                runOnUiThread(() -> {
+                    //Unless the slot was connected again in the meantime
+                    if (session == closing) {
+                        updateConnectionText(null, "DISCONNECTED");
+                        isConnected = false;
+                        deviceIdText.setEnabled(true);
+                    }
+                });
+            }).start();
+        }
 
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    Log.d(TAG, "framebuffer size:" + framesBuffer.size());
-                    FrameDataHolder poll = framesBuffer.poll();
-                    msxImage.setImageBitmap(poll.scaledTemperatureBitmap);
-                    photoImage.setImageBitmap(poll.dcBitmap);
-                    minTemperature = (int) minTemp;
-                    maxTemperature = (int) maxTemp;
-
-                    // update center pos temperature
-                    int width = poll.scaledTemperatureBitmap.getWidth() / 2;  // center pos
-                    int height = poll.scaledTemperatureBitmap.getHeight() / 2;
-                    double temp_val = (double) Color.red(poll.scaledTemperatureBitmap.getPixel(width, height));
-                    temp_val = minTemperature + temp_val * (maxTemperature - minTemperature) / 255.0;
-                    temp_val = Math.round(temp_val * 100.0) / 100.0;  // Round 2 decimals after dot
-                    centerPosTemperatureStatus.setText(getString(R.string.center_temp_text, String.valueOf(temp_val)) + "°C");
+        /**
+         * Update the UI text for connection status
+         */
+        void updateConnectionText(Identity identity, String status) {
+            String deviceId = identity != null ? identity.deviceId : "";
+            connectionStatus.setText(getString(R.string.connection_status_text, deviceId + " " + status));
+        }
+
+        /**
+         * Camera connecting state thermalImageStreamListener, the session connects again by itself when the connection
+         * drops, {@link #connectionListener} shows how that goes
+         */
+        private final ConnectionStatusListener connectionStatusListener = new ConnectionStatusListener() {
+            @Override
+            public void onDisconnected(@org.jetbrains.annotations.Nullable ErrorCode errorCode) {
+                Log.d(TAG, "onDisconnected errorCode:" + errorCode);
+            }
+        };
+
+        /**
+         * Shows the state of the connection, its drops and how fast it recovered from them
+         * <p>
+         * Note that callbacks are received on a non-ui thread so have to eg use {@link #runOnUiThread(Runnable)} to interact view UI components
+         */
+        private final CameraConnection.Listener connectionListener = new CameraConnection.Listener() {
+            @Override
+            public void stateChanged(CameraConnection connection, CameraConnection.State state) {
+                runOnUiThread(() -> {
+                    if (connectedIdentity != null && connectedIdentity.deviceId.equals(connection.getName())) {
+                        updateConnectionText(connectedIdentity, connection.summary());
+                    }
+                });
+            }
+        };
+
+        /**
+         * Frames of the session, called on its analyze thread
+         */
+        final CameraHandler.StreamDataListener streamDataListener = new CameraHandler.StreamDataListener() {
+
+            @Override
+            public void images(FrameDataHolder dataHolder) {
+                //Never blocks the analyze thread, a frame the UI has not picked up yet is replaced by this one
+                renderStats.offered();
+                if (framesBuffer.offer(dataHolder)) {
+                    renderStats.dropped();
                 }
-            });
 
+                //Only one pending UI update at the time, it will pick up whatever frame is latest when it runs
+                if (showFramePending.compareAndSet(false, true)) {
+                    runOnUiThread(showLatestFrame);
+                }
+            }
+        };
+
+        /**
+         * Show the latest frame from {@link #framesBuffer}, runs on the UI thread
+         */
+        private final Runnable showLatestFrame = new Runnable() {
+            @Override
+            public void run() {
+                showFramePending.set(false);
+                FrameDataHolder poll = framesBuffer.poll();
+                if (poll == null) {
+                    return;
+                }
+                long startNanos = System.nanoTime();
+                try {
+                    show(poll);
+                } finally {
+                    renderStats.done(System.nanoTime() - startNanos);
+                }
+            }
+        };
+
+        /**
+         * Show a frame and keep it for the next upload if it has what the upload needs, the frame's reference is
+         * handed over
+         */
+        private void show(FrameDataHolder poll) {
+            if (!isInUse()) {
+                //Was on its way when the slot was disconnected
+                poll.release();
+                return;
+            }
+            if (hasUploadProducts(poll)) {
+                if (uploadFrame != null) {
+                    uploadFrame.release();
+                }
+                uploadFrame = poll.retain();
+            }
+            if (poll.dcBitmap == null || poll.scaledTemperatureBitmap == null) {
+                //Only computed for an upload
+                poll.release();
+                return;
+            }
+            msxImage.setImageBitmap(poll.scaledTemperatureBitmap);
+            photoImage.setImageBitmap(poll.dcBitmap);
+            poll.trace.mark(LatencyTracer.DISPLAYED);
+            startupTrace.mark(StartupTrace.Phase.FIRST_FRAME);
+
+            // the previous frame is no longer on screen, hand its buffers back
+            if (displayedFrame != null) {
+                displayedFrame.release();
+            }
+            displayedFrame = poll;
+
+            // update center pos temperature, from the raw temperatures
+            int x = poll.width / 2;  // center pos
+            int y = poll.height / 2;
+            TemperatureQuery query = poll.query;
+            FrameStatistics.Snapshot statistics = poll.statistics;
+            if (query == null || statistics == null) {
+                return;
+            }
+            centerPosTemperatureStatus.setText(getString(R.string.center_temp_text,
+                    String.format(Locale.US, "%.2f", query.spot(x, y)),
+                    String.format(Locale.US, "%.2f", query.mean(x - CENTER_BOX, y - CENTER_BOX, x + CENTER_BOX, y + CENTER_BOX)),
+                    String.format(Locale.US, "%.2f", query.max(x - CENTER_BOX, y - CENTER_BOX, x + CENTER_BOX, y + CENTER_BOX))));
+            sceneStatistics.setText(getString(R.string.scene_stats_text,
+                    String.format(Locale.US, "%.1f", statistics.min),
+                    String.format(Locale.US, "%.1f", statistics.max),
+                    String.format(Locale.US, "%.1f", statistics.mean),
+                    poll.minTemp, poll.maxTemp,
+                    String.format(Locale.US, "%.1f", session.getAverageProcessingMillis())));
         }
-    };
+    }
 
     /**
      * Camera Discovery thermalImageStreamListener, is notified if a new camera was found during a active discovery phase
@@ -480,13 +1127,10 @@ public class MainActivity extends AppCompatActivity {
     private DiscoveryEventListener cameraDiscoveryListener = new DiscoveryEventListener() {
         @Override
         public void onCameraFound(Identity identity) {
-            Log.d(TAG, "onCameraFound identity:" + identity);
-            runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    cameraHandler.add(identity);
-                }
-            });
+            //Found again on every rescan, the registry keeps it once
+            boolean added = cameraHandler.add(identity);
+            Log.d(TAG, "onCameraFound identity:" + identity + (added ? "" : ", known already"));
+            startupTrace.mark(StartupTrace.Phase.CAMERA_FOUND);
         }
 
         @Override
@@ -517,15 +1161,98 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupViews() {
-        connectionStatus = findViewById(R.id.connection_status_text);
-        centerPosTemperatureStatus = findViewById(R.id.center_temp_text);
+        slots = new CameraSlot[]{
+                new CameraSlot(R.id.device_id_text, R.id.connection_status_text, R.id.center_temp_text,
+                        R.id.scene_stats_text, R.id.msx_image, R.id.photo_image),
+                new CameraSlot(R.id.device_id_text_2, R.id.connection_status_text_2, R.id.center_temp_text_2,
+                        R.id.scene_stats_text_2, R.id.msx_image_2, R.id.photo_image_2)};
+        autoRangeSwitch = findViewById(R.id.auto_range_switch);
+        autoRangeSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            for (CameraSlot slot : slots) {
+                if (slot.session != null) {
+                    slot.session.setAutoRanging(isChecked);
+                }
+            }
+        });
+        binningSpinner = findViewById(R.id.binning_spinner);
+        binningSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                for (CameraSlot slot : slots) {
+                    if (slot.session != null) {
+                        slot.session.setBinning(BINNING_FACTORS[position], BINNING_MODES[position]);
+                    }
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
         discoveryStatus = findViewById(R.id.discovery_status);
         sendFreqStatus = findViewById(R.id.send_freq_text);
         sendFreqSlider = findViewById(R.id.send_freq_slider);
+        uploadStatus = findViewById(R.id.upload_status_text);
+        pipelineStatus = findViewById(R.id.pipeline_stats_text);
+        latencyOverlay = findViewById(R.id.latency_overlay_text);
+        latencyOverlaySwitch = findViewById(R.id.latency_overlay_switch);
+        latencyOverlaySwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            updateStatusTexts();
+            latencyOverlay.setVisibility(isChecked ? View.VISIBLE : View.GONE);
+        });
+        sendRadiometricSwitch = findViewById(R.id.send_radiometric_switch);
+        sendBatchSwitch = findViewById(R.id.send_batch_switch);
+        sendOnHotSpotSwitch = findViewById(R.id.send_on_hot_spot_switch);
+        sendPerSubjectSwitch = findViewById(R.id.send_per_subject_switch);
+        sendBatchSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> setBatching(isChecked));
+        //The frame kept for the next upload may lack the hot regions the gate needs now
+        sendOnHotSpotSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            for (CameraSlot slot : slots) {
+                slot.dropUploadFrame();
+                slot.updateUploadNeed();
+            }
+        });
+        replayMaxSpeedSwitch = findViewById(R.id.replay_max_speed_switch);
+        replayLoopSwitch = findViewById(R.id.replay_loop_switch);
+        //Records the first connected camera
+        recordSwitch = findViewById(R.id.record_switch);
+        recordSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (!isChecked) {
+                if (recordingSlot != null) {
+                    recordingSlot.setNeed(recordingSlot.recordNeed, 0, 0);
+                    recordingSlot.session.stopRecording();
+                    recordingSlot = null;
+                }
+                return;
+            }
+            CameraSlot slot = null;
+            for (CameraSlot candidate : slots) {
+                if (candidate.isInUse()) {
+                    slot = candidate;
+                    break;
+                }
+            }
+            if (slot == null) {
+                showMessage.show("Connect a camera to record");
+                buttonView.setChecked(false);
+                return;
+            }
+            try {
+                slot.session.startRecording(getRecordingFile());
+                slot.setNeed(slot.recordNeed, FrameDemand.TEMPERATURES, 0);
+                recordingSlot = slot;
+            } catch (IOException e) {
+                showMessage.show("Could not record: " + e.getMessage());
+                buttonView.setChecked(false);
+            }
+        });
+        sendPerSubjectSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            for (CameraSlot slot : slots) {
+                slot.setNeed(slot.subjectNeed, isChecked ? SUBJECT_PRODUCTS : 0, 0);
+                slot.updateUploadNeed();
+            }
+        });
         sendUrlText = findViewById(R.id.send_url_text);
-
-        msxImage = findViewById(R.id.msx_image);
-        photoImage = findViewById(R.id.photo_image);
     }
 
 }
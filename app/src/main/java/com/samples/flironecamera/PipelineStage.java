@@ -0,0 +1,216 @@
+package com.samples.flironecamera;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * One stage of the {@link FramePipeline}: a bounded queue drained in order by a dedicated worker thread, so a slow
+ * stage only delays itself and the stages behind it while the ones in front keep running on their own cores.
+ * <p>
+ * What happens when the queue is full is the stage's overflow policy: {@link #DROP_OLDEST} keeps the freshest items,
+ * {@link #DROP_NEWEST} keeps the ones that were there first and {@link #BLOCK} makes the producer wait. Items that
+ * are dropped, or still queued when the stage stops, are handed to the {@link Discard} so their buffers can be
+ * released. The worker owns every item it is given and hands it on as the last thing it does. When it returns false,
+ * or throws, the item is discarded as well and counted as dropped; a worker that throws after handing part of the
+ * item on has to take that part out of the item first, so the discard doesn't release what is owned elsewhere now.
+ * <p>
+ * Thread safe.
+ */
+class PipelineStage<T> {
+
+    private static final String TAG = "PipelineStage";
+
+    static final int DROP_OLDEST = 0;
+    static final int DROP_NEWEST = 1;
+    static final int BLOCK = 2;
+
+    interface Worker<T> {
+        /**
+         * @return false to drop the item instead, the stage discards it
+         */
+        boolean process(T item);
+    }
+
+    interface Discard<T> {
+        void discard(T item);
+    }
+
+    private final int policy;
+    private final BlockingQueue<T> queue;
+    private final Worker<T> worker;
+    private final Discard<T> discard;
+    private final StageStats stats;
+
+    private Thread thread;
+    private volatile boolean running;
+    private long failures;
+
+    /**
+     * @param capacity items waiting for the worker before the overflow policy kicks in
+     * @param policy   {@link #DROP_OLDEST}, {@link #DROP_NEWEST} or {@link #BLOCK}
+     */
+    PipelineStage(String name, int capacity, int policy, Worker<T> worker, Discard<T> discard) {
+        if (policy != DROP_OLDEST && policy != DROP_NEWEST && policy != BLOCK) {
+            throw new IllegalArgumentException("unknown policy " + policy);
+        }
+        this.policy = policy;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.worker = worker;
+        this.discard = discard;
+        this.stats = new StageStats(name, capacity);
+    }
+
+    StageStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Start the worker thread, a stopped stage can be started again
+     */
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        //Anything offered while the stage was stopping
+        drain();
+        running = true;
+        thread = new Thread(this::run, stats.getName());
+        thread.start();
+    }
+
+    /**
+     * Stop the worker after the item it is processing and discard the queued ones
+     */
+    void stop() {
+        Thread worker;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            worker = thread;
+            thread = null;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+    }
+
+    /**
+     * Hand an item to the stage, a stopped stage discards it
+     *
+     * @return false if the item was discarded
+     */
+    boolean offer(T item) {
+        stats.offered();
+        if (!running) {
+            drop(item);
+            return false;
+        }
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!queue.offer(item)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                return queued(item);
+            case DROP_NEWEST:
+                if (!queue.offer(item)) {
+                    drop(item);
+                    return false;
+                }
+                return queued(item);
+            default:
+                try {
+                    queue.put(item);
+                    return queued(item);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(item);
+                    return false;
+                }
+        }
+    }
+
+    /**
+     * The stage may have stopped after {@link #offer} checked, and {@link #stop()} drained the queue before the item
+     * went in. Nothing would take it out again, so it is discarded here along with anything else that got in late.
+     *
+     * @return false if the item was discarded here, true if it was still taken by the worker or another drain
+     */
+    private boolean queued(T item) {
+        if (running) {
+            return true;
+        }
+        boolean discarded = queue.remove(item);
+        if (discarded) {
+            drop(item);
+        }
+        drain();
+        return !discarded;
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    /**
+     * Items whose worker threw
+     */
+    synchronized long getFailures() {
+        return failures;
+    }
+
+    private void run() {
+        while (running) {
+            T item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            long startNanos = System.nanoTime();
+            boolean handedOn;
+            try {
+                handedOn = worker.process(item);
+            } catch (RuntimeException e) {
+                Log.e(TAG, stats.getName() + " failed, discarding the item", e);
+                synchronized (this) {
+                    failures++;
+                }
+                drop(item);
+                continue;
+            }
+            if (handedOn) {
+                stats.done(System.nanoTime() - startNanos);
+            } else {
+                drop(item);
+            }
+        }
+    }
+
+    private void drain() {
+        T item;
+        while ((item = queue.poll()) != null) {
+            drop(item);
+        }
+    }
+
+    private void drop(T item) {
+        stats.dropped();
+        discard.discard(item);
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineStage{" + stats + ", failures=" + getFailures() + "}";
+    }
+}
@@ -0,0 +1,347 @@
+package com.samples.flironecamera;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only FIFO of byte records, stored in memory-mapped, fixed size segment files.
+ * <p>
+ * Each segment file ({@code <index>.seg}) holds records as {@code [int length][int crc32][payload]} followed by
+ * zeros, a zero length marks the end. The read position lives in a small mapped {@code cursor} file. All writes go
+ * through the page cache, so the log survives the process being killed at any point; on open a record that was
+ * only partly written (bad CRC) is treated as the end of its segment.
+ * <p>
+ * Consumed segments are deleted. When the segments would grow beyond the disk budget the oldest segment is evicted,
+ * including records that were not read yet; the {@link EvictionListener} is told about each of those.
+ * <p>
+ * All methods are synchronized.
+ */
+class SegmentLog implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int RECORD_HEADER = 8;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long diskBudget;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final MappedByteBuffer cursor;
+    private final RandomAccessFile cursorFile;
+    private final CRC32 crc = new CRC32();
+
+    //Read position: segments.get(0) at readOffset
+    private int readOffset;
+    private int peekedLength = -1;
+
+    private long appended, consumed, evicted;
+    private EvictionListener evictionListener;
+
+    /**
+     * Called with the log locked, on the thread whose {@link #append} made room, don't call back into the log
+     */
+    interface EvictionListener {
+        void evicted(byte[] record);
+    }
+
+    private static final class Segment {
+        final long index;
+        final File file;
+        MappedByteBuffer buffer;
+        int writeOffset;
+        int records;
+
+        Segment(long index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+    }
+
+    /**
+     * @param segmentSize max bytes per segment file, also the max record size (minus an 8 byte header)
+     * @param diskBudget  max bytes of all segment files together, raised to two segments if smaller
+     */
+    SegmentLog(File directory, int segmentSize, long diskBudget) throws IOException {
+        if (segmentSize <= RECORD_HEADER) {
+            throw new IllegalArgumentException("segmentSize too small");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.diskBudget = Math.max(diskBudget, 2L * segmentSize);
+
+        cursorFile = new RandomAccessFile(new File(directory, CURSOR_FILE), "rw");
+        cursor = cursorFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 12);
+        recover();
+    }
+
+    /**
+     * Get every record that is evicted before it was read
+     */
+    synchronized void setEvictionListener(EvictionListener listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Append a record at the tail
+     *
+     * @throws IOException if the record doesn't fit in a segment or the disk write failed
+     */
+    synchronized void append(byte[] data, int offset, int length) throws IOException {
+        if (length <= 0 || length > segmentSize - RECORD_HEADER) {
+            throw new IOException("record of " + length + " bytes doesn't fit in a segment");
+        }
+        Segment tail = segments.get(segments.size() - 1);
+        if (tail.writeOffset + RECORD_HEADER + length > segmentSize) {
+            evictForNewSegment();
+            if (segments.size() > 1) {
+                //Only the head and the tail stay mapped, a middle segment is mapped again once it becomes the head
+                tail.buffer = null;
+            }
+            tail = createSegment(tail.index + 1);
+            segments.add(tail);
+        }
+        MappedByteBuffer buffer = map(tail);
+        crc.reset();
+        crc.update(data, offset, length);
+        //Payload and CRC first, the length last, so a torn write is never mistaken for a record
+        buffer.putInt(tail.writeOffset + 4, (int) crc.getValue());
+        buffer.position(tail.writeOffset + RECORD_HEADER);
+        buffer.put(data, offset, length);
+        buffer.putInt(tail.writeOffset, length);
+        tail.writeOffset += RECORD_HEADER + length;
+        tail.records++;
+        appended++;
+    }
+
+    /**
+     * Get the oldest record without removing it
+     *
+     * @return a copy of the record or null if the log is empty
+     */
+    synchronized byte[] peek() throws IOException {
+        Segment head = segments.get(0);
+        while (readOffset >= head.writeOffset && segments.size() > 1) {
+            deleteHead();
+            head = segments.get(0);
+        }
+        if (readOffset >= head.writeOffset) {
+            return null;
+        }
+        MappedByteBuffer buffer = map(head);
+        int length = buffer.getInt(readOffset);
+        byte[] record = new byte[length];
+        buffer.position(readOffset + RECORD_HEADER);
+        buffer.get(record);
+        peekedLength = length;
+        return record;
+    }
+
+    /**
+     * Remove the record returned by the last {@link #peek()}
+     *
+     * @return false if there is nothing to commit, eg because the record was evicted in the meantime
+     */
+    synchronized boolean commit() {
+        if (peekedLength < 0) {
+            return false;
+        }
+        readOffset += RECORD_HEADER + peekedLength;
+        peekedLength = -1;
+        segments.get(0).records--;
+        consumed++;
+        storeCursor();
+        return true;
+    }
+
+    synchronized boolean isEmpty() {
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            if ((i == 0 ? readOffset : 0) < segment.writeOffset) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of records not consumed yet
+     */
+    synchronized int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.records;
+        }
+        return size;
+    }
+
+    synchronized long getAppended() {
+        return appended;
+    }
+
+    synchronized long getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Records thrown away unread to stay within the disk budget
+     */
+    synchronized long getEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cursorFile.close();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        long[] indexes = new long[files == null ? 0 : files.length];
+        for (int i = 0; i < indexes.length; i++) {
+            String name = files[i].getName();
+            try {
+                indexes[i] = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                indexes[i] = -1;
+            }
+        }
+        Arrays.sort(indexes);
+
+        long cursorSegment = cursor.getLong(0);
+        int cursorOffset = cursor.getInt(8);
+        for (long index : indexes) {
+            if (index < 0) {
+                continue;
+            }
+            Segment segment = new Segment(index, segmentFile(index));
+            if (index < cursorSegment) {
+                //Fully consumed before the process died
+                delete(segment);
+                continue;
+            }
+            scan(segment);
+            segments.add(segment);
+        }
+        for (int i = 1; i < segments.size() - 1; i++) {
+            segments.get(i).buffer = null;
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(createSegment(cursorSegment));
+            readOffset = 0;
+        } else if (segments.get(0).index == cursorSegment) {
+            readOffset = Math.min(cursorOffset, segments.get(0).writeOffset);
+            segments.get(0).records -= countRecords(segments.get(0), readOffset);
+        } else {
+            readOffset = 0;
+        }
+        storeCursor();
+    }
+
+    /**
+     * Find the end of the valid records in a segment
+     */
+    private void scan(Segment segment) throws IOException {
+        MappedByteBuffer buffer = map(segment);
+        int offset = 0;
+        int records = 0;
+        while (offset + RECORD_HEADER <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.position(offset + RECORD_HEADER);
+            buffer.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            offset += RECORD_HEADER + length;
+            records++;
+        }
+        segment.writeOffset = offset;
+        segment.records = records;
+    }
+
+    private int countRecords(Segment segment, int until) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        int records = 0;
+        while (offset < until) {
+            offset += RECORD_HEADER + buffer.getInt(offset);
+            records++;
+        }
+        return records;
+    }
+
+    private void evictForNewSegment() throws IOException {
+        while (segments.size() > 1 && (long) (segments.size() + 1) * segmentSize > diskBudget) {
+            Segment head = segments.get(0);
+            if (evictionListener != null) {
+                MappedByteBuffer buffer = map(head);
+                for (int offset = readOffset; offset < head.writeOffset; ) {
+                    byte[] record = new byte[buffer.getInt(offset)];
+                    buffer.position(offset + RECORD_HEADER);
+                    buffer.get(record);
+                    offset += RECORD_HEADER + record.length;
+                    evictionListener.evicted(record);
+                }
+            }
+            evicted += head.records;
+            deleteHead();
+        }
+    }
+
+    private void deleteHead() {
+        delete(segments.remove(0));
+        peekedLength = -1;
+        readOffset = 0;
+        storeCursor();
+    }
+
+    private Segment createSegment(long index) throws IOException {
+        Segment segment = new Segment(index, segmentFile(index));
+        map(segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(Segment segment) throws IOException {
+        if (segment.buffer == null) {
+            try (RandomAccessFile file = new RandomAccessFile(segment.file, "rw")) {
+                //Mapping beyond the end grows the file with zeros, which reads as "no more records"
+                segment.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+        }
+        return segment.buffer;
+    }
+
+    private void delete(Segment segment) {
+        segment.buffer = null;
+        //noinspection ResultOfMethodCallIgnored
+        segment.file.delete();
+    }
+
+    private void storeCursor() {
+        cursor.putLong(0, segments.get(0).index);
+        cursor.putInt(8, readOffset);
+    }
+
+    private File segmentFile(long index) {
+        return new File(directory, String.format(Locale.US, "%019d", index) + SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,121 @@
+package com.samples.flironecamera;
+
+import java.util.Locale;
+
+/**
+ * Counters of one stage of the {@link FramePipeline}: items offered to it, items it finished and items it dropped,
+ * how many are inside the stage (queued or being processed) right now and at most, and the time spent processing.
+ * <p>
+ * Every offered item ends up either {@link #done(long) done} or {@link #dropped() dropped}.
+ * <p>
+ * Thread safe.
+ */
+class StageStats {
+
+    private final String name;
+    private final int capacity;
+
+    private long offered, processed, dropped;
+    private int occupancy, maxOccupancy;
+    private long busyNanos;
+    private long firstOfferedNanos = -1;
+
+    /**
+     * @param capacity items the stage holds before its overflow policy kicks in, 0 when it has no queue of its own
+     */
+    StageStats(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * An item entered the stage
+     */
+    synchronized void offered() {
+        if (firstOfferedNanos < 0) {
+            firstOfferedNanos = System.nanoTime();
+        }
+        offered++;
+        occupancy++;
+        if (occupancy > maxOccupancy) {
+            maxOccupancy = occupancy;
+        }
+    }
+
+    /**
+     * An item left the stage after {@code nanos} of processing
+     */
+    synchronized void done(long nanos) {
+        processed++;
+        occupancy--;
+        busyNanos += nanos;
+    }
+
+    /**
+     * An item left the stage without being processed, because of an overflow or because nobody needed it
+     */
+    synchronized void dropped() {
+        dropped++;
+        occupancy--;
+    }
+
+    synchronized long getOffered() {
+        return offered;
+    }
+
+    synchronized long getProcessed() {
+        return processed;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    synchronized int getOccupancy() {
+        return occupancy;
+    }
+
+    synchronized int getMaxOccupancy() {
+        return maxOccupancy;
+    }
+
+    /**
+     * Items processed per second since the first one was offered
+     */
+    synchronized double getThroughput() {
+        if (firstOfferedNanos < 0) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - firstOfferedNanos;
+        return elapsed <= 0 ? 0 : processed * 1e9 / elapsed;
+    }
+
+    /**
+     * Average processing time of an item in ms
+     */
+    synchronized double getAverageMillis() {
+        return processed == 0 ? 0 : busyNanos / 1e6 / processed;
+    }
+
+    /**
+     * One line for the status text, eg {@code convert 8.7/s 1/2 (max 2) dropped 3 4.1ms}
+     */
+    synchronized String summary() {
+        return String.format(Locale.US, "%s %.1f/s %d/%s (max %d) dropped %d %.1fms", name, getThroughput(),
+                occupancy, capacity > 0 ? String.valueOf(capacity) : "-", maxOccupancy, dropped, getAverageMillis());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StageStats{" + name + ", offered=" + offered + ", processed=" + processed + ", dropped=" + dropped
+                + ", occupancy=" + occupancy + ", maxOccupancy=" + maxOccupancy + ", averageMillis=" + getAverageMillis() + "}";
+    }
+}
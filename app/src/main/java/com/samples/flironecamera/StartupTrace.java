@@ -0,0 +1,95 @@
+package com.samples.flironecamera;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times the cold start, from the start of the process to the first camera frame on screen. Every {@link Phase} is
+ * marked once, the first time it is reached, in milliseconds since the process started; before Android 7 the start
+ * of the process isn't known and the loading of this class stands in for it. The marks go to logcat and the
+ * {@link EventLog}, so the startup of a device rebooted at the start of a shift can be read back from either.
+ * <p>
+ * Thread safe.
+ */
+class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+
+    enum Phase {
+        ACTIVITY_CREATED, FIRST_DRAW, SDK_READY, NETWORK_READY, DISCOVERY_STARTED, CAMERA_FOUND, CONNECTED, FIRST_FRAME
+    }
+
+    private static final EventLog.Event PHASE = EventLog.event(EventLog.INFO, TAG, "phase", "phase", "ms");
+    private static final StartupTrace instance = new StartupTrace();
+
+    /**
+     * The startup of the app
+     */
+    static StartupTrace getInstance() {
+        return instance;
+    }
+
+    //SystemClock.elapsedRealtime() of the start of the process
+    private final long originMillis;
+    private final long[] marks = new long[Phase.values().length];
+
+    private StartupTrace() {
+        originMillis = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+        Arrays.fill(marks, -1);
+    }
+
+    /**
+     * Mark a phase as reached now, unless it was marked before
+     *
+     * @return true if this was the first time
+     */
+    boolean mark(Phase phase) {
+        long millis = SystemClock.elapsedRealtime() - originMillis;
+        synchronized (this) {
+            if (marks[phase.ordinal()] >= 0) {
+                return false;
+            }
+            marks[phase.ordinal()] = millis;
+        }
+        EventLog.getInstance().log(PHASE, phase.ordinal(), millis);
+        Log.i(TAG, phase + " +" + millis + "ms");
+        if (phase == Phase.FIRST_FRAME) {
+            Log.i(TAG, summary());
+        }
+        return true;
+    }
+
+    /**
+     * Milliseconds from the start of the process to {@code phase}, -1 while it isn't reached
+     */
+    synchronized long get(Phase phase) {
+        return marks[phase.ordinal()];
+    }
+
+    /**
+     * The phases reached so far, in the order of the enum, eg "Startup: FIRST_DRAW 412ms, SDK_READY 655ms"
+     */
+    synchronized String summary() {
+        StringBuilder summary = new StringBuilder("Startup:");
+        String separator = " ";
+        for (Phase phase : Phase.values()) {
+            long millis = marks[phase.ordinal()];
+            if (millis >= 0) {
+                summary.append(separator).append(String.format(Locale.US, "%s %dms", phase, millis));
+                separator = ", ";
+            }
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "StartupTrace{" + summary() + "}";
+    }
+}
@@ -0,0 +1,122 @@
+package com.samples.flironecamera;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the stream of frames into one event per subject: the warm regions of every frame are followed with a
+ * {@link BlobTracker} and the frame where a subject was warmest is kept until the subject leaves the view.
+ * <p>
+ * The best frame of every tracked subject is retained, so with N people in view N frames stay out of the
+ * {@link FramePool}. Methods are synchronized, frames come from the analyze thread and {@link #clear()} from whoever
+ * disconnects.
+ */
+class SubjectTracker implements BlobTracker.Listener {
+
+    /**
+     * Everything known about a subject that left the view
+     */
+    static final class SubjectEvent {
+        final int subjectId;
+        //Frame where the subject was warmest, the listener owns this reference
+        final FrameDataHolder frame;
+        final HotSpotDetector.Region region;
+        final long firstSeen, lastSeen;
+        final int frames;
+
+        SubjectEvent(BlobTracker.Track track, FrameDataHolder frame) {
+            this.subjectId = track.id;
+            this.frame = frame;
+            this.region = track.best;
+            this.firstSeen = track.firstSeen;
+            this.lastSeen = track.lastSeen;
+            this.frames = track.hits;
+        }
+
+        @Override
+        public String toString() {
+            return "SubjectEvent{id=" + subjectId + ", frames=" + frames + ", " + region + "}";
+        }
+    }
+
+    interface Listener {
+        /**
+         * Called on the analyze thread, the listener has to {@link FrameDataHolder#release()} the event's frame
+         */
+        void subject(SubjectEvent event);
+    }
+
+    private final BlobTracker tracker;
+    private final Map<Integer, FrameDataHolder> bestFrames = new HashMap<>();
+    private volatile Listener listener;
+
+    private FrameDataHolder currentFrame;
+    private int[] ids = new int[16];
+
+    /**
+     * @param maxMissed frames a subject may be out of view before its event is sent
+     * @param minHits   frames a subject has to be seen on, fewer is treated as noise
+     */
+    SubjectTracker(int maxMissed, int minHits) {
+        //Boxes overlapping 20% are the same subject, otherwise a centroid within 80 pixels
+        this.tracker = new BlobTracker(0.2, 80, maxMissed, minHits, this);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Track the {@link FrameDataHolder#hotRegions} of a new frame, the frame is retained if it is the best so far of
+     * one of its subjects
+     */
+    synchronized void onFrame(FrameDataHolder frame) {
+        if (frame.hotRegions == null) {
+            return;
+        }
+        if (ids.length < frame.hotRegions.length) {
+            ids = new int[frame.hotRegions.length];
+        }
+        currentFrame = frame;
+        try {
+            tracker.update(frame.hotRegions, frame.timestamp, ids);
+        } finally {
+            currentFrame = null;
+        }
+    }
+
+    /**
+     * End all subjects in view and send their events
+     */
+    synchronized void clear() {
+        tracker.clear();
+    }
+
+    synchronized int getSubjectsInView() {
+        return tracker.getTrackCount();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return tracker.toString();
+    }
+
+    @Override
+    public void improved(BlobTracker.Track track) {
+        FrameDataHolder previous = bestFrames.put(track.id, currentFrame.retain());
+        if (previous != null) {
+            previous.release();
+        }
+    }
+
+    @Override
+    public void ended(BlobTracker.Track track, boolean confirmed) {
+        FrameDataHolder best = bestFrames.remove(track.id);
+        Listener listener = this.listener;
+        if (confirmed && listener != null) {
+            listener.subject(new SubjectEvent(track, best));
+        } else {
+            best.release();
+        }
+    }
+}
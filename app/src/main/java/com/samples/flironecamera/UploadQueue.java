@@ -0,0 +1,316 @@
+package com.samples.flironecamera;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Durable outbound queue for uploads the server could not take, backed by a {@link SegmentLog}.
+ * <p>
+ * A background thread sends the queued uploads in order, one at the time. When the server is unreachable, or the
+ * queue can't be read, it backs off exponentially up to {@link #MAX_BACKOFF_MILLIS}; an upload the server answers with
+ * a server error is retried {@code maxAttempts} times and then dropped, one it rejects is dropped right away. Whatever
+ * is still queued when the process dies is sent after the next start.
+ * <p>
+ * Uploads that are dropped, or evicted from the log to stay within the disk budget, are handed to the
+ * {@link DropListener}, eg so a radiometric stream can restart with a keyframe.
+ */
+class UploadQueue {
+
+    private static final String TAG = "UploadQueue";
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    private static final long IDLE_WAIT_MILLIS = 5000;
+
+    private final SegmentLog log;
+    private final int maxAttempts;
+    private final Object lock = new Object();
+
+    private volatile ApiServices service;
+    private volatile boolean running;
+    private Thread drainThread;
+    //The upload the drain thread is sending, cancelled by stop()
+    private volatile Call<String> call;
+
+    private volatile long delivered, dropped, retries;
+    //Evicted uploads by UploadRecord kind, guarded by itself
+    private final long[] evictedByKind = new long[UploadRecord.KIND_SUBJECT + 1];
+
+    private volatile DropListener dropListener;
+
+    /**
+     * Called on the drain thread for a dropped upload, on the appending thread for an evicted one, don't block
+     */
+    interface DropListener {
+        void dropped(UploadRecord record);
+    }
+
+    /**
+     * @param directory   where the segment files are kept, eg under {@link FileHandler#getImageStoragePath()}
+     * @param segmentSize bytes per segment file, an upload has to fit in one
+     * @param diskBudget  max bytes on disk, the oldest uploads are evicted beyond it
+     * @param maxAttempts times an upload is sent before it is dropped when the server keeps failing on it
+     */
+    UploadQueue(File directory, int segmentSize, long diskBudget, int maxAttempts) throws IOException {
+        this.log = new SegmentLog(directory, segmentSize, diskBudget);
+        this.maxAttempts = maxAttempts;
+        log.setEvictionListener(this::evicted);
+    }
+
+    /**
+     * Get the uploads that won't be delivered
+     */
+    void setDropListener(DropListener listener) {
+        this.dropListener = listener;
+    }
+
+    /**
+     * Set the API to drain to, eg after the server URL changed
+     */
+    void setService(ApiServices service) {
+        this.service = service;
+        wakeUp();
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        drainThread = new Thread(this::drain, TAG);
+        drainThread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (drainThread != null) {
+            drainThread.interrupt();
+            drainThread = null;
+        }
+        Call<String> sending = call;
+        if (sending != null) {
+            sending.cancel();
+        }
+    }
+
+    /**
+     * Stop draining, wait for the drain thread to finish and close the log, so another queue can be opened on the same
+     * directory. The queue can't be used afterwards.
+     */
+    void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = drainThread;
+            stop();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            Log.e(TAG, "close(), unable to close queue", e);
+        }
+    }
+
+    boolean isEmpty() {
+        return log.isEmpty();
+    }
+
+    /**
+     * Persist an upload, it will be sent after everything that is already queued
+     *
+     * @return false if it could not be written
+     */
+    boolean append(UploadRecord record) {
+        try {
+            byte[] data = record.toBytes();
+            log.append(data, 0, data.length);
+        } catch (IOException e) {
+            Log.e(TAG, "append(), unable to queue upload", e);
+            return false;
+        }
+        wakeUp();
+        return true;
+    }
+
+    int size() {
+        return log.size();
+    }
+
+    long getDelivered() {
+        return delivered;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    long getEvicted() {
+        return log.getEvicted();
+    }
+
+    /**
+     * Evicted uploads of one kind
+     *
+     * @param kind {@link UploadRecord#KIND_IMAGES} etc
+     */
+    long getEvicted(int kind) {
+        synchronized (evictedByKind) {
+            return evictedByKind[kind];
+        }
+    }
+
+    long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadQueue{size=" + log.size() + ", delivered=" + delivered + ", retries=" + retries
+                + ", dropped=" + dropped + ", evicted=" + log.getEvicted() + "}";
+    }
+
+    /**
+     * An upload is evicted from the log unread, called with the log locked
+     */
+    private void evicted(byte[] data) {
+        UploadRecord record;
+        try {
+            record = UploadRecord.fromBytes(data);
+        } catch (IOException e) {
+            //Unreadable, it wouldn't have been delivered either
+            return;
+        }
+        synchronized (evictedByKind) {
+            if (record.kind < evictedByKind.length) {
+                evictedByKind[record.kind]++;
+            }
+        }
+        notifyDropped(record);
+    }
+
+    /**
+     * Remove the upload at the head of the log without delivering it
+     */
+    private void drop(UploadRecord record) {
+        dropped++;
+        //Otherwise it was evicted while it was being sent, and the listener was told then
+        if (log.commit()) {
+            notifyDropped(record);
+        }
+    }
+
+    private void notifyDropped(UploadRecord record) {
+        DropListener listener = dropListener;
+        if (listener != null) {
+            listener.dropped(record);
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private void drain() {
+        try {
+            long backoff = MIN_BACKOFF_MILLIS;
+            int attempts = 0;
+            while (running) {
+                try {
+                    ApiServices api = service;
+                    byte[] data = log.peek();
+                    if (data == null || api == null) {
+                        synchronized (lock) {
+                            lock.wait(IDLE_WAIT_MILLIS);
+                        }
+                        continue;
+                    }
+
+                    UploadRecord record;
+                    try {
+                        record = UploadRecord.fromBytes(data);
+                    } catch (IOException e) {
+                        Log.e(TAG, "drain(), dropping unreadable upload", e);
+                        log.commit();
+                        dropped++;
+                        continue;
+                    }
+
+                    try {
+                        call = record.toCall(api);
+                        //Otherwise stop() could have missed the call to cancel
+                        if (!running) {
+                            return;
+                        }
+                        Response<String> response = call.execute();
+                        if (response.isSuccessful()) {
+                            log.commit();
+                            delivered++;
+                            attempts = 0;
+                            backoff = MIN_BACKOFF_MILLIS;
+                            continue;
+                        }
+                        //Only a server error is worth trying again, the server will keep rejecting anything else
+                        if (response.code() < 500) {
+                            Log.d(TAG, "drain(), dropping upload rejected by the server, response:" + response.code());
+                            drop(record);
+                            attempts = 0;
+                            continue;
+                        }
+                        //A limited number of times
+                        if (++attempts >= maxAttempts) {
+                            Log.d(TAG, "drain(), dropping upload after " + attempts + " attempts, response:" + response.code());
+                            drop(record);
+                            attempts = 0;
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        //Server unreachable, keep it until it is back
+                        Log.d(TAG, "drain(), server unreachable: " + e.getMessage());
+                    } finally {
+                        call = null;
+                    }
+
+                    retries++;
+                    Thread.sleep(backoff);
+                    backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    //Eg the storage is busy or full, try again later rather than stop draining for good
+                    Log.e(TAG, "drain(), unable to read queue, trying again in " + backoff + "ms", e);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                    backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+                }
+            }
+        } finally {
+            exited();
+        }
+    }
+
+    /**
+     * The drain thread ended, also when it failed, so {@link #start()} can start another one
+     */
+    private synchronized void exited() {
+        if (drainThread == Thread.currentThread()) {
+            running = false;
+            drainThread = null;
+        }
+    }
+}
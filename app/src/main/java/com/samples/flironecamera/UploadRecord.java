@@ -0,0 +1,188 @@
+package com.samples.flironecamera;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import retrofit2.Call;
+
+/**
+ * One encoded upload, everything needed to build the {@link ApiServices} call again later, eg from the
+ * {@link UploadQueue} after the process restarted.
+ */
+class UploadRecord {
+
+    static final int KIND_IMAGES = 0;
+    static final int KIND_RADIOMETRIC = 1;
+    static final int KIND_SUBJECT = 2;
+
+    final int kind;
+    final String deviceId;
+    final int minTemp, maxTemp;
+    final List<Part> parts = new ArrayList<>();
+
+    /**
+     * A file part of the multipart body, {@code data} may be larger than {@code length}
+     */
+    static class Part {
+        final String name;
+        final String fileName;
+        final String mediaType;
+        final byte[] data;
+        final int length;
+
+        Part(String name, String fileName, String mediaType, byte[] data, int length) {
+            this.name = name;
+            this.fileName = fileName;
+            this.mediaType = mediaType;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    UploadRecord(int kind, String deviceId, int minTemp, int maxTemp) {
+        this.kind = kind;
+        this.deviceId = deviceId;
+        this.minTemp = minTemp;
+        this.maxTemp = maxTemp;
+    }
+
+    UploadRecord addPart(String name, String fileName, String mediaType, byte[] data, int length) {
+        parts.add(new Part(name, fileName, mediaType, data, length));
+        return this;
+    }
+
+    /**
+     * Create the Retrofit call, the request bodies read straight from the part arrays
+     */
+    Call<String> toCall(ApiServices service) {
+        switch (kind) {
+            case KIND_IMAGES:
+                //Uploads queued by older versions have no statistics, Retrofit leaves out a null part
+                return service.sendImage(deviceId, minTemp, maxTemp, toMultipart(parts.get(0)), toMultipart(parts.get(1)),
+                        parts.size() > 2 ? toMultipart(parts.get(2)) : null);
+            case KIND_RADIOMETRIC:
+                return service.sendRadiometric(deviceId, toMultipart(parts.get(0)));
+            case KIND_SUBJECT:
+                return service.sendSubject(deviceId, minTemp, maxTemp, toMultipart(parts.get(0)),
+                        toMultipart(parts.get(1)), toMultipart(parts.get(2)));
+            default:
+                throw new IllegalStateException("unknown upload kind " + kind);
+        }
+    }
+
+    /**
+     * Create one {@link ApiServices#sendBatch} call for several uploads of the same device.
+     * <p>
+     * The parts of upload {@code i} are renamed to {@code f<i>_<name>}. The manifest lists the uploads in order:
+     * <pre>
+     * {"frames":[{"kind":0,"min_temperature":30,"max_temperature":45,"parts":["f0_photo_image","f0_thermal_image"]},...]}
+     * </pre>
+     */
+    static Call<String> toBatchCall(ApiServices service, List<UploadRecord> records) {
+        StringBuilder manifest = new StringBuilder(64 + records.size() * 96).append("{\"frames\":[");
+        List<MultipartBody.Part> parts = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            UploadRecord record = records.get(i);
+            if (i > 0) {
+                manifest.append(',');
+            }
+            manifest.append("{\"kind\":").append(record.kind)
+                    .append(",\"min_temperature\":").append(record.minTemp)
+                    .append(",\"max_temperature\":").append(record.maxTemp)
+                    .append(",\"parts\":[");
+            for (int j = 0; j < record.parts.size(); j++) {
+                Part part = record.parts.get(j);
+                String name = "f" + i + "_" + part.name;
+                if (j > 0) {
+                    manifest.append(',');
+                }
+                manifest.append('"').append(name).append('"');
+                parts.add(toMultipart(new Part(name, part.fileName, part.mediaType, part.data, part.length)));
+            }
+            manifest.append("]}");
+        }
+        manifest.append("]}");
+        return service.sendBatch(records.get(0).deviceId, manifest.toString(), parts);
+    }
+
+    /**
+     * Bytes written in {@link #toBytes()}, roughly
+     */
+    int getPayloadSize() {
+        int size = 0;
+        for (Part part : parts) {
+            size += part.length;
+        }
+        return size;
+    }
+
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(getPayloadSize() + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind);
+        out.writeUTF(deviceId);
+        out.writeInt(minTemp);
+        out.writeInt(maxTemp);
+        out.writeByte(parts.size());
+        for (Part part : parts) {
+            out.writeUTF(part.name);
+            out.writeUTF(part.fileName);
+            out.writeUTF(part.mediaType);
+            out.writeInt(part.length);
+            out.write(part.data, 0, part.length);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static UploadRecord fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        UploadRecord record = new UploadRecord(in.readUnsignedByte(), in.readUTF(), in.readInt(), in.readInt());
+        int partCount = in.readUnsignedByte();
+        for (int i = 0; i < partCount; i++) {
+            String name = in.readUTF();
+            String fileName = in.readUTF();
+            String mediaType = in.readUTF();
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("corrupt upload record");
+            }
+            byte[] partData = new byte[length];
+            in.readFully(partData);
+            record.addPart(name, fileName, mediaType, partData, length);
+        }
+        int size = record.parts.size();
+        boolean valid;
+        switch (record.kind) {
+            case KIND_IMAGES:
+                //The scene statistics part is optional
+                valid = size == 2 || size == 3;
+                break;
+            case KIND_RADIOMETRIC:
+                valid = size == 1;
+                break;
+            case KIND_SUBJECT:
+                valid = size == 3;
+                break;
+            default:
+                valid = false;
+        }
+        if (!valid) {
+            throw new IOException("corrupt upload record");
+        }
+        return record;
+    }
+
+    private static MultipartBody.Part toMultipart(Part part) {
+        RequestBody body = RequestBody.create(MediaType.parse(part.mediaType), part.data, 0, part.length);
+        return MultipartBody.Part.createFormData(part.name, part.fileName, body);
+    }
+}
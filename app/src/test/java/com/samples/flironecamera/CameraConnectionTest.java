@@ -0,0 +1,146 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The connection state machine: the delays between attempts, when a recovery ends and what closing it cancels.
+ */
+public class CameraConnectionTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final List<CameraConnection.State> states = new ArrayList<>();
+
+    private CameraConnection connection() {
+        CameraConnection connection = new CameraConnection("camera");
+        connection.setListener(new CameraConnection.Listener() {
+            @Override
+            public void stateChanged(CameraConnection connection, CameraConnection.State state) {
+                states.add(state);
+            }
+        });
+        return connection;
+    }
+
+    private static CameraConnection connected(CameraConnection connection) {
+        connection.connecting();
+        connection.connected();
+        return connection;
+    }
+
+    @Test
+    public void firstConnectIsNotTriedAgain() {
+        CameraConnection connection = connection();
+        connection.connecting();
+
+        assertEquals(-1, connection.failed());
+        assertEquals(CameraConnection.State.DISCONNECTED, connection.getState());
+        assertFalse(connection.isRecovering());
+        assertEquals(1, connection.getFailedAttempts());
+        assertEquals(Arrays.asList(CameraConnection.State.CONNECTING, CameraConnection.State.DISCONNECTED), states);
+    }
+
+    @Test
+    public void backoffDoublesUpToTheCap() {
+        CameraConnection connection = connected(connection());
+
+        List<Long> delays = new ArrayList<>();
+        delays.add(connection.dropped(0));
+        for (int i = 0; i < 8; i++) {
+            connection.connecting();
+            delays.add(connection.failed());
+            assertEquals(CameraConnection.State.WAITING, connection.getState());
+        }
+
+        assertEquals(Arrays.asList(500L, 1000L, 2000L, 4000L, 8000L, 16000L, CameraConnection.MAX_BACKOFF_MILLIS,
+                CameraConnection.MAX_BACKOFF_MILLIS, CameraConnection.MAX_BACKOFF_MILLIS), delays);
+        assertEquals(1, connection.getDrops());
+        assertEquals(8, connection.getFailedAttempts());
+        assertTrue(connection.isRecovering());
+    }
+
+    @Test
+    public void connectingAgainResetsTheBackoff() {
+        CameraConnection connection = connected(connection());
+        connection.dropped(0);
+        connection.connecting();
+        connection.failed();
+        connected(connection);
+
+        assertEquals(1, connection.getReconnects());
+        assertEquals(CameraConnection.MIN_BACKOFF_MILLIS, connection.dropped(SECOND));
+    }
+
+    @Test
+    public void recoveryEndsWithTheFirstFrameOnceConnected() {
+        CameraConnection connection = connected(connection());
+        assertEquals(-1, connection.frame(0));
+
+        connection.dropped(SECOND);
+        //Frames still in the pipeline from before the drop don't end it
+        assertEquals(-1, connection.frame(SECOND + 1000));
+        connection.connecting();
+        assertEquals(-1, connection.frame(2 * SECOND));
+        assertTrue(connection.isRecovering());
+
+        connection.connected();
+        assertEquals(2_500_000, connection.frame(SECOND * 7 / 2));
+        assertFalse(connection.isRecovering());
+        assertEquals(2_500_000, connection.getLastRecoveryMicros());
+        assertEquals(-1, connection.frame(4 * SECOND));
+        assertEquals(2_500_000, connection.getLastRecoveryMicros());
+    }
+
+    @Test
+    public void recoveryIsTimedFromTheFirstDrop() {
+        CameraConnection connection = connected(connection());
+        connection.dropped(SECOND);
+        connected(connection);
+        //Dropped again before a frame came through
+        connection.dropped(2 * SECOND);
+        connected(connection);
+
+        assertEquals(2_000_000, connection.frame(3 * SECOND));
+        assertEquals(2, connection.getDrops());
+        assertEquals(2, connection.getReconnects());
+    }
+
+    @Test
+    public void closeCancelsTheRecovery() {
+        CameraConnection connection = connected(connection());
+        connection.dropped(0);
+        connection.connecting();
+        connection.failed();
+
+        connection.close();
+
+        assertEquals(CameraConnection.State.DISCONNECTED, connection.getState());
+        assertFalse(connection.isRecovering());
+        assertEquals(-1, connection.getLastRecoveryMicros());
+        //A later session starts over, its first failure isn't tried again
+        connection.connecting();
+        assertEquals(-1, connection.failed());
+        connected(connection);
+        assertEquals(CameraConnection.MIN_BACKOFF_MILLIS, connection.dropped(SECOND));
+    }
+
+    @Test
+    public void listenerIsToldOnlyAboutChanges() {
+        CameraConnection connection = connected(connection());
+        connection.dropped(0);
+        connection.dropped(1);
+        connection.close();
+        connection.close();
+
+        assertEquals(Arrays.asList(CameraConnection.State.CONNECTING, CameraConnection.State.CONNECTED,
+                CameraConnection.State.WAITING, CameraConnection.State.DISCONNECTED), states);
+    }
+}
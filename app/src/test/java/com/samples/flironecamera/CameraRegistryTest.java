@@ -0,0 +1,103 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cameras found again on every rescan are added once, and clearing keeps the ones that are connected. Cameras are
+ * added by device id, without an Identity.
+ */
+public class CameraRegistryTest {
+
+    private static final String FLIR_ONE = "FLIR ONE Pro 123456";
+    private static final String FLIR_ONE_EMULATOR = "EMULATED FLIR ONE";
+    private static final String CPP_EMULATOR = "C++ Emulator";
+
+    @Test
+    public void typeComesFromTheDeviceId() {
+        assertEquals(CameraRegistry.Type.FLIR_ONE, CameraRegistry.Type.of(FLIR_ONE));
+        assertEquals(CameraRegistry.Type.FLIR_ONE_EMULATOR, CameraRegistry.Type.of(FLIR_ONE_EMULATOR));
+        assertEquals(CameraRegistry.Type.CPP_EMULATOR, CameraRegistry.Type.of(CPP_EMULATOR));
+    }
+
+    @Test
+    public void cameraFoundAgainIsAddedOnce() {
+        CameraRegistry registry = new CameraRegistry();
+
+        assertTrue(registry.add(FLIR_ONE, null));
+        assertTrue(registry.add(CPP_EMULATOR, null));
+        assertFalse(registry.add(FLIR_ONE, null));
+        assertFalse(registry.add(CPP_EMULATOR, null));
+
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void entryIsKeptAcrossLookups() {
+        CameraRegistry registry = new CameraRegistry();
+        registry.add(FLIR_ONE, null);
+        CameraRegistry.Entry entry = registry.entry(FLIR_ONE, null);
+
+        assertSame(entry, registry.entry(FLIR_ONE, null));
+        assertSame(entry, registry.first(CameraRegistry.Type.FLIR_ONE));
+        assertEquals(FLIR_ONE, entry.connection.getName());
+        //Connected to without discovery
+        CameraRegistry.Entry emulator = registry.entry(FLIR_ONE_EMULATOR, null);
+        assertNotSame(entry, emulator);
+        assertFalse(registry.add(FLIR_ONE_EMULATOR, null));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void firstOfATypeIsTheFirstFound() {
+        CameraRegistry registry = new CameraRegistry();
+        assertNull(registry.first(CameraRegistry.Type.FLIR_ONE));
+        assertNull(registry.get(CameraRegistry.Type.FLIR_ONE));
+
+        registry.add(FLIR_ONE_EMULATOR, null);
+        registry.add("FLIR ONE Edge 1", null);
+        registry.add("FLIR ONE Edge 2", null);
+
+        assertEquals("FLIR ONE Edge 1", registry.first(CameraRegistry.Type.FLIR_ONE).deviceId);
+        assertEquals(FLIR_ONE_EMULATOR, registry.first(CameraRegistry.Type.FLIR_ONE_EMULATOR).deviceId);
+        assertNull(registry.first(CameraRegistry.Type.CPP_EMULATOR));
+    }
+
+    @Test
+    public void clearKeepsTheConnectedCameras() {
+        CameraRegistry registry = new CameraRegistry();
+        registry.add("FLIR ONE Edge 1", null);
+        registry.add("FLIR ONE Edge 2", null);
+        registry.add(FLIR_ONE_EMULATOR, null);
+        CameraConnection second = registry.entry("FLIR ONE Edge 2", null).connection;
+        second.connecting();
+        second.connected();
+        //Reconnecting after a drop counts as connected
+        CameraConnection emulator = registry.entry(FLIR_ONE_EMULATOR, null).connection;
+        emulator.connecting();
+        emulator.connected();
+        emulator.dropped(0);
+
+        registry.clear();
+
+        assertEquals(2, registry.size());
+        assertSame(second, registry.first(CameraRegistry.Type.FLIR_ONE).connection);
+        assertSame(emulator, registry.first(CameraRegistry.Type.FLIR_ONE_EMULATOR).connection);
+        //Found again by the next scan, with a new connection
+        assertTrue(registry.add("FLIR ONE Edge 1", null));
+        assertSame(second, registry.first(CameraRegistry.Type.FLIR_ONE).connection);
+
+        second.close();
+        emulator.close();
+        registry.clear();
+        assertEquals(0, registry.size());
+        assertNull(registry.first(CameraRegistry.Type.FLIR_ONE));
+        assertNull(registry.first(CameraRegistry.Type.FLIR_ONE_EMULATOR));
+    }
+}
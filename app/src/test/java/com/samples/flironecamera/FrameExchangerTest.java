@@ -0,0 +1,162 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The hand-off between the SDK callback thread and the UI thread: the producer never waits for the consumer, and
+ * every frame is either delivered or released and counted.
+ */
+public class FrameExchangerTest {
+
+    //No bitmaps and no pool, release() only counts down
+    private static FrameDataHolder frame(int id) {
+        return new FrameDataHolder(null, null, null, 0, 0, null, 0, 0, null, 0, 0, id,
+                null, null, null, null, null, null);
+    }
+
+    @Test
+    public void newerFrameSupersedesTheWaitingOne() {
+        FrameExchanger exchanger = new FrameExchanger();
+        FrameDataHolder first = frame(1);
+        FrameDataHolder second = frame(2);
+
+        assertFalse(exchanger.offer(first));
+        assertTrue(exchanger.offer(second));
+
+        assertEquals(0, first.getRefCount());
+        assertSame(second, exchanger.poll());
+        assertNull(exchanger.poll());
+        assertEquals(1, second.getRefCount());
+        assertEquals(2, exchanger.getOffered());
+        assertEquals(1, exchanger.getDelivered());
+        assertEquals(1, exchanger.getSuperseded());
+    }
+
+    @Test
+    public void clearDropsTheWaitingFrame() {
+        FrameExchanger exchanger = new FrameExchanger();
+        FrameDataHolder waiting = frame(1);
+        exchanger.offer(waiting);
+
+        assertTrue(exchanger.clear());
+        assertFalse(exchanger.clear());
+
+        assertEquals(0, waiting.getRefCount());
+        assertNull(exchanger.poll());
+        assertEquals(1, exchanger.getDropped());
+    }
+
+    @Test
+    public void producerIsNotHeldUpByAStalledConsumer() throws InterruptedException {
+        final FrameExchanger exchanger = new FrameExchanger();
+        final int frames = 2000;
+        final List<FrameDataHolder> offered = new ArrayList<>(frames);
+        final CountDownLatch consumerStalled = new CountDownLatch(1);
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final List<FrameDataHolder> taken = new ArrayList<>();
+
+        //Takes a frame, then stalls far longer than the whole producer run, like a UI thread stuck in a layout pass
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (producing.get()) {
+                        FrameDataHolder frame = exchanger.poll();
+                        if (frame != null) {
+                            taken.add(frame);
+                            if (taken.size() == 1) {
+                                consumerStalled.countDown();
+                                Thread.sleep(500);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "consumer");
+        consumer.start();
+
+        FrameDataHolder firstFrame = frame(0);
+        offered.add(firstFrame);
+        exchanger.offer(firstFrame);
+        assertTrue(consumerStalled.await(5, TimeUnit.SECONDS));
+
+        long worstNanos = 0;
+        for (int i = 1; i < frames; i++) {
+            FrameDataHolder frame = frame(i);
+            offered.add(frame);
+            long start = System.nanoTime();
+            exchanger.offer(frame);
+            worstNanos = Math.max(worstNanos, System.nanoTime() - start);
+        }
+        producing.set(false);
+        consumer.join();
+
+        //A blocking queue would have held the producer for the whole stall, the exchanger only swaps a reference.
+        //The bound is loose so a GC pause on a busy build machine doesn't fail the test
+        assertTrue("worst offer took " + TimeUnit.NANOSECONDS.toMillis(worstNanos) + "ms",
+                worstNanos < TimeUnit.MILLISECONDS.toNanos(100));
+
+        FrameDataHolder last = exchanger.poll();
+        int delivered = taken.size() + (last != null ? 1 : 0);
+        assertEquals(frames, exchanger.getOffered());
+        assertEquals(delivered, exchanger.getDelivered());
+        assertEquals(frames - delivered, exchanger.getSuperseded());
+
+        //Only the delivered frames are still referenced, the superseded ones went back to the pool
+        int referenced = 0;
+        for (FrameDataHolder frame : offered) {
+            referenced += frame.getRefCount();
+        }
+        assertEquals(delivered, referenced);
+        for (FrameDataHolder frame : taken) {
+            assertEquals(1, frame.getRefCount());
+        }
+    }
+
+    @Test
+    public void concurrentProducerAndConsumerLoseNoFrame() throws InterruptedException {
+        final FrameExchanger exchanger = new FrameExchanger();
+        final int frames = 100_000;
+        final AtomicBoolean producing = new AtomicBoolean(true);
+        final long[] consumed = new long[1];
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (producing.get()) {
+                    FrameDataHolder frame = exchanger.poll();
+                    if (frame != null) {
+                        consumed[0]++;
+                        frame.release();
+                    }
+                }
+            }
+        }, "consumer");
+        consumer.start();
+
+        for (int i = 0; i < frames; i++) {
+            exchanger.offer(frame(i));
+        }
+        producing.set(false);
+        consumer.join();
+        exchanger.clear();
+
+        assertEquals(frames, exchanger.getOffered());
+        assertEquals(consumed[0], exchanger.getDelivered());
+        assertEquals(frames, exchanger.getDelivered() + exchanger.getSuperseded() + exchanger.getDropped());
+    }
+}
@@ -0,0 +1,96 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reuse and counters of the pool on the array and query buffers, the bitmaps go through the same code but need a
+ * device.
+ */
+public class FramePoolTest {
+
+    private static void assertCounted(FramePool pool, long hits, long misses, long allocations) {
+        assertEquals("hits", hits, pool.getHits());
+        assertEquals("misses", misses, pool.getMisses());
+        assertEquals("allocations", allocations, pool.getAllocations());
+    }
+
+    @Test
+    public void recycledBufferIsReused() {
+        FramePool pool = new FramePool(2);
+        int[] pixels = pool.acquirePixels(12);
+        double[] values = pool.acquireValues(6);
+        TemperatureQuery query = pool.acquireQuery();
+        assertCounted(pool, 0, 0, 3);
+
+        pool.recycle(pixels);
+        pool.recycle(values);
+        pool.recycle(query);
+        assertSame(pixels, pool.acquirePixels(12));
+        assertSame(values, pool.acquireValues(6));
+        assertSame(query, pool.acquireQuery());
+        assertCounted(pool, 3, 0, 3);
+    }
+
+    @Test
+    public void emptyPoolAllocates() {
+        FramePool pool = new FramePool(2);
+        int[] first = pool.acquirePixels(12);
+        int[] second = pool.acquirePixels(12);
+
+        assertNotSame(first, second);
+        assertEquals(12, second.length);
+        //Nothing idle to check, so nothing missed either
+        assertCounted(pool, 0, 0, 2);
+    }
+
+    @Test
+    public void buffersOfTheOldSizeAreDropped() {
+        FramePool pool = new FramePool(2);
+        pool.recycle(new double[6]);
+        pool.recycle(new double[6]);
+
+        double[] values = pool.acquireValues(8);
+        assertEquals(8, values.length);
+        assertCounted(pool, 0, 2, 1);
+
+        //The stale ones are gone, only the new size comes back
+        pool.recycle(values);
+        assertSame(values, pool.acquireValues(8));
+        assertNotSame(values, pool.acquireValues(8));
+        assertCounted(pool, 1, 2, 2);
+    }
+
+    @Test
+    public void atMostCapacityBuffersAreKept() {
+        FramePool pool = new FramePool(2);
+        int[][] buffers = {new int[4], new int[4], new int[4]};
+        for (int[] buffer : buffers) {
+            pool.recycle(buffer);
+        }
+
+        assertSame(buffers[0], pool.acquirePixels(4));
+        assertSame(buffers[1], pool.acquirePixels(4));
+        int[] extra = pool.acquirePixels(4);
+        assertNotSame(buffers[2], extra);
+        assertCounted(pool, 2, 0, 1);
+    }
+
+    @Test
+    public void poolWithoutCapacityKeepsNothing() {
+        FramePool pool = new FramePool(0);
+        TemperatureQuery query = pool.acquireQuery();
+        pool.recycle(query);
+
+        assertNotSame(query, pool.acquireQuery());
+        assertCounted(pool, 0, 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCapacityIsRejected() {
+        new FramePool(-1);
+    }
+}
@@ -0,0 +1,237 @@
+package com.samples.flironecamera;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The overflow policies of a stage and its accounting: every offered item ends up either processed or dropped
+ * exactly once, and the ones that are dropped, by the policy, by the worker or by a worker that throws, are
+ * discarded exactly once.
+ */
+public class PipelineStageTest {
+
+    private final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<Integer> discarded = Collections.synchronizedList(new ArrayList<Integer>());
+    //The worker holds the first item until the test lets it go, so the queue behind it fills up
+    private final CountDownLatch firstTaken = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PipelineStage<Integer> stage;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (stage != null) {
+            stage.stop();
+        }
+    }
+
+    private PipelineStage<Integer> stage(int policy) {
+        stage = new PipelineStage<>("test", 2, policy, new PipelineStage.Worker<Integer>() {
+            @Override
+            public boolean process(Integer item) {
+                if (item == 0) {
+                    firstTaken.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (item < 0) {
+                    throw new IllegalStateException("item " + item);
+                }
+                if (item >= 100) {
+                    return false;
+                }
+                processed.add(item);
+                return true;
+            }
+        }, new PipelineStage.Discard<Integer>() {
+            @Override
+            public void discard(Integer item) {
+                discarded.add(item);
+            }
+        });
+        stage.start();
+        return stage;
+    }
+
+    /**
+     * Offer the first item and wait until the worker is stuck on it
+     */
+    private void stall(PipelineStage<Integer> stage) throws InterruptedException {
+        stage.offer(0);
+        assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitSettled(PipelineStage<Integer> stage) throws InterruptedException {
+        StageStats stats = stage.getStats();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stats.getProcessed() + stats.getDropped() < stats.getOffered() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertAccounted(PipelineStage<Integer> stage, long processed, long dropped) {
+        StageStats stats = stage.getStats();
+        assertEquals(processed, stats.getProcessed());
+        assertEquals(dropped, stats.getDropped());
+        assertEquals(processed + dropped, stats.getOffered());
+        assertEquals(0, stats.getOccupancy());
+    }
+
+    @Test
+    public void dropOldestKeepsTheFreshestItems() throws InterruptedException {
+        PipelineStage<Integer> stage = stage(PipelineStage.DROP_OLDEST);
+        stall(stage);
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(stage.offer(i));
+        }
+        assertEquals(2, stage.size());
+        //The one being processed and the 2 queued
+        assertEquals(3, stage.getStats().getOccupancy());
+
+        release.countDown();
+        awaitSettled(stage);
+
+        assertEquals(Arrays.asList(0, 4, 5), processed);
+        assertEquals(Arrays.asList(1, 2, 3), discarded);
+        assertAccounted(stage, 3, 3);
+    }
+
+    @Test
+    public void dropNewestKeepsTheFirstItems() throws InterruptedException {
+        PipelineStage<Integer> stage = stage(PipelineStage.DROP_NEWEST);
+        stall(stage);
+        assertTrue(stage.offer(1));
+        assertTrue(stage.offer(2));
+        assertFalse(stage.offer(3));
+        assertFalse(stage.offer(4));
+
+        release.countDown();
+        awaitSettled(stage);
+
+        assertEquals(Arrays.asList(0, 1, 2), processed);
+        assertEquals(Arrays.asList(3, 4), discarded);
+        assertAccounted(stage, 3, 2);
+    }
+
+    @Test
+    public void blockMakesTheProducerWait() throws InterruptedException {
+        final PipelineStage<Integer> stage = stage(PipelineStage.BLOCK);
+        stall(stage);
+        assertTrue(stage.offer(1));
+        assertTrue(stage.offer(2));
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stage.offer(3);
+                offered.countDown();
+            }
+        }, "producer");
+        producer.start();
+        assertFalse("offer() returned while the queue was full", offered.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        producer.join();
+        awaitSettled(stage);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), processed);
+        assertTrue(discarded.isEmpty());
+        assertAccounted(stage, 4, 0);
+    }
+
+    @Test
+    public void throwingWorkerDropsTheItemOnce() throws InterruptedException {
+        PipelineStage<Integer> stage = stage(PipelineStage.BLOCK);
+        stage.offer(1);
+        stage.offer(-1);
+        stage.offer(2);
+        awaitSettled(stage);
+
+        //The stage keeps going after the failure
+        assertEquals(Arrays.asList(1, 2), processed);
+        assertEquals(Collections.singletonList(-1), discarded);
+        assertEquals(1, stage.getFailures());
+        assertAccounted(stage, 2, 1);
+    }
+
+    @Test
+    public void workerCanDropTheItem() throws InterruptedException {
+        PipelineStage<Integer> stage = stage(PipelineStage.BLOCK);
+        stage.offer(100);
+        stage.offer(1);
+        awaitSettled(stage);
+
+        assertEquals(Collections.singletonList(1), processed);
+        assertEquals(Collections.singletonList(100), discarded);
+        assertEquals(0, stage.getFailures());
+        assertAccounted(stage, 1, 1);
+    }
+
+    @Test
+    public void stopDiscardsTheQueuedItems() throws InterruptedException {
+        PipelineStage<Integer> stage = stage(PipelineStage.DROP_OLDEST);
+        stall(stage);
+        stage.offer(1);
+        stage.offer(2);
+
+        //Interrupts the worker, which finishes the item it holds
+        stage.stop();
+        assertFalse(stage.offer(3));
+
+        assertEquals(Collections.singletonList(0), processed);
+        assertEquals(Arrays.asList(1, 2, 3), discarded);
+        assertAccounted(stage, 1, 3);
+    }
+
+    @Test
+    public void itemsOfferedWhileStoppingAreNotLeftBehind() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            processed.clear();
+            discarded.clear();
+            final PipelineStage<Integer> stage = stage(PipelineStage.DROP_NEWEST);
+            final CountDownLatch offering = new CountDownLatch(1);
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 50; i++) {
+                        if (i == 10) {
+                            offering.countDown();
+                        }
+                        stage.offer(i);
+                    }
+                }
+            }, "producer");
+            producer.start();
+            assertTrue(offering.await(5, TimeUnit.SECONDS));
+            stage.stop();
+            producer.join();
+
+            //Without the worker nothing would take an item that went in after stop() drained the queue
+            assertEquals("round " + round, 0, stage.size());
+            assertAccounted(stage, processed.size(), discarded.size());
+            List<Integer> items = new ArrayList<>(processed);
+            items.addAll(discarded);
+            Collections.sort(items);
+            for (int i = 1; i <= 50; i++) {
+                assertEquals("round " + round, Integer.valueOf(i), items.get(i - 1));
+            }
+            assertEquals(50, items.size());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.samples.flironecamera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The queue draining to a local stand-in server: in order, through server errors and rejected uploads, and across
+ * a restart of the process, played by a second queue on the same directory. A radiometric upload the queue drops
+ * restarts the stream of the uploader with a keyframe.
+ */
+public class UploadQueueTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final long DISK_BUDGET = 1024 * 1024;
+
+    private static final FrameUploader.UploadCallback IGNORED = new FrameUploader.UploadCallback() {
+        @Override
+        public void onQueued() {
+        }
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockWebServer server = new MockWebServer();
+    private final List<UploadQueue> queues = new ArrayList<>();
+    private File directory;
+    private ApiServices service;
+
+    @Before
+    public void setUp() throws IOException {
+        server.start();
+        service = ApiClient.getInstance().getService(server.url("/").toString());
+        directory = folder.newFolder("queue");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (UploadQueue queue : queues) {
+            queue.close();
+        }
+        server.shutdown();
+    }
+
+    private UploadQueue queue(int maxAttempts) throws IOException {
+        UploadQueue queue = new UploadQueue(directory, SEGMENT_SIZE, DISK_BUDGET, maxAttempts);
+        queues.add(queue);
+        return queue;
+    }
+
+    private static UploadRecord record(int index) {
+        byte[] frame = new byte[2000];
+        frame[0] = (byte) index;
+        return new UploadRecord(UploadRecord.KIND_RADIOMETRIC, "device", 30, 45)
+                .addPart("radiometric_frame", "frame-" + index + ".awrf", "application/octet-stream", frame, frame.length);
+    }
+
+    /**
+     * Index of the frame a request uploaded, from the file name of its part
+     */
+    private static int frameOf(RecordedRequest request) {
+        String body = request.getBody().readUtf8();
+        int start = body.indexOf("filename=\"frame-") + "filename=\"frame-".length();
+        return Integer.parseInt(body.substring(start, body.indexOf(".awrf", start)));
+    }
+
+    /**
+     * {@link RadiometricFrameCodec#TYPE_FULL} or {@link RadiometricFrameCodec#TYPE_DELTA}, from the frame header in the
+     * body of an upload
+     */
+    private static int frameTypeOf(RecordedRequest request) {
+        byte[] body = request.getBody().readByteArray();
+        for (int i = 0; i + 5 < body.length; i++) {
+            if (body[i] == 'A' && body[i + 1] == 'W' && body[i + 2] == 'R' && body[i + 3] == 'F') {
+                //After the magic and the version
+                return body[i + 5];
+            }
+        }
+        throw new AssertionError("no radiometric frame in the upload");
+    }
+
+    private static FrameDataHolder temperatures(long timestamp) {
+        double[] temperatures = new double[16 * 12];
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = 30 + (i + timestamp) % 7;
+        }
+        return new FrameDataHolder(null, null, null, 0, 0, null, 0, 0, temperatures, 16, 12, timestamp,
+                new LatencyTracer().start(), null, null, null, null, null);
+    }
+
+    private static void awaitDrained(UploadQueue queue, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15000;
+        while (queue.getDelivered() + queue.getDropped() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(queue.toString(), count, queue.getDelivered() + queue.getDropped());
+    }
+
+    @Test
+    public void drainsInOrderOnceTheServerRecovers() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+        UploadQueue queue = queue(5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(queue.append(record(i)));
+        }
+        queue.setService(service);
+        queue.start();
+
+        awaitDrained(queue, 5);
+
+        assertEquals(5, queue.getDelivered());
+        assertEquals(2, queue.getRetries());
+        assertTrue(queue.isEmpty());
+        //The failed upload is sent again before anything behind it
+        int[] expected = {0, 0, 0, 1, 2, 3, 4};
+        assertEquals(expected.length, server.getRequestCount());
+        for (int frame : expected) {
+            assertEquals(frame, frameOf(server.takeRequest(1, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    public void queuedUploadsSurviveARestart() throws Exception {
+        UploadQueue before = queue(5);
+        for (int i = 0; i < 3; i++) {
+            before.append(record(i));
+        }
+        //The process dies before the server is reachable
+        before.close();
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+        UploadQueue after = queue(5);
+        assertEquals(3, after.size());
+        after.setService(service);
+        after.start();
+        awaitDrained(after, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, frameOf(server.takeRequest(1, TimeUnit.SECONDS)));
+        }
+        after.close();
+
+        //Delivered uploads are not sent again after the next start
+        assertTrue(queue(5).isEmpty());
+    }
+
+    @Test
+    public void rejectedUploadIsDroppedWithoutRetrying() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        server.enqueue(new MockResponse().setBody("ok"));
+        UploadQueue queue = queue(5);
+        queue.append(record(0));
+        queue.append(record(1));
+        queue.setService(service);
+        queue.start();
+
+        awaitDrained(queue, 2);
+
+        assertEquals(1, queue.getDropped());
+        assertEquals(1, queue.getDelivered());
+        assertEquals(0, queue.getRetries());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void serverErrorsAreRetriedMaxAttemptsTimes() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setBody("ok"));
+        UploadQueue queue = queue(2);
+        queue.append(record(0));
+        queue.append(record(1));
+        queue.setService(service);
+        queue.start();
+
+        awaitDrained(queue, 2);
+
+        assertEquals(1, queue.getDropped());
+        assertEquals(1, queue.getDelivered());
+        assertEquals(0, frameOf(server.takeRequest(1, TimeUnit.SECONDS)));
+        assertEquals(0, frameOf(server.takeRequest(1, TimeUnit.SECONDS)));
+        assertEquals(1, frameOf(server.takeRequest(1, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    public void startAfterStopDrainsAgain() throws Exception {
+        UploadQueue queue = queue(5);
+        queue.setService(service);
+        queue.start();
+        queue.stop();
+        server.enqueue(new MockResponse().setBody("ok"));
+        queue.append(record(0));
+        assertFalse(queue.isEmpty());
+
+        queue.start();
+        awaitDrained(queue, 1);
+
+        assertEquals(1, queue.getDelivered());
+    }
+
+    @Test
+    public void droppedRadiometricUploadRestartsTheStreamWithAKeyframe() throws Exception {
+        FrameUploader uploader = new FrameUploader(2, 100, 0);
+        UploadQueue queue = queue(5);
+        uploader.setUploadQueue(queue);
+        try {
+            server.enqueue(new MockResponse().setBody("ok"));
+            server.enqueue(new MockResponse().setBody("ok"));
+            assertTrue(uploader.uploadRadiometric(service, "device", temperatures(1), IGNORED));
+            assertEquals(RadiometricFrameCodec.TYPE_FULL, frameTypeOf(server.takeRequest(5, TimeUnit.SECONDS)));
+            assertTrue(uploader.uploadRadiometric(service, "device", temperatures(2), IGNORED));
+            assertEquals(RadiometricFrameCodec.TYPE_DELTA, frameTypeOf(server.takeRequest(5, TimeUnit.SECONDS)));
+
+            //A queued radiometric upload the server rejects
+            server.enqueue(new MockResponse().setResponseCode(400));
+            queue.append(record(0));
+            queue.setService(service);
+            queue.start();
+            awaitDrained(queue, 1);
+            assertEquals(1, queue.getDropped());
+            server.takeRequest(5, TimeUnit.SECONDS);
+
+            server.enqueue(new MockResponse().setBody("ok"));
+            assertTrue(uploader.uploadRadiometric(service, "device", temperatures(3), IGNORED));
+            assertEquals(RadiometricFrameCodec.TYPE_FULL, frameTypeOf(server.takeRequest(5, TimeUnit.SECONDS)));
+        } finally {
+            uploader.shutdown();
+        }
+    }
+}
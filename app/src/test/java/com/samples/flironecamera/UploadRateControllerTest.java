@@ -0,0 +1,206 @@
+package com.samples.flironecamera;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The rate controller driving real uploads through {@link ApiClient} to a local server that answers slowly or fails,
+ * the way MainActivity drives it: a timer on one thread that reschedules itself at {@link UploadRateController#getIntervalMillis()}
+ * and the Retrofit callbacks posted back to that thread.
+ */
+public class UploadRateControllerTest {
+
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final long TARGET_RTT_MILLIS = 150;
+    private static final double CEILING = 10;
+
+    private final MockWebServer server = new MockWebServer();
+    //Stands in for the UI thread, the only thread that touches the controller
+    private final ScheduledExecutorService ui = Executors.newSingleThreadScheduledExecutor();
+    private final UploadRateController controller = new UploadRateController(MAX_IN_FLIGHT, TARGET_RTT_MILLIS, CEILING);
+
+    private volatile long latencyMillis;
+    private volatile int status = 200;
+    private int maxInFlight;
+    private ApiServices service;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(status).setBody("ok")
+                        .setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        service = ApiClient.getInstance().getService(server.url("/").toString());
+        ui.execute(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ui.shutdownNow();
+        ui.awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdown();
+    }
+
+    private void tick() {
+        if (controller.tryAcquire()) {
+            maxInFlight = Math.max(maxInFlight, controller.getInFlight());
+            final long start = System.nanoTime();
+            RequestBody frame = RequestBody.create(MediaType.parse("application/octet-stream"), new byte[1024]);
+            service.sendRadiometric("test", MultipartBody.Part.createFormData("radiometric_frame", "frame.awrf", frame))
+                    .enqueue(new Callback<String>() {
+                        @Override
+                        public void onResponse(Call<String> call, final Response<String> response) {
+                            final long rttMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                            post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    controller.onResponse(rttMillis, response.isSuccessful());
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onFailure(Call<String> call, Throwable t) {
+                            post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    controller.onFailure();
+                                }
+                            });
+                        }
+                    });
+        }
+        ui.schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, controller.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void post(Runnable runnable) {
+        if (!ui.isShutdown()) {
+            ui.execute(runnable);
+        }
+    }
+
+    private <T> T onUi(Callable<T> callable) throws ExecutionException, InterruptedException {
+        return ui.submit(callable).get();
+    }
+
+    private double rate() throws ExecutionException, InterruptedException {
+        return onUi(new Callable<Double>() {
+            @Override
+            public Double call() {
+                return controller.getRate();
+            }
+        });
+    }
+
+    @Test
+    public void fastServerKeepsTheCeiling() throws Exception {
+        latencyMillis = 10;
+        Thread.sleep(1500);
+
+        assertEquals(CEILING, rate(), 1e-9);
+        long completed = onUi(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return controller.getCompleted();
+            }
+        });
+        assertTrue("completed " + completed, completed >= 5);
+    }
+
+    @Test
+    public void slowServerLowersTheRateAndCapsTheRequestsInFlight() throws Exception {
+        latencyMillis = 400;
+        Thread.sleep(3000);
+
+        double rate = rate();
+        assertTrue("rate " + rate, rate < CEILING / 2);
+        int[] counts = onUi(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return new int[]{maxInFlight, (int) controller.getSkipped(), (int) controller.getCompleted(),
+                        controller.getInFlight()};
+            }
+        });
+        assertTrue("max in flight " + counts[0], counts[0] <= MAX_IN_FLIGHT);
+        //At the ceiling the timer fires every 100ms, faster than 2 requests of 400ms can finish
+        assertTrue("skipped " + counts[1], counts[1] > 0);
+        //Nothing was sent besides the answered and the pending requests
+        assertTrue(server.getRequestCount() <= counts[2] + counts[3]);
+        long rtt = onUi(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return controller.getSmoothedRttMillis();
+            }
+        });
+        assertTrue("rtt " + rtt, rtt >= 400);
+    }
+
+    @Test
+    public void serverErrorsCutTheRate() throws Exception {
+        latencyMillis = 10;
+        status = 503;
+        Thread.sleep(1500);
+
+        assertTrue(rate() < CEILING / 4);
+        assertEquals(0L, (long) onUi(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return controller.getCompleted();
+            }
+        }));
+    }
+
+    @Test
+    public void rateRecoversWhenTheServerSpeedsUp() throws Exception {
+        latencyMillis = 300;
+        Thread.sleep(1000);
+        double slow = rate();
+        assertTrue("rate " + slow, slow < CEILING);
+
+        latencyMillis = 5;
+        //The smoothed round trip first has to come back below the target, then the rate grows by a tenth of the
+        //ceiling per good response
+        long deadline = System.currentTimeMillis() + 15000;
+        double recovered = rate();
+        while (recovered < CEILING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            recovered = rate();
+        }
+        assertEquals("rate " + slow + " -> " + recovered, CEILING, recovered, 1e-9);
+    }
+}
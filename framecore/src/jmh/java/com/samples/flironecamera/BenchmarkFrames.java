@@ -0,0 +1,89 @@
+package com.samples.flironecamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input frames for the benchmarks, rendered by {@link SyntheticFrameSource} with a fixed seed so every run and every
+ * commit measures the same data, or read from a recording of a real camera.
+ * <p>
+ * The kernels are package-private, benchmarks return their products as {@code Object} because the code JMH generates
+ * lives in another package.
+ */
+final class BenchmarkFrames {
+
+    //The sizes of the @Param of every benchmark: Lepton, FLIR ONE thermal, FLIR ONE upscaled
+    static final String SMALL = "160x120";
+    static final String MEDIUM = "320x240";
+    static final String LARGE = "480x640";
+
+    private static final long SEED = 42;
+
+    private BenchmarkFrames() {
+    }
+
+    static int width(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int height(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /**
+     * {@code count} consecutive frames a tenth of a second apart, three bodies with the noise and drift of the app's
+     * synthetic camera
+     */
+    static double[][] render(String size, int count) {
+        SyntheticFrameSource source = new SyntheticFrameSource(width(size), height(size), 0, 3, 0.05, 0.5, SEED);
+        double[][] frames = new double[count][];
+        for (int i = 0; i < count; i++) {
+            frames[i] = source.next(0.1, i * 100);
+        }
+        return frames;
+    }
+
+    /**
+     * Up to {@code count} frames of a recording written by {@link FrameRecorder}, decoded like
+     * {@link RecordedFrameSource} does. Frames of another size than the first are skipped.
+     *
+     * @param size filled with the width and height of the frames
+     */
+    static double[][] load(File file, int count, int[] size) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        }
+        DeltaFrameEncoder.Decoder decoder = new DeltaFrameEncoder.Decoder();
+        List<double[]> frames = new ArrayList<>();
+        int offset = 0;
+        int length;
+        while (frames.size() < count && (length = RadiometricFrameCodec.recordLength(buffer, offset)) > 0) {
+            byte[] data = new byte[length];
+            buffer.position(offset);
+            buffer.get(data);
+            offset += length;
+            RadiometricFrameCodec.Frame frame = decoder.decode(data, 0, length);
+            if (frames.isEmpty()) {
+                size[0] = frame.width;
+                size[1] = frame.height;
+            } else if (frame.width != size[0] || frame.height != size[1]) {
+                continue;
+            }
+            double[] temperatures = new double[frame.centiKelvin.length];
+            for (int i = 0; i < temperatures.length; i++) {
+                temperatures[i] = RadiometricFrameCodec.toCelsius(frame.centiKelvin[i]);
+            }
+            frames.add(temperatures);
+        }
+        if (frames.isEmpty()) {
+            throw new IOException(file + " holds no complete frame");
+        }
+        return frames.toArray(new double[0][]);
+    }
+}
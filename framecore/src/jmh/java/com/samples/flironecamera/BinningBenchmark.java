@@ -0,0 +1,100 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost per frame of every analysis resolution of the binning spinner in MainActivity: the binning alone, and
+ * the binning followed by what runs at the analysis resolution, the hot spot detection of the analyze stage and the
+ * radiometric encoding of the upload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinningBenchmark {
+
+    @Param({BenchmarkFrames.MEDIUM, BenchmarkFrames.LARGE})
+    public String size;
+
+    //Factor and mode, 1x1 is the full resolution
+    @Param({"1x1", "2x2mean", "2x2max", "4x4mean", "4x4max"})
+    public String binning;
+
+    //Consecutive frames, so the delta encoder sees motion like in the app
+    private static final int FRAMES = 16;
+    private static final String DEVICE_ID = "benchmark";
+
+    private double[][] frames;
+    private int width, height;
+    private int next;
+    private FrameBinner binner;
+    private double[] binned;
+    private int binnedWidth, binnedHeight;
+    //Threshold, min area and max regions of CameraSession
+    private static final int MIN_AREA = 200;
+    private final HotSpotDetector detector = new HotSpotDetector(34.0, MIN_AREA, 16);
+    //Keyframe interval and tolerance of the uploader in MainActivity
+    private final DeltaFrameEncoder encoder = new DeltaFrameEncoder(10, 5);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = BenchmarkFrames.width(size);
+        height = BenchmarkFrames.height(size);
+        frames = BenchmarkFrames.render(size, FRAMES);
+        int factor = binning.charAt(0) - '0';
+        binner = new FrameBinner(factor, binning.endsWith("max") ? FrameBinner.MODE_MAX : FrameBinner.MODE_MEAN);
+        binnedWidth = binner.binnedSize(width);
+        binnedHeight = binner.binnedSize(height);
+        binned = new double[binnedWidth * binnedHeight];
+        //Min area in pixels of the analysis resolution, as CameraSession scales it
+        detector.setMinArea(MIN_AREA / (factor * factor));
+    }
+
+    /**
+     * The analysis matrix of the next frame, the frame itself at full resolution like the analyze stage does
+     */
+    private double[] analysisFrame() {
+        next = (next + 1) % FRAMES;
+        if (binner.getFactor() == 1) {
+            return frames[next];
+        }
+        binner.bin(frames[next], width, height, binned);
+        return binned;
+    }
+
+    @Benchmark
+    public Object bin() {
+        return analysisFrame();
+    }
+
+    @Benchmark
+    public Object binAndDetect() {
+        HotSpotDetector.Region[] regions = detector.detect(analysisFrame(), binnedWidth, binnedHeight);
+        if (binner.getFactor() > 1) {
+            for (int i = 0; i < regions.length; i++) {
+                regions[i] = regions[i].scaled(binner.getFactor(), width, height);
+            }
+        }
+        return regions;
+    }
+
+    @Benchmark
+    public int binAndEncode() throws IOException {
+        double[] analysis = analysisFrame();
+        out.reset();
+        encoder.encode(analysis, binnedWidth, binnedHeight, 0, next, DEVICE_ID, out);
+        return out.size();
+    }
+}
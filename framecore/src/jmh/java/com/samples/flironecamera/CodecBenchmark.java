@@ -0,0 +1,80 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Radiometric encoding of the upload: full frames with {@link RadiometricFrameCodec}, delta frames with
+ * {@link DeltaFrameEncoder} at the tolerance of the upload and of a recording, and decoding a full frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({BenchmarkFrames.SMALL, BenchmarkFrames.MEDIUM, BenchmarkFrames.LARGE})
+    public String size;
+
+    //Consecutive frames, so the delta encoder sees motion and drift instead of the same frame again
+    private static final int FRAMES = 16;
+    private static final String DEVICE_ID = "benchmark";
+
+    private double[][] frames;
+    private int width, height;
+    private int next;
+    private final RadiometricFrameCodec codec = new RadiometricFrameCodec();
+    //Keyframe interval and tolerance of the uploader in MainActivity and of the recorder in CameraSession
+    private final DeltaFrameEncoder lossyEncoder = new DeltaFrameEncoder(10, 5);
+    private final DeltaFrameEncoder losslessEncoder = new DeltaFrameEncoder(30, 0);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        width = BenchmarkFrames.width(size);
+        height = BenchmarkFrames.height(size);
+        frames = BenchmarkFrames.render(size, FRAMES);
+        codec.encode(frames[0], width, height, 0, 0, DEVICE_ID, out);
+        encoded = out.toByteArray();
+    }
+
+    private double[] nextFrame() {
+        next = (next + 1) % FRAMES;
+        out.reset();
+        return frames[next];
+    }
+
+    @Benchmark
+    public int encodeFull() throws IOException {
+        codec.encode(nextFrame(), width, height, 0, next, DEVICE_ID, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeDelta() throws IOException {
+        lossyEncoder.encode(nextFrame(), width, height, 0, next, DEVICE_ID, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public int encodeDeltaLossless() throws IOException {
+        losslessEncoder.encode(nextFrame(), width, height, 0, next, DEVICE_ID, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public Object decodeFull() throws IOException {
+        return RadiometricFrameCodec.decode(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,63 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temperature scaling of the convert stage: the matrix to ARGB pixels, alone and with the statistics filled in the
+ * same pass, on one thread and on as many threads as the app uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversionBenchmark {
+
+    @Param({BenchmarkFrames.SMALL, BenchmarkFrames.MEDIUM, BenchmarkFrames.LARGE})
+    public String size;
+
+    //0 is one thread per processor, like the conversion pool of CameraHandler
+    @Param({"1", "0"})
+    public int threads;
+
+    private TemperatureConverter converter;
+    private double[] temperatures;
+    private int[] pixels;
+    private int width, height;
+    private final FrameStatistics statistics = new FrameStatistics();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = BenchmarkFrames.width(size);
+        height = BenchmarkFrames.height(size);
+        temperatures = BenchmarkFrames.render(size, 1)[0];
+        pixels = new int[width * height];
+        converter = new TemperatureConverter(20, 40, threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        converter.shutdown();
+    }
+
+    @Benchmark
+    public int[] convert() {
+        converter.convert(temperatures, pixels, width, height);
+        return pixels;
+    }
+
+    @Benchmark
+    public Object convertWithStatistics() {
+        converter.convert(temperatures, pixels, width, height, statistics);
+        return statistics;
+    }
+}
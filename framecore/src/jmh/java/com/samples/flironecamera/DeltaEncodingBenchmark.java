@@ -0,0 +1,101 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode time per frame and compression ratio of a whole sequence, sent as full frames only and as keyframes plus
+ * deltas. The sequence is a recording when {@code -Dbenchmark.recording=<file>} is set ({@code -PjmhRecording=<file>}
+ * in Gradle), else ten seconds of synthetic frames at the camera's 9 fps. It is played in a loop, starting each pass
+ * with a keyframe, so every pass encodes the same frames.
+ * <p>
+ * The ratio is the size of the 16-bit matrices over the bytes written, printed per encoding when the trial ends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeltaEncodingBenchmark {
+
+    //Keyframe interval and tolerance: full frames only, the uploader in MainActivity, the recorder in CameraSession
+    @Param({"full", "delta", "deltaLossless"})
+    public String encoding;
+
+    //Size of the synthetic sequence, a recording has its own
+    @Param({BenchmarkFrames.LARGE})
+    public String size;
+
+    private static final int FRAMES = 90;
+    private static final String DEVICE_ID = "benchmark";
+
+    private double[][] frames;
+    private String source;
+    private int width, height;
+    private int next = -1;
+    private DeltaFrameEncoder encoder;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String recording = System.getProperty("benchmark.recording");
+        if (recording != null && !recording.isEmpty()) {
+            int[] recordedSize = new int[2];
+            frames = BenchmarkFrames.load(new File(recording), FRAMES, recordedSize);
+            width = recordedSize[0];
+            height = recordedSize[1];
+            source = recording;
+        } else {
+            //render() is a tenth of a second apart, close enough to 9 fps for the differences between frames
+            frames = BenchmarkFrames.render(size, FRAMES);
+            width = BenchmarkFrames.width(size);
+            height = BenchmarkFrames.height(size);
+            source = "synthetic";
+        }
+        switch (encoding) {
+            case "full":
+                encoder = new DeltaFrameEncoder(1, 0);
+                break;
+            case "delta":
+                encoder = new DeltaFrameEncoder(10, 5);
+                break;
+            case "deltaLossless":
+                encoder = new DeltaFrameEncoder(30, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println(String.format(Locale.US, "%n%s, %d frames of %dx%d from %s: ratio %.2f, %d bytes per frame, %d keyframes",
+                encoding, frames.length, width, height, source, encoder.getCompressionRatio(),
+                (long) (width * height * 2L / encoder.getCompressionRatio()), encoder.getKeyframes()));
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        if (++next == frames.length) {
+            next = 0;
+        }
+        if (next == 0) {
+            encoder.requestKeyframe();
+        }
+        out.reset();
+        encoder.encode(frames[next], width, height, next * 111L, next, DEVICE_ID, out);
+        return out.size();
+    }
+}
@@ -0,0 +1,103 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging cost per frame, before and after the {@link EventLog}: the Log.d strings the frame callback used to build
+ * for every frame, against the events CameraSession logs now, in a debug build, in a release build where they are
+ * below the level, and from four threads sharing the log of the app.
+ * <p>
+ * Only the string building of the old logging is measured, handing the strings to logcat comes on top on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventLogBenchmark {
+
+    private static final String TAG = "CameraSession";
+    //The events of the frame callback and the analyze stage, with the levels of CameraSession
+    private static final EventLog.Event IMAGE_RECEIVED = EventLog.event(EventLog.VERBOSE, TAG, "image received");
+    private static final EventLog.Event FRAME_ACQUIRED = EventLog.event(EventLog.DEBUG, TAG, "acquired", "frame", "due");
+    private static final EventLog.Event FRAME_READY = EventLog.event(EventLog.DEBUG, TAG, "ready", "frame", "busy_us");
+
+    //The fields of a FLIR One frame that ThermalImage.getDescription() printed, not constants so javac can't fold
+    // the strings built from them
+    private int width = 480;
+    private int height = 640;
+    private String cameraInformation = "FLIR ONE Pro";
+    private double distance = 1.0;
+    private double emissivity = 0.95;
+    private double reflectedTemperature = 20.0;
+
+    private final EventLog debugLog = new EventLog(1 << 14);
+    private final EventLog releaseLog = new EventLog(1 << 14);
+    private long frame;
+
+    /**
+     * One log written by every benchmark thread, like {@link EventLog#getInstance()}
+     */
+    @State(Scope.Benchmark)
+    public static class SharedLog {
+        final EventLog log = new EventLog(1 << 14);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //The levels MainActivity sets
+        debugLog.setLevel(EventLog.DEBUG);
+        releaseLog.setLevel(EventLog.INFO);
+    }
+
+    @Benchmark
+    public void strings(Blackhole blackhole) {
+        frame++;
+        blackhole.consume("onImageReceived(), we got another ThermalImage");
+        blackhole.consume("accept() called with: thermalImage = [" + getDescription() + "]");
+        blackhole.consume("adding images to cache");
+        blackhole.consume("framebuffer size:" + (frame & 7));
+    }
+
+    /**
+     * Built for every call, like ThermalImage.getDescription()
+     */
+    private String getDescription() {
+        return "ThermalImage{width=" + width + ", height=" + height + ", cameraInformation=" + cameraInformation
+                + ", temperatureUnit=CELSIUS, distance=" + distance + ", emissivity=" + emissivity
+                + ", reflectedTemperature=" + reflectedTemperature + "}";
+    }
+
+    @Benchmark
+    public long eventLogDebug() {
+        return logFrame(debugLog);
+    }
+
+    @Benchmark
+    public long eventLogRelease() {
+        return logFrame(releaseLog);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long eventLogDebugFourThreads(SharedLog shared) {
+        return logFrame(shared.log);
+    }
+
+    private long logFrame(EventLog log) {
+        frame++;
+        log.log(IMAGE_RECEIVED);
+        log.log(FRAME_ACQUIRED, frame, frame * 111);
+        log.log(FRAME_READY, frame, 30000 + (frame & 1023));
+        return log.getCount();
+    }
+}
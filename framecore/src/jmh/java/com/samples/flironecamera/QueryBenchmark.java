@@ -0,0 +1,72 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ROI queries of the analyze stage: building the summed area table once per frame, the queries against it, and the
+ * hot spot detection and binning that run next to them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+    @Param({BenchmarkFrames.SMALL, BenchmarkFrames.MEDIUM, BenchmarkFrames.LARGE})
+    public String size;
+
+    private double[] temperatures;
+    private int width, height;
+    private final TemperatureQuery query = new TemperatureQuery();
+    private final HotSpotDetector detector = new HotSpotDetector(34.0, 200, 16);
+    private final FrameBinner meanBinner = new FrameBinner(2, FrameBinner.MODE_MEAN);
+    private double[] binned;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        width = BenchmarkFrames.width(size);
+        height = BenchmarkFrames.height(size);
+        temperatures = BenchmarkFrames.render(size, 1)[0];
+        query.build(temperatures, width, height);
+        binned = new double[meanBinner.binnedSize(width) * meanBinner.binnedSize(height)];
+    }
+
+    @Benchmark
+    public Object build() {
+        return query.build(temperatures, width, height);
+    }
+
+    /**
+     * The boxes and lines a screen of measurements asks for: the center spot, a quarter of the frame, the whole
+     * frame and a diagonal
+     */
+    @Benchmark
+    public void measurements(Blackhole blackhole) {
+        blackhole.consume(query.spot(width / 2, height / 2));
+        blackhole.consume(query.mean(width / 4, height / 4, 3 * width / 4, 3 * height / 4));
+        blackhole.consume(query.max(width / 4, height / 4, 3 * width / 4, 3 * height / 4));
+        blackhole.consume(query.max(0, 0, width - 1, height - 1));
+        blackhole.consume(query.lineMax(0, 0, width - 1, height - 1));
+    }
+
+    @Benchmark
+    public Object hotSpots() {
+        return detector.detect(temperatures, width, height);
+    }
+
+    @Benchmark
+    public double[] binMean() {
+        meanBinner.bin(temperatures, width, height, binned);
+        return binned;
+    }
+}
@@ -0,0 +1,50 @@
+package com.samples.flironecamera;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scene statistics without a bitmap, the loop the convert stage runs when nobody shows the frame, followed by the
+ * percentiles and the auto-range update that read them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StatisticsBenchmark {
+
+    @Param({BenchmarkFrames.SMALL, BenchmarkFrames.MEDIUM, BenchmarkFrames.LARGE})
+    public String size;
+
+    private double[] temperatures;
+    private final FrameStatistics statistics = new FrameStatistics();
+    private final AutoRange autoRange = new AutoRange(0.1, 5.0, 0.01, 0.99, 0.5, 20, 40);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        temperatures = BenchmarkFrames.render(size, 1)[0];
+    }
+
+    @Benchmark
+    public Object accumulate() {
+        statistics.reset();
+        for (double temperature : temperatures) {
+            statistics.add(temperature);
+        }
+        return statistics;
+    }
+
+    @Benchmark
+    public boolean accumulateAndRange() {
+        accumulate();
+        return autoRange.update(statistics);
+    }
+}
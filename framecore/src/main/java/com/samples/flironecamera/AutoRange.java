@@ -0,0 +1,108 @@
+package com.samples.flironecamera;
+
+/**
+ * Automatic gain control for the temperature bitmap: follows the scene's low and high percentile with an exponential
+ * moving average and maps whole degrees around them, so the contrast adapts without flickering.
+ * <p>
+ * The range is snapped outwards to whole degrees, so the integer min and max sent with an upload still describe the
+ * exact mapping of the thermal image. It widens as soon as the smoothed percentiles leave it and only narrows again
+ * when they are more than {@code hysteresis} degrees inside, which keeps the range stable for a steady scene.
+ * <p>
+ * Not thread safe.
+ */
+class AutoRange {
+
+    private final double smoothing;
+    private final double minSpan;
+    private final double lowFraction, highFraction;
+    private final double hysteresis;
+
+    private double smoothedLow = Double.NaN, smoothedHigh = Double.NaN;
+    private double min, max;
+    private long changes;
+
+    /**
+     * @param smoothing    weight of a new frame in the moving average, 0..1, lower is smoother
+     * @param minSpan      smallest range in degrees, a uniform scene is not stretched beyond it
+     * @param lowFraction  percentile mapped to black, eg 0.01
+     * @param highFraction percentile mapped to white, eg 0.99
+     * @param hysteresis   degrees the smoothed percentiles have to be inside the range before it narrows
+     */
+    AutoRange(double smoothing, double minSpan, double lowFraction, double highFraction, double hysteresis,
+              double initialMin, double initialMax) {
+        this.smoothing = smoothing;
+        this.minSpan = minSpan;
+        this.lowFraction = lowFraction;
+        this.highFraction = highFraction;
+        this.hysteresis = hysteresis;
+        this.min = initialMin;
+        this.max = initialMax;
+    }
+
+    /**
+     * Follow the statistics of a new frame
+     *
+     * @return true if the range changed
+     */
+    boolean update(FrameStatistics statistics) {
+        if (statistics.getCount() == 0) {
+            return false;
+        }
+        double low = statistics.percentile(lowFraction);
+        double high = statistics.percentile(highFraction);
+        if (smoothedLow != smoothedLow) {
+            smoothedLow = low;
+            smoothedHigh = high;
+        } else {
+            smoothedLow += smoothing * (low - smoothedLow);
+            smoothedHigh += smoothing * (high - smoothedHigh);
+        }
+
+        double newMin = min;
+        double newMax = max;
+        if (smoothedLow < min || smoothedLow > min + 1 + hysteresis) {
+            newMin = Math.floor(smoothedLow);
+        }
+        if (smoothedHigh > max || smoothedHigh < max - 1 - hysteresis) {
+            newMax = Math.ceil(smoothedHigh);
+        }
+        if (newMax - newMin < minSpan) {
+            double center = Math.floor((smoothedLow + smoothedHigh) / 2);
+            newMin = center - Math.ceil(minSpan / 2);
+            newMax = newMin + Math.ceil(minSpan);
+        }
+        if (newMin == min && newMax == max) {
+            return false;
+        }
+        min = newMin;
+        max = newMax;
+        changes++;
+        return true;
+    }
+
+    /**
+     * Forget the scene, eg after switching auto-ranging back on
+     */
+    void reset(double min, double max) {
+        this.min = min;
+        this.max = max;
+        smoothedLow = smoothedHigh = Double.NaN;
+    }
+
+    double getMin() {
+        return min;
+    }
+
+    double getMax() {
+        return max;
+    }
+
+    long getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "AutoRange{min=" + min + ", max=" + max + ", changes=" + changes + "}";
+    }
+}
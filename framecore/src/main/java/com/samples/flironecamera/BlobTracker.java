@@ -0,0 +1,227 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Follows {@link HotSpotDetector} regions from frame to frame and gives every subject a stable id.
+ * <p>
+ * A region is matched to the track whose last box it overlaps most (intersection over union), or failing that to the
+ * nearest track centroid within {@code maxDistance} pixels. Matching is greedy, best pairs first, which is exact
+ * enough for the few people in view of one camera and costs tracks x regions per frame. A track that isn't seen for
+ * {@code maxMissed} frames ends; tracks seen on fewer than {@code minHits} frames are dropped as noise.
+ * <p>
+ * Not thread safe, use one tracker per frame thread.
+ */
+class BlobTracker {
+
+    /**
+     * One subject, updated in place while it is tracked
+     */
+    static final class Track {
+        final int id;
+        final long firstSeen;
+        long lastSeen;
+        int hits;
+        int missed;
+        //Region in the last frame it was seen
+        HotSpotDetector.Region region;
+        //Region with the highest peak so far and when it was seen
+        HotSpotDetector.Region best;
+        long bestTimestamp;
+
+        Track(int id, HotSpotDetector.Region region, long timestamp) {
+            this.id = id;
+            this.firstSeen = timestamp;
+            this.lastSeen = timestamp;
+            this.region = region;
+            this.best = region;
+            this.bestTimestamp = timestamp;
+            this.hits = 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Track{id=" + id + ", hits=" + hits + ", peak=" + best.peak + "}";
+        }
+    }
+
+    interface Listener {
+        /**
+         * A track started or got a new best region, the region of the frame being updated has its highest peak so far
+         */
+        void improved(Track track);
+
+        /**
+         * A track ended, it is not updated anymore. {@code confirmed} is false for tracks dropped as noise.
+         */
+        void ended(Track track, boolean confirmed);
+    }
+
+    private final double minOverlap;
+    private final double maxDistance;
+    private final int maxMissed;
+    private final int minHits;
+    private final Listener listener;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId = 1;
+    private long subjects, dropped;
+
+    //Scratch space for the matching, grows with the number of tracks and regions
+    private long[] pairs = new long[0];
+    private boolean[] trackMatched = new boolean[0];
+    private boolean[] regionMatched = new boolean[0];
+
+    /**
+     * @param minOverlap  min intersection over union of two boxes to match on overlap, 0..1
+     * @param maxDistance max centroid distance in pixels to match regions that don't overlap enough
+     * @param maxMissed   frames a track may go unseen before it ends
+     * @param minHits     frames a track has to be seen on to count as a subject
+     */
+    BlobTracker(double minOverlap, double maxDistance, int maxMissed, int minHits, Listener listener) {
+        this.minOverlap = minOverlap;
+        this.maxDistance = maxDistance;
+        this.maxMissed = maxMissed;
+        this.minHits = minHits;
+        this.listener = listener;
+    }
+
+    /**
+     * Match the regions of a new frame to the tracks
+     *
+     * @param ids filled with the track id of every region, at least {@code regions.length} long
+     */
+    void update(HotSpotDetector.Region[] regions, long timestamp, int[] ids) {
+        int trackCount = tracks.size();
+        ensureCapacity(trackCount, regions.length);
+        Arrays.fill(trackMatched, 0, trackCount, false);
+        Arrays.fill(regionMatched, 0, regions.length, false);
+
+        //Score every plausible pair, overlap counts above any distance match
+        int pairCount = 0;
+        for (int t = 0; t < trackCount; t++) {
+            HotSpotDetector.Region last = tracks.get(t).region;
+            for (int r = 0; r < regions.length; r++) {
+                double score = score(last, regions[r]);
+                if (score > 0) {
+                    //Score in the high bits so the pairs sort by it, indexes in the low bits
+                    pairs[pairCount++] = ((long) (score * 1e6) << 24) | ((long) t << 12) | r;
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+
+        for (int i = pairCount - 1; i >= 0; i--) {
+            int t = (int) (pairs[i] >>> 12) & 0xfff;
+            int r = (int) pairs[i] & 0xfff;
+            if (trackMatched[t] || regionMatched[r]) {
+                continue;
+            }
+            trackMatched[t] = true;
+            regionMatched[r] = true;
+            Track track = tracks.get(t);
+            track.region = regions[r];
+            track.lastSeen = timestamp;
+            track.hits++;
+            track.missed = 0;
+            ids[r] = track.id;
+            if (regions[r].peak > track.best.peak) {
+                track.best = regions[r];
+                track.bestTimestamp = timestamp;
+                listener.improved(track);
+            }
+        }
+
+        //Unmatched tracks age, from the back so removing keeps the indexes of the ones still to visit
+        for (int t = trackCount - 1; t >= 0; t--) {
+            if (!trackMatched[t] && ++tracks.get(t).missed > maxMissed) {
+                end(tracks.remove(t));
+            }
+        }
+
+        for (int r = 0; r < regions.length; r++) {
+            if (!regionMatched[r]) {
+                Track track = new Track(nextId++, regions[r], timestamp);
+                tracks.add(track);
+                ids[r] = track.id;
+                listener.improved(track);
+            }
+        }
+    }
+
+    /**
+     * End all tracks, eg when the camera disconnects
+     */
+    void clear() {
+        for (int t = tracks.size() - 1; t >= 0; t--) {
+            end(tracks.remove(t));
+        }
+    }
+
+    int getTrackCount() {
+        return tracks.size();
+    }
+
+    /**
+     * Confirmed tracks that ended
+     */
+    long getSubjects() {
+        return subjects;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public String toString() {
+        return "BlobTracker{tracks=" + tracks.size() + ", subjects=" + subjects + ", dropped=" + dropped + "}";
+    }
+
+    private void end(Track track) {
+        boolean confirmed = track.hits >= minHits;
+        if (confirmed) {
+            subjects++;
+        } else {
+            dropped++;
+        }
+        listener.ended(track, confirmed);
+    }
+
+    /**
+     * 1..2 for overlapping boxes, 0..1 for nearby centroids, 0 for no match
+     */
+    private double score(HotSpotDetector.Region a, HotSpotDetector.Region b) {
+        int ix = Math.min(a.maxX, b.maxX) - Math.max(a.minX, b.minX) + 1;
+        int iy = Math.min(a.maxY, b.maxY) - Math.max(a.minY, b.minY) + 1;
+        if (ix > 0 && iy > 0) {
+            double intersection = (double) ix * iy;
+            double union = (double) a.getWidth() * a.getHeight() + (double) b.getWidth() * b.getHeight() - intersection;
+            double overlap = intersection / union;
+            if (overlap >= minOverlap) {
+                return 1 + overlap;
+            }
+        }
+        double dx = a.centroidX - b.centroidX;
+        double dy = a.centroidY - b.centroidY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        return distance < maxDistance ? 1 - distance / maxDistance : 0;
+    }
+
+    private void ensureCapacity(int trackCount, int regionCount) {
+        if (trackCount > 0xfff || regionCount > 0xfff) {
+            throw new IllegalArgumentException("too many tracks or regions");
+        }
+        if (pairs.length < trackCount * regionCount) {
+            pairs = new long[trackCount * regionCount];
+        }
+        if (trackMatched.length < trackCount) {
+            trackMatched = new boolean[trackCount];
+        }
+        if (regionMatched.length < regionCount) {
+            regionMatched = new boolean[regionCount];
+        }
+    }
+}
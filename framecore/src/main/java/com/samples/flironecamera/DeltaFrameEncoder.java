@@ -0,0 +1,223 @@
+package com.samples.flironecamera;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Encodes a stream of temperature frames as periodic full keyframes and, in between, quantized differences to the
+ * previous frame, both in the {@link RadiometricFrameCodec} container.
+ * <p>
+ * Differences within {@code tolerance} centi-kelvin are sent as zero, larger ones are quantized with a step of
+ * {@code 2 * tolerance + 1} so every reconstructed pixel is within {@code tolerance} of the real value. The encoder
+ * quantizes against its own reconstruction, not against the previous input, so the error doesn't build up between
+ * keyframes. A tolerance of 0 makes the deltas lossless.
+ * <p>
+ * A keyframe is also sent when the resolution changes, when a pixel switches between data and no data, and after
+ * {@link #requestKeyframe()}, eg when an upload failed and the receiver lost track of the reference.
+ * <p>
+ * Not thread safe, except {@link #requestKeyframe()} which can be called from any thread.
+ */
+class DeltaFrameEncoder {
+
+    private final RadiometricFrameCodec codec = new RadiometricFrameCodec();
+    private final int keyframeInterval;
+    private final int tolerance;
+    private final int step;
+
+    //Reconstructed previous frame in centi-kelvin, what the decoder has as well
+    private int[] reference = new int[0];
+    private int[] values = new int[0];
+    private int referenceWidth, referenceHeight;
+    private int framesSinceKeyframe;
+    private volatile boolean keyframeRequested = true;
+
+    private long frames, keyframes, rawBytes, encodedBytes, encodeNanos;
+
+    /**
+     * @param keyframeInterval a keyframe every this many frames, 1 sends only keyframes
+     * @param tolerance        max reconstruction error in centi-kelvin
+     */
+    DeltaFrameEncoder(int keyframeInterval, int tolerance) {
+        if (keyframeInterval < 1 || tolerance < 0) {
+            throw new IllegalArgumentException("keyframeInterval must be positive and tolerance not negative");
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.tolerance = tolerance;
+        this.step = 2 * tolerance + 1;
+    }
+
+    /**
+     * Make the next frame a keyframe
+     */
+    void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /**
+     * Encode one row-major Celcius frame
+     *
+     * @return {@link RadiometricFrameCodec#TYPE_FULL} or {@link RadiometricFrameCodec#TYPE_DELTA}
+     */
+    int encode(double[] celsius, int width, int height, long timestamp, int sequence, String deviceId, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        CountingOutputStream counter = new CountingOutputStream(out);
+        int count = width * height;
+
+        boolean keyframe = keyframeRequested || framesSinceKeyframe + 1 >= keyframeInterval
+                || width != referenceWidth || height != referenceHeight;
+        if (!keyframe) {
+            keyframe = !quantizeDifferences(celsius, count);
+        }
+
+        int type;
+        if (keyframe) {
+            if (reference.length != count) {
+                reference = new int[count];
+                values = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                reference[i] = RadiometricFrameCodec.toCentiKelvin(celsius[i]);
+            }
+            codec.write(RadiometricFrameCodec.TYPE_FULL, 1, reference, width, height, timestamp, sequence, deviceId, counter);
+            referenceWidth = width;
+            referenceHeight = height;
+            framesSinceKeyframe = 0;
+            keyframeRequested = false;
+            keyframes++;
+            type = RadiometricFrameCodec.TYPE_FULL;
+        } else {
+            codec.write(RadiometricFrameCodec.TYPE_DELTA, step, values, width, height, timestamp, sequence, deviceId, counter);
+            framesSinceKeyframe++;
+            type = RadiometricFrameCodec.TYPE_DELTA;
+        }
+
+        frames++;
+        rawBytes += count * 2L;
+        encodedBytes += counter.count;
+        encodeNanos += System.nanoTime() - start;
+        return type;
+    }
+
+    /**
+     * Fill {@link #values} with the quantized differences and update {@link #reference}
+     *
+     * @return false if the frame can't be expressed as a delta and a keyframe is needed
+     */
+    private boolean quantizeDifferences(double[] celsius, int count) {
+        final int[] ref = reference;
+        final int[] out = values;
+        for (int i = 0; i < count; i++) {
+            int value = RadiometricFrameCodec.toCentiKelvin(celsius[i]);
+            int previous = ref[i];
+            if ((value == RadiometricFrameCodec.NO_DATA) != (previous == RadiometricFrameCodec.NO_DATA)) {
+                return false;
+            }
+            int difference = value - previous;
+            int quantized = difference >= 0 ? (difference + tolerance) / step : -((-difference + tolerance) / step);
+            int reconstructed = previous + quantized * step;
+            if (reconstructed < 1 && value != RadiometricFrameCodec.NO_DATA || reconstructed > 0xFFFF
+                    || quantized < Short.MIN_VALUE || quantized > Short.MAX_VALUE) {
+                return false;
+            }
+            out[i] = quantized & 0xFFFF;
+        }
+        //Only commit the new reference once the whole frame turned out to be a valid delta
+        for (int i = 0; i < count; i++) {
+            ref[i] += (short) out[i] * step;
+        }
+        return true;
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    long getKeyframes() {
+        return keyframes;
+    }
+
+    /**
+     * Size of the 16-bit matrices that were encoded divided by the size written
+     */
+    double getCompressionRatio() {
+        return encodedBytes == 0 ? 0 : (double) rawBytes / encodedBytes;
+    }
+
+    double getAverageEncodeMillis() {
+        return frames == 0 ? 0 : encodeNanos / 1e6 / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "DeltaFrameEncoder{frames=%d, keyframes=%d, ratio=%.1f, encode=%.2fms}",
+                frames, keyframes, getCompressionRatio(), getAverageEncodeMillis());
+    }
+
+    /**
+     * Reference decoder for a stream written by {@link DeltaFrameEncoder}, keeps the reconstructed previous frame. A
+     * delta is only applied to the frame it was encoded against, the one with the sequence number before its own, so a
+     * delta that arrives out of order or after a lost frame is rejected instead of silently decoded wrong.
+     */
+    static class Decoder {
+
+        private RadiometricFrameCodec.Frame reference;
+
+        /**
+         * Decode the next frame of the stream
+         *
+         * @return the reconstructed frame in centi-kelvin, always of type {@link RadiometricFrameCodec#TYPE_FULL}
+         * @throws IOException if the data is corrupt or a delta doesn't follow the previous frame
+         */
+        RadiometricFrameCodec.Frame decode(byte[] data, int offset, int length) throws IOException {
+            RadiometricFrameCodec.Frame frame = RadiometricFrameCodec.decode(data, offset, length);
+            if (frame.type == RadiometricFrameCodec.TYPE_FULL) {
+                reference = frame;
+                return frame;
+            }
+            if (frame.type != RadiometricFrameCodec.TYPE_DELTA) {
+                throw new IOException("unknown frame type " + frame.type);
+            }
+            if (reference == null || reference.width != frame.width || reference.height != frame.height) {
+                throw new IOException("delta frame " + frame.sequence + " without a matching keyframe");
+            }
+            if (frame.sequence != reference.sequence + 1) {
+                throw new IOException("delta frame " + frame.sequence + " doesn't follow frame " + reference.sequence);
+            }
+
+            int[] reconstructed = new int[frame.centiKelvin.length];
+            for (int i = 0; i < reconstructed.length; i++) {
+                reconstructed[i] = reference.centiKelvin[i] + (short) frame.centiKelvin[i] * frame.step;
+            }
+            reference = new RadiometricFrameCodec.Frame(RadiometricFrameCodec.TYPE_FULL, frame.width, frame.height,
+                    frame.timestamp, frame.sequence, frame.deviceId, 1, reconstructed);
+            return reference;
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
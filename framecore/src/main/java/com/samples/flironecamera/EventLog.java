@@ -0,0 +1,295 @@
+package com.samples.flironecamera;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Binary event log for the hot path, instead of building a Log.d string per frame. Events are {@link Event defined}
+ * once with a tag, a name and up to two typed fields; logging one writes a few longs into a preallocated ring and
+ * allocates nothing, so it can stay on in release builds. When the ring is full the oldest events are overwritten.
+ * <p>
+ * Writers claim a slot with one atomic increment and publish it by writing its sequence number last, readers skip
+ * slots that are being written or were overwritten while they read. The ring is decoded to text with
+ * {@link #dump(Writer)} or saved with {@link #write(OutputStream)} and decoded offline with {@link #decode}.
+ * <p>
+ * Thread safe.
+ */
+class EventLog {
+
+    static final int VERBOSE = 2;
+    static final int DEBUG = 3;
+    static final int INFO = 4;
+    static final int WARN = 5;
+    static final int OFF = 8;
+
+    static final int TYPE_LONG = 0;
+    static final int TYPE_DOUBLE = 1;
+
+    private static final int MAGIC = 0x4157454c; // "AWEL"
+    private static final int VERSION = 1;
+    //sequence, nanos, meta (event, level, thread), field a, field b
+    private static final int STRIDE = 5;
+    private static final String[] LEVELS = {"", "", "V", "D", "I", "W", "", "", "-"};
+
+    private static final List<Event> events = new ArrayList<>();
+    private static final EventLog instance = new EventLog(1 << 14);
+
+    /**
+     * A kind of event, define it once in a static final field
+     */
+    static final class Event {
+        final int id;
+        final int level;
+        final String tag;
+        final String name;
+        final String[] fields;
+        final int[] types;
+
+        private Event(int id, int level, String tag, String name, String[] fields, int[] types) {
+            this.id = id;
+            this.level = level;
+            this.tag = tag;
+            this.name = name;
+            this.fields = fields;
+            this.types = types;
+        }
+    }
+
+    /**
+     * @param fields names of the fields, at most 2
+     */
+    static Event event(int level, String tag, String name, String... fields) {
+        return event(level, tag, name, fields, new int[fields.length]);
+    }
+
+    /**
+     * @param types {@link #TYPE_LONG} or {@link #TYPE_DOUBLE} for every field
+     */
+    static Event event(int level, String tag, String name, String[] fields, int[] types) {
+        if (fields.length > 2 || types.length != fields.length) {
+            throw new IllegalArgumentException("at most 2 fields, each with a type");
+        }
+        synchronized (events) {
+            Event event = new Event(events.size(), level, tag, name, fields.clone(), types.clone());
+            events.add(event);
+            return event;
+        }
+    }
+
+    /**
+     * The log of the app
+     */
+    static EventLog getInstance() {
+        return instance;
+    }
+
+    private final AtomicLongArray ring;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private volatile int level = DEBUG;
+
+    /**
+     * @param capacity events kept, a power of two
+     */
+    EventLog(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        ring = new AtomicLongArray(capacity * STRIDE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Events below {@code level} are not recorded, {@link #OFF} records nothing
+     */
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    boolean isEnabled(Event event) {
+        return event.level >= level;
+    }
+
+    void log(Event event) {
+        log(event, 0, 0);
+    }
+
+    void log(Event event, long a) {
+        log(event, a, 0);
+    }
+
+    void log(Event event, double a) {
+        log(event, Double.doubleToRawLongBits(a), 0);
+    }
+
+    void log(Event event, long a, double b) {
+        log(event, a, Double.doubleToRawLongBits(b));
+    }
+
+    void log(Event event, long a, long b) {
+        if (event.level < level) {
+            return;
+        }
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & mask) * STRIDE;
+        //Mark the slot as being written, then publish it with its sequence number. Ordered stores are enough, a
+        //reader checks the sequence number before and after reading the fields.
+        ring.lazySet(slot, -1);
+        ring.lazySet(slot + 1, System.nanoTime());
+        ring.lazySet(slot + 2, event.id | (long) event.level << 16 | Thread.currentThread().getId() << 24);
+        ring.lazySet(slot + 3, a);
+        ring.lazySet(slot + 4, b);
+        ring.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * Events logged since the start, also the ones already overwritten
+     */
+    long getCount() {
+        return next.get();
+    }
+
+    /**
+     * Copy the events still in the ring, oldest first, as {@link #STRIDE} longs each
+     */
+    long[] snapshot() {
+        long end = next.get();
+        long start = Math.max(0, end - (mask + 1));
+        long[] copy = new long[(int) (end - start) * STRIDE];
+        int copied = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask) * STRIDE;
+            if (ring.get(slot) != sequence + 1) {
+                continue;
+            }
+            for (int i = 1; i < STRIDE; i++) {
+                copy[copied + i] = ring.get(slot + i);
+            }
+            //Overwritten while copying
+            if (ring.get(slot) != sequence + 1) {
+                continue;
+            }
+            copy[copied] = sequence;
+            copied += STRIDE;
+        }
+        long[] events = new long[copied];
+        System.arraycopy(copy, 0, events, 0, copied);
+        return events;
+    }
+
+    /**
+     * Decode the events in the ring to text, one per line
+     */
+    void dump(Writer writer) throws IOException {
+        List<Event> definitions;
+        synchronized (events) {
+            definitions = new ArrayList<>(events);
+        }
+        decode(snapshot(), definitions, writer);
+    }
+
+    /**
+     * Save the event definitions and the events in the ring, for {@link #decode(InputStream, Writer)}
+     */
+    void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        synchronized (events) {
+            out.writeInt(events.size());
+            for (Event event : events) {
+                out.writeInt(event.level);
+                out.writeUTF(event.tag);
+                out.writeUTF(event.name);
+                out.writeInt(event.fields.length);
+                for (int i = 0; i < event.fields.length; i++) {
+                    out.writeUTF(event.fields[i]);
+                    out.writeInt(event.types[i]);
+                }
+            }
+        }
+        long[] records = snapshot();
+        out.writeInt(records.length / STRIDE);
+        for (long value : records) {
+            out.writeLong(value);
+        }
+        out.flush();
+    }
+
+    /**
+     * Decode a log saved with {@link #write(OutputStream)} to text, eg on a PC
+     */
+    static void decode(InputStream stream, Writer writer) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("not an event log");
+        }
+        int count = in.readInt();
+        List<Event> definitions = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            int level = in.readInt();
+            String tag = in.readUTF();
+            String name = in.readUTF();
+            String[] fields = new String[in.readInt()];
+            int[] types = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = in.readUTF();
+                types[i] = in.readInt();
+            }
+            definitions.add(new Event(id, level, tag, name, fields, types));
+        }
+        long[] records = new long[in.readInt() * STRIDE];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = in.readLong();
+        }
+        decode(records, definitions, writer);
+    }
+
+    private static void decode(long[] records, List<Event> definitions, Writer writer) throws IOException {
+        long firstNanos = records.length > 0 ? records[1] : 0;
+        for (int r = 0; r < records.length; r += STRIDE) {
+            long meta = records[r + 2];
+            int id = (int) (meta & 0xffff);
+            int level = (int) (meta >>> 16 & 0xff);
+            long thread = meta >>> 24;
+            StringBuilder line = new StringBuilder(String.format(Locale.US, "%d %.3fms %s/%s t%d ", records[r],
+                    (records[r + 1] - firstNanos) / 1e6, level < LEVELS.length ? LEVELS[level] : "?",
+                    id < definitions.size() ? definitions.get(id).tag : "?", thread));
+            if (id >= definitions.size()) {
+                line.append("event ").append(id).append(' ').append(records[r + 3]).append(' ').append(records[r + 4]);
+            } else {
+                Event event = definitions.get(id);
+                line.append(event.name);
+                for (int i = 0; i < event.fields.length; i++) {
+                    long value = records[r + 3 + i];
+                    line.append(' ').append(event.fields[i]).append('=');
+                    if (event.types[i] == TYPE_DOUBLE) {
+                        line.append(Double.longBitsToDouble(value));
+                    } else {
+                        line.append(value);
+                    }
+                }
+            }
+            writer.write(line.append('\n').toString());
+        }
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "EventLog{count=" + next.get() + ", capacity=" + (mask + 1) + ", level=" + level + "}";
+    }
+}
@@ -0,0 +1,231 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of worker threads shared by several clients, each submitting to a {@link Lane} of its own. Idle workers take
+ * the next task from the lanes in turns, so while several lanes have work queued each of them gets the workers
+ * equally often, whatever rate it submits at; a lane alone gets all of them.
+ * <p>
+ * Used to share the cores between the camera sessions: every session converts its frames on its own lane.
+ */
+class FairExecutor {
+
+    private final String name;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Thread[] workers;
+    //Lane the next idle worker looks at first, guarded by lanes
+    private int nextLane;
+    private boolean shutdown;
+
+    /**
+     * @param threads number of worker threads, eg the number of cores
+     */
+    FairExecutor(String name, int threads) {
+        this.name = name;
+        this.workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    int getThreads() {
+        return workers.length;
+    }
+
+    /**
+     * A new lane, shut it down when its client is done with it
+     */
+    Lane lane(String laneName) {
+        Lane lane = new Lane(laneName);
+        synchronized (lanes) {
+            if (shutdown) {
+                throw new RejectedExecutionException(name + " is shut down");
+            }
+            lanes.add(lane);
+        }
+        return lane;
+    }
+
+    /**
+     * Stop the workers once the queued tasks ran, no new lanes or tasks are accepted
+     */
+    void shutdown() {
+        synchronized (lanes) {
+            shutdown = true;
+            lanes.notifyAll();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Lane lane;
+            Runnable task;
+            synchronized (lanes) {
+                while ((lane = nextBusyLane()) == null) {
+                    if (shutdown) {
+                        return;
+                    }
+                    try {
+                        lanes.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task = lane.tasks.poll();
+                lane.running++;
+            }
+            long startNanos = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                //Tasks of invokeAll and submit keep their own exceptions, a plain execute loses it
+            } finally {
+                long nanos = System.nanoTime() - startNanos;
+                synchronized (lanes) {
+                    lane.running--;
+                    lane.completed++;
+                    lane.busyNanos += nanos;
+                    if (lane.running == 0 && lane.tasks.isEmpty()) {
+                        if (lane.laneShutdown) {
+                            lanes.remove(lane);
+                        }
+                        lanes.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The first lane with a queued task from {@link #nextLane} on, the one after it is next in line
+     */
+    private Lane nextBusyLane() {
+        int count = lanes.size();
+        for (int i = 0; i < count; i++) {
+            int index = (nextLane + i) % count;
+            Lane lane = lanes.get(index);
+            if (!lane.tasks.isEmpty()) {
+                nextLane = (index + 1) % count;
+                return lane;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One client's share of the pool. Shutting a lane down lets its queued tasks run and removes it from the pool,
+     * the workers keep running for the other lanes.
+     */
+    final class Lane extends AbstractExecutorService {
+        private final String laneName;
+        //All guarded by lanes
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int running;
+        private boolean laneShutdown;
+        private long completed, busyNanos;
+
+        private Lane(String laneName) {
+            this.laneName = laneName;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (lanes) {
+                if (laneShutdown || shutdown) {
+                    throw new RejectedExecutionException(laneName + " is shut down");
+                }
+                tasks.add(task);
+                lanes.notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (lanes) {
+                laneShutdown = true;
+                if (tasks.isEmpty() && running == 0) {
+                    lanes.remove(this);
+                }
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (lanes) {
+                List<Runnable> dropped = new ArrayList<>(tasks);
+                tasks.clear();
+                shutdown();
+                return dropped;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (lanes) {
+                return laneShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (lanes) {
+                return laneShutdown && tasks.isEmpty() && running == 0;
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (lanes) {
+                while (!isTerminated()) {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (millis <= 0) {
+                        return false;
+                    }
+                    lanes.wait(millis);
+                }
+                return true;
+            }
+        }
+
+        long getCompleted() {
+            synchronized (lanes) {
+                return completed;
+            }
+        }
+
+        /**
+         * Worker time spent on this lane's tasks, in ms
+         */
+        double getBusyMillis() {
+            synchronized (lanes) {
+                return busyNanos / 1e6;
+            }
+        }
+
+        @Override
+        public String toString() {
+            synchronized (lanes) {
+                return String.format(Locale.US, "%s{tasks=%d, busy=%.0fms, queued=%d}", laneName, completed,
+                        busyNanos / 1e6, tasks.size());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lanes) {
+            return name + "{threads=" + workers.length + ", lanes=" + Collections.unmodifiableList(lanes) + "}";
+        }
+    }
+}
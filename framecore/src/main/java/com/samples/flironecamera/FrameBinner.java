@@ -0,0 +1,116 @@
+package com.samples.flironecamera;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a temperature matrix by {@code factor x factor} binning, for analysis and uploads at a lower resolution on
+ * devices that can't keep up with the full one.
+ * <p>
+ * {@link #MODE_MEAN} averages every bin, {@link #MODE_MAX} keeps its warmest pixel so a small hot spot survives the
+ * binning. NaN pixels are ignored, a bin without valid pixels is NaN. The last bin of a row or column covers the
+ * pixels that are left when the size isn't a multiple of the factor. The source is read once, in order.
+ * <p>
+ * Not thread safe.
+ */
+class FrameBinner {
+
+    static final int MODE_MEAN = 0;
+    static final int MODE_MAX = 1;
+
+    private final int factor;
+    private final int mode;
+    //Valid pixels per bin, only for MODE_MEAN
+    private int[] counts = new int[0];
+
+    /**
+     * @param factor bin size in pixels, 1 leaves the matrix as it is
+     */
+    FrameBinner(int factor, int mode) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("factor must be at least 1");
+        }
+        if (mode != MODE_MEAN && mode != MODE_MAX) {
+            throw new IllegalArgumentException("unknown mode " + mode);
+        }
+        this.factor = factor;
+        this.mode = mode;
+    }
+
+    int getFactor() {
+        return factor;
+    }
+
+    int getMode() {
+        return mode;
+    }
+
+    /**
+     * Width or height after binning
+     */
+    int binnedSize(int size) {
+        return (size + factor - 1) / factor;
+    }
+
+    /**
+     * Bin a row-major {@code width * height} matrix into {@code binned}, which has to hold
+     * {@code binnedSize(width) * binnedSize(height)} values
+     */
+    void bin(double[] temperatures, int width, int height, double[] binned) {
+        int binnedWidth = binnedSize(width);
+        int binnedCount = binnedWidth * binnedSize(height);
+        if (binned.length < binnedCount) {
+            throw new IllegalArgumentException("binned buffer smaller than " + binnedCount);
+        }
+        if (factor == 1) {
+            System.arraycopy(temperatures, 0, binned, 0, width * height);
+            return;
+        }
+        if (mode == MODE_MAX) {
+            binMax(temperatures, width, height, binned, binnedWidth, binnedCount);
+        } else {
+            binMean(temperatures, width, height, binned, binnedWidth, binnedCount);
+        }
+    }
+
+    private void binMax(double[] temperatures, int width, int height, double[] binned, int binnedWidth, int binnedCount) {
+        Arrays.fill(binned, 0, binnedCount, Double.NEGATIVE_INFINITY);
+        for (int y = 0; y < height; y++) {
+            int in = y * width;
+            int out = (y / factor) * binnedWidth;
+            for (int x = 0; x < width; x++) {
+                double temperature = temperatures[in + x];
+                //false for NaN
+                if (temperature > binned[out + x / factor]) {
+                    binned[out + x / factor] = temperature;
+                }
+            }
+        }
+        for (int i = 0; i < binnedCount; i++) {
+            if (binned[i] == Double.NEGATIVE_INFINITY) {
+                binned[i] = Double.NaN;
+            }
+        }
+    }
+
+    private void binMean(double[] temperatures, int width, int height, double[] binned, int binnedWidth, int binnedCount) {
+        if (counts.length < binnedCount) {
+            counts = new int[binnedCount];
+        }
+        Arrays.fill(binned, 0, binnedCount, 0);
+        Arrays.fill(counts, 0, binnedCount, 0);
+        for (int y = 0; y < height; y++) {
+            int in = y * width;
+            int out = (y / factor) * binnedWidth;
+            for (int x = 0; x < width; x++) {
+                double temperature = temperatures[in + x];
+                if (temperature == temperature) {
+                    binned[out + x / factor] += temperature;
+                    counts[out + x / factor]++;
+                }
+            }
+        }
+        for (int i = 0; i < binnedCount; i++) {
+            binned[i] = counts[i] == 0 ? Double.NaN : binned[i] / counts[i];
+        }
+    }
+}
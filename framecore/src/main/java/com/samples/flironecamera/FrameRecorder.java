@@ -0,0 +1,53 @@
+package com.samples.flironecamera;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Appends temperature frames to a recording for {@link RecordedFrameSource}: {@link RadiometricFrameCodec} frames
+ * written one after the other, lossless deltas with a keyframe every {@code keyframeInterval} frames. Appending to an
+ * existing recording starts with a keyframe, so sessions can be added to the same file.
+ * <p>
+ * Thread safe.
+ */
+class FrameRecorder implements Closeable {
+
+    private final File file;
+    private final OutputStream out;
+    private final DeltaFrameEncoder encoder;
+    private final String deviceId;
+    private int sequence;
+
+    FrameRecorder(File file, String deviceId, int keyframeInterval) throws IOException {
+        this.file = file;
+        this.deviceId = deviceId;
+        this.out = new BufferedOutputStream(new FileOutputStream(file, true), 256 * 1024);
+        this.encoder = new DeltaFrameEncoder(keyframeInterval, 0);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    synchronized void record(double[] temperatures, int width, int height, long timestamp) throws IOException {
+        encoder.encode(temperatures, width, height, timestamp, sequence++, deviceId, out);
+    }
+
+    synchronized long getFrames() {
+        return encoder.getFrames();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameRecorder{" + file + ", " + encoder + "}";
+    }
+}
@@ -0,0 +1,87 @@
+package com.samples.flironecamera;
+
+import java.io.IOException;
+
+/**
+ * Where the frames of the pipeline come from: the camera, a {@link SyntheticFrameSource} or a
+ * {@link RecordedFrameSource}. A source delivers its frames on a thread of its own, one at the time.
+ */
+interface FrameSource {
+
+    /**
+     * One frame, only valid during {@link Listener#frame(Frame)}
+     */
+    interface Frame {
+        int getWidth();
+
+        int getHeight();
+
+        /**
+         * Wall clock time in ms
+         */
+        long getTimestamp();
+
+        /**
+         * Row-major Celcius matrix, a new array every call which the caller owns
+         */
+        double[] getTemperatures();
+    }
+
+    interface Listener {
+        void frame(Frame frame);
+    }
+
+    /**
+     * Start delivering frames to {@code listener}
+     *
+     * @throws IOException if the source can't be opened
+     */
+    void start(Listener listener) throws IOException;
+
+    /**
+     * Stop delivering frames, returns when the last one has been delivered
+     */
+    void stop();
+
+    /**
+     * A frame whose temperatures are already in memory
+     */
+    final class TemperatureFrame implements Frame {
+        private final double[] temperatures;
+        private final int width, height;
+        private final long timestamp;
+        private boolean taken;
+
+        TemperatureFrame(double[] temperatures, int width, int height, long timestamp) {
+            this.temperatures = temperatures;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public double[] getTemperatures() {
+            //Handed over as is the first time, only a second caller pays for a copy
+            if (!taken) {
+                taken = true;
+                return temperatures;
+            }
+            return temperatures.clone();
+        }
+    }
+}
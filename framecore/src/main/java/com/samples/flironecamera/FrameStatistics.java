@@ -0,0 +1,156 @@
+package com.samples.flironecamera;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Min, max, mean and a histogram of the temperatures of one frame, filled while the frame is converted (see
+ * {@link TemperatureConverter#convert(double[], int[], int, int, FrameStatistics)}).
+ * <p>
+ * The histogram has fixed {@value #BIN_WIDTH} degree bins from {@value #HISTOGRAM_MIN} to {@value #HISTOGRAM_MAX}
+ * degrees, values outside go to the first or last bin. Percentiles are interpolated within their bin, so they are
+ * accurate to a fraction of a bin; min, max and mean are exact.
+ * <p>
+ * An accumulator is reused for every frame, {@link #snapshot()} makes the immutable copy a frame carries around.
+ * Not thread safe.
+ */
+class FrameStatistics {
+
+    static final double HISTOGRAM_MIN = -20.0;
+    static final double HISTOGRAM_MAX = 140.0;
+    static final double BIN_WIDTH = 0.1;
+    static final int BIN_COUNT = (int) Math.round((HISTOGRAM_MAX - HISTOGRAM_MIN) / BIN_WIDTH);
+
+    /**
+     * The numbers of one frame, temperatures in Celsius, NaN when the frame had no valid pixels
+     */
+    static final class Snapshot {
+        final int count;
+        final double min, max, mean;
+        final double p1, p5, p50, p95, p99;
+
+        Snapshot(int count, double min, double max, double mean, double p1, double p5, double p50, double p95, double p99) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.p1 = p1;
+            this.p5 = p5;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        /**
+         * As JSON, a temperature that is not a number, eg when the frame had no valid pixels, is written as null
+         */
+        String toJson() {
+            return String.format(Locale.US, "{\"count\":%d,\"min\":%s,\"max\":%s,\"mean\":%s,"
+                            + "\"p1\":%s,\"p5\":%s,\"p50\":%s,\"p95\":%s,\"p99\":%s}",
+                    count, json(min), json(max), json(mean), json(p1), json(p5), json(p50), json(p95), json(p99));
+        }
+
+        private static String json(double value) {
+            //JSON has no NaN or Infinity
+            return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.US, "%.2f", value);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Snapshot{min=%.2f, max=%.2f, mean=%.2f, p1=%.2f, p50=%.2f, p99=%.2f}",
+                    min, max, mean, p1, p50, p99);
+        }
+    }
+
+    //Package-private so the conversion loop can fill them directly
+    int count;
+    double sum;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    final int[] histogram = new int[BIN_COUNT];
+
+    void reset() {
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        Arrays.fill(histogram, 0);
+    }
+
+    /**
+     * Add one temperature, NaN is ignored
+     */
+    void add(double temperature) {
+        //false for NaN
+        if (temperature == temperature) {
+            count++;
+            sum += temperature;
+            if (temperature < min) {
+                min = temperature;
+            }
+            if (temperature > max) {
+                max = temperature;
+            }
+            histogram[bin(temperature)]++;
+        }
+    }
+
+    /**
+     * Add everything counted by {@code other}, eg of another band of the same frame
+     */
+    void merge(FrameStatistics other) {
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        for (int i = 0; i < BIN_COUNT; i++) {
+            histogram[i] += other.histogram[i];
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * The temperature below which {@code fraction} (0..1) of the valid pixels are
+     */
+    double percentile(double fraction) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double rank = fraction * count;
+        int cumulative = 0;
+        for (int i = 0; i < BIN_COUNT; i++) {
+            int inBin = histogram[i];
+            if (inBin > 0 && cumulative + inBin >= rank) {
+                double value = HISTOGRAM_MIN + (i + (rank - cumulative) / inBin) * BIN_WIDTH;
+                return Math.max(min, Math.min(max, value));
+            }
+            cumulative += inBin;
+        }
+        return max;
+    }
+
+    Snapshot snapshot() {
+        return new Snapshot(count, getMin(), getMax(), getMean(), percentile(0.01), percentile(0.05),
+                percentile(0.5), percentile(0.95), percentile(0.99));
+    }
+
+    static int bin(double temperature) {
+        int bin = (int) ((temperature - HISTOGRAM_MIN) * (1 / BIN_WIDTH));
+        return bin < 0 ? 0 : bin >= BIN_COUNT ? BIN_COUNT - 1 : bin;
+    }
+}
@@ -0,0 +1,286 @@
+package com.samples.flironecamera;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Finds the warm regions in a temperature matrix: 4-connected groups of pixels at or above a threshold, with their
+ * area, bounding box, centroid, peak and mean temperature.
+ * <p>
+ * The matrix is scanned once. Every pixel above the threshold gets a provisional label from its left or upper
+ * neighbour and adds to that label's statistics; when both neighbours have different labels the two are joined in a
+ * union-find table. The statistics of joined labels are merged at the end, per label instead of per pixel. All
+ * working arrays are kept between frames and only grow when the frame size does, so a frame allocates just its
+ * {@link Region} results.
+ * <p>
+ * Not thread safe, use one detector per frame thread.
+ */
+class HotSpotDetector {
+
+    /**
+     * One warm region, coordinates in pixels of the matrix
+     */
+    static final class Region {
+        final int area;
+        final int minX, minY, maxX, maxY;
+        final double centroidX, centroidY;
+        final double peak, mean;
+        final int peakX, peakY;
+
+        Region(int area, int minX, int minY, int maxX, int maxY, double centroidX, double centroidY,
+               double peak, double mean, int peakX, int peakY) {
+            this.area = area;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.centroidX = centroidX;
+            this.centroidY = centroidY;
+            this.peak = peak;
+            this.mean = mean;
+            this.peakX = peakX;
+            this.peakY = peakY;
+        }
+
+        int getWidth() {
+            return maxX - minX + 1;
+        }
+
+        int getHeight() {
+            return maxY - minY + 1;
+        }
+
+        /**
+         * The same region in a matrix {@code factor} times larger, eg to go from a binned matrix back to the full
+         * {@code width x height} one. The area and peak position are approximate.
+         */
+        Region scaled(int factor, int width, int height) {
+            return new Region(area * factor * factor, minX * factor, minY * factor,
+                    Math.min(width - 1, maxX * factor + factor - 1), Math.min(height - 1, maxY * factor + factor - 1),
+                    (centroidX + 0.5) * factor - 0.5, (centroidY + 0.5) * factor - 0.5, peak, mean,
+                    Math.min(width - 1, peakX * factor + factor / 2), Math.min(height - 1, peakY * factor + factor / 2));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Region{area=%d, box=%d,%d-%d,%d, peak=%.2f@%d,%d, mean=%.2f}",
+                    area, minX, minY, maxX, maxY, peak, peakX, peakY, mean);
+        }
+    }
+
+    static final Region[] NO_REGIONS = new Region[0];
+
+    private volatile double threshold;
+    private volatile int minArea;
+    private final int maxRegions;
+
+    //Labels of the previous and the current row, 0 is background
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+
+    //Per provisional label, index 0 unused
+    private int[] parent = new int[1];
+    private int[] area = new int[1];
+    private int[] minX = new int[1], minY = new int[1], maxX = new int[1], maxY = new int[1];
+    private int[] peakIndex = new int[1];
+    private double[] sum = new double[1], sumX = new double[1], sumY = new double[1], peak = new double[1];
+
+    private long frames;
+    private long totalNanos;
+
+    /**
+     * @param threshold  temperature in Celsius a pixel must reach to be part of a region
+     * @param minArea    regions with fewer pixels are ignored, eg noise or a hot cup
+     * @param maxRegions max number of regions returned, the largest are kept
+     */
+    HotSpotDetector(double threshold, int minArea, int maxRegions) {
+        this.threshold = threshold;
+        this.minArea = Math.max(1, minArea);
+        this.maxRegions = maxRegions;
+    }
+
+    void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    double getThreshold() {
+        return threshold;
+    }
+
+    void setMinArea(int minArea) {
+        this.minArea = Math.max(1, minArea);
+    }
+
+    /**
+     * Find the regions in a row-major {@code width * height} matrix of temperatures in Celsius, NaN is background
+     *
+     * @return the regions sorted by area, largest first, empty if there are none
+     */
+    Region[] detect(double[] temperatures, int width, int height) {
+        long start = System.nanoTime();
+        double threshold = this.threshold;
+        ensureCapacity(width, height);
+
+        int labels = 0;
+        Arrays.fill(previousRow, 0, width, 0);
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * width;
+            int left = 0;
+            for (int x = 0; x < width; x++) {
+                double temperature = temperatures[rowStart + x];
+                //false for NaN too
+                if (!(temperature >= threshold)) {
+                    currentRow[x] = 0;
+                    left = 0;
+                    continue;
+                }
+                int up = previousRow[x];
+                int label;
+                if (left != 0) {
+                    label = left;
+                    if (up != 0 && up != left) {
+                        union(up, left);
+                    }
+                } else if (up != 0) {
+                    label = up;
+                } else {
+                    label = ++labels;
+                    parent[label] = label;
+                    area[label] = 0;
+                    sum[label] = sumX[label] = sumY[label] = 0;
+                    minX[label] = maxX[label] = x;
+                    minY[label] = maxY[label] = y;
+                    peak[label] = Double.NEGATIVE_INFINITY;
+                }
+                currentRow[x] = label;
+                left = label;
+
+                area[label]++;
+                sum[label] += temperature;
+                sumX[label] += x;
+                sumY[label] += y;
+                if (x < minX[label]) {
+                    minX[label] = x;
+                } else if (x > maxX[label]) {
+                    maxX[label] = x;
+                }
+                maxY[label] = y;
+                if (temperature > peak[label]) {
+                    peak[label] = temperature;
+                    peakIndex[label] = rowStart + x;
+                }
+            }
+            int[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+
+        //Merge the statistics of joined labels into their root, the lowest label of the region
+        for (int label = labels; label >= 1; label--) {
+            int root = find(label);
+            if (root == label) {
+                continue;
+            }
+            area[root] += area[label];
+            sum[root] += sum[label];
+            sumX[root] += sumX[label];
+            sumY[root] += sumY[label];
+            minX[root] = Math.min(minX[root], minX[label]);
+            minY[root] = Math.min(minY[root], minY[label]);
+            maxX[root] = Math.max(maxX[root], maxX[label]);
+            maxY[root] = Math.max(maxY[root], maxY[label]);
+            if (peak[label] > peak[root]) {
+                peak[root] = peak[label];
+                peakIndex[root] = peakIndex[label];
+            }
+        }
+
+        Region[] regions = collect(labels, width);
+        frames++;
+        totalNanos += System.nanoTime() - start;
+        return regions;
+    }
+
+    long getFrames() {
+        return frames;
+    }
+
+    double getAverageDetectMillis() {
+        return frames == 0 ? 0 : totalNanos / 1e6 / frames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "HotSpotDetector{threshold=%.2f, minArea=%d, frames=%d, avg=%.2fms}",
+                threshold, minArea, frames, getAverageDetectMillis());
+    }
+
+    private Region[] collect(int labels, int width) {
+        int minArea = this.minArea;
+        int found = 0;
+        for (int label = 1; label <= labels; label++) {
+            if (parent[label] == label && area[label] >= minArea) {
+                found++;
+            }
+        }
+        if (found == 0) {
+            return NO_REGIONS;
+        }
+        Region[] regions = new Region[found];
+        int count = 0;
+        for (int label = 1; label <= labels; label++) {
+            if (parent[label] != label || area[label] < minArea) {
+                continue;
+            }
+            int n = area[label];
+            regions[count++] = new Region(n, minX[label], minY[label], maxX[label], maxY[label],
+                    sumX[label] / n, sumY[label] / n, peak[label], sum[label] / n,
+                    peakIndex[label] % width, peakIndex[label] / width);
+        }
+        Arrays.sort(regions, (a, b) -> Integer.compare(b.area, a.area));
+        return count > maxRegions ? Arrays.copyOf(regions, maxRegions) : regions;
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    /**
+     * Join two labels, the lower one becomes the root
+     */
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    private void ensureCapacity(int width, int height) {
+        if (previousRow.length < width) {
+            previousRow = new int[width];
+            currentRow = new int[width];
+        }
+        //A new label needs a background pixel on its left, so at most one per two pixels of a row
+        int maxLabels = (width + 1) / 2 * height + 1;
+        if (parent.length < maxLabels) {
+            parent = new int[maxLabels];
+            area = new int[maxLabels];
+            minX = new int[maxLabels];
+            minY = new int[maxLabels];
+            maxX = new int[maxLabels];
+            maxY = new int[maxLabels];
+            peakIndex = new int[maxLabels];
+            sum = new double[maxLabels];
+            sumX = new double[maxLabels];
+            sumY = new double[maxLabels];
+            peak = new double[maxLabels];
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.samples.flironecamera;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of latencies in microseconds: every power of two is split into 16 linear buckets, so a value
+ * is kept with an error of at most 1/16, about 6%, from 1 microsecond up to hours, in a fixed array of counters.
+ * <p>
+ * {@link #record(long)} is lock free and doesn't allocate, it can be called on every frame from any thread. Reading
+ * while recording gives a slightly inconsistent but usable view.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Values up to 2^40 microseconds, about 12 days, larger ones land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(3); // count, sum, max
+
+    /**
+     * @param micros a latency, negative values count as 0
+     */
+    void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts.incrementAndGet(bucket(micros));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, micros);
+        long max;
+        while (micros > (max = totals.get(2)) && !totals.compareAndSet(2, max, micros)) {
+            //Retry, another thread raised the max
+        }
+    }
+
+    long getCount() {
+        return totals.get(0);
+    }
+
+    long getMaxMicros() {
+        return totals.get(2);
+    }
+
+    double getMeanMicros() {
+        long count = totals.get(0);
+        return count == 0 ? 0 : totals.get(1) / (double) count;
+    }
+
+    /**
+     * The latency {@code fraction} of the samples are at or below, the middle of its bucket
+     *
+     * @param fraction 0..1, eg 0.99
+     */
+    long percentile(double fraction) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(middle(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            totals.set(i, 0);
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((micros >> shift) - SUB_BUCKETS);
+    }
+
+    private static long middle(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) >> 1);
+    }
+}
@@ -0,0 +1,276 @@
+package com.samples.flironecamera;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact lossless container for the full temperature matrix of one frame.
+ * <p>
+ * Layout, big endian:
+ * <pre>
+ * magic      4 bytes  "AWRF"
+ * version    1 byte   {@link #VERSION}
+ * type       1 byte   {@link #TYPE_FULL} or {@link #TYPE_DELTA}
+ * width      int
+ * height     int
+ * timestamp  long     ms since epoch
+ * sequence   int
+ * device id  modified UTF-8, as written by {@link DataOutputStream#writeUTF(String)}
+ * step       int      {@link #TYPE_DELTA} only, quantization step of the differences
+ * length     int      number of payload bytes that follow
+ * payload    deflate stream
+ * </pre>
+ * Temperatures are stored as unsigned 16-bit centi-kelvin (0.01 K steps, 0 means no data). Each value is predicted
+ * from its left neighbour (the first pixel of a row from the pixel above), the zigzag encoded residuals are split in
+ * a low byte plane followed by a high byte plane and the result is deflated at {@link Deflater#BEST_SPEED}.
+ * <p>
+ * A {@link #TYPE_DELTA} frame stores the quantized difference to the previously reconstructed frame instead, see
+ * {@link DeltaFrameEncoder}. The same predictor and byte planes are applied to the signed 16-bit differences.
+ * <p>
+ * An encoder keeps its scratch buffers between frames and is not thread safe, {@link #decode(byte[], int, int)} is.
+ */
+class RadiometricFrameCodec {
+
+    static final int MAGIC = 0x41575246; // "AWRF"
+    static final int VERSION = 1;
+    static final int TYPE_FULL = 0;
+    static final int TYPE_DELTA = 1;
+
+    // Largest frame decode() accepts, well above any thermal camera, so a corrupt header can't make it allocate more
+    static final int MAX_PIXELS = 4096 * 4096;
+
+    static final double KELVIN_OFFSET = 273.15;
+    static final int NO_DATA = 0;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private int[] centiKelvin = new int[0];
+    private byte[] planes = new byte[0];
+    private byte[] compressed = new byte[0];
+
+    /**
+     * A decoded frame
+     */
+    static class Frame {
+        final int type;
+        final int width;
+        final int height;
+        final long timestamp;
+        final int sequence;
+        final String deviceId;
+        final int step;
+        // width * height values in 0.01 K, row-major, or the quantized differences for a delta frame
+        final int[] centiKelvin;
+
+        Frame(int type, int width, int height, long timestamp, int sequence, String deviceId, int step, int[] centiKelvin) {
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+            this.deviceId = deviceId;
+            this.step = step;
+            this.centiKelvin = centiKelvin;
+        }
+
+        /**
+         * Temperature at (x, y) in Celcius, NaN when the pixel holds no data
+         */
+        double getCelsius(int x, int y) {
+            return toCelsius(centiKelvin[x + y * width]);
+        }
+    }
+
+    /**
+     * Encode a row-major Celcius matrix as a {@link #TYPE_FULL} frame
+     */
+    void encode(double[] celsius, int width, int height, long timestamp, int sequence, String deviceId, OutputStream out) throws IOException {
+        int count = width * height;
+        if (centiKelvin.length != count) {
+            centiKelvin = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            centiKelvin[i] = toCentiKelvin(celsius[i]);
+        }
+        write(TYPE_FULL, 1, centiKelvin, width, height, timestamp, sequence, deviceId, out);
+    }
+
+    /**
+     * Write already quantized values, the payload is compressed with the left/up predictor
+     */
+    void write(int type, int step, int[] values, int width, int height, long timestamp, int sequence, String deviceId, OutputStream out) throws IOException {
+        int count = width * height;
+        if (planes.length != count * 2) {
+            planes = new byte[count * 2];
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = row + x;
+                int prediction = x > 0 ? values[i - 1] : (y > 0 ? values[i - width] : 0);
+                int residual = zigzag(values[i] - prediction);
+                planes[i] = (byte) residual;
+                planes[count + i] = (byte) (residual >>> 8);
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(planes, 0, planes.length);
+        deflater.finish();
+        int length = 0;
+        if (compressed.length < planes.length / 2) {
+            compressed = new byte[planes.length / 2];
+        }
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                byte[] grown = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, grown, 0, length);
+                compressed = grown;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(type);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeLong(timestamp);
+        data.writeInt(sequence);
+        data.writeUTF(deviceId);
+        if (type == TYPE_DELTA) {
+            data.writeInt(step);
+        }
+        data.writeInt(length);
+        data.write(compressed, 0, length);
+        data.flush();
+    }
+
+    /**
+     * Reference decoder, a {@link #TYPE_DELTA} frame is returned as is, see {@link DeltaFrameEncoder.Decoder}. Safe
+     * to use on untrusted data, a frame of more than {@link #MAX_PIXELS} is rejected before anything is allocated.
+     *
+     * @throws IOException if the data is not a valid frame
+     */
+    static Frame decode(byte[] data, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a radiometric frame");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version);
+        }
+        int type = in.readUnsignedByte();
+        int width = in.readInt();
+        int height = in.readInt();
+        long timestamp = in.readLong();
+        int sequence = in.readInt();
+        String deviceId = in.readUTF();
+        int step = type == TYPE_DELTA ? in.readInt() : 1;
+        int payloadLength = in.readInt();
+        //In long, width * height overflows an int for a corrupt header
+        long pixels = (long) width * height;
+        if (width <= 0 || height <= 0 || pixels > MAX_PIXELS || payloadLength < 0 || payloadLength > in.available()) {
+            throw new IOException("corrupt header");
+        }
+        int payloadOffset = offset + length - in.available();
+
+        int count = (int) pixels;
+        byte[] planes = new byte[count * 2];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, payloadOffset, payloadLength);
+            int read = 0;
+            while (read < planes.length) {
+                int n = inflater.inflate(planes, read, planes.length - read);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != planes.length) {
+                throw new IOException("truncated payload");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt payload", e);
+        } finally {
+            inflater.end();
+        }
+
+        int[] values = new int[count];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = row + x;
+                int prediction = x > 0 ? values[i - 1] : (y > 0 ? values[i - width] : 0);
+                int residual = (planes[i] & 0xFF) | ((planes[count + i] & 0xFF) << 8);
+                values[i] = (prediction + unzigzag(residual)) & 0xFFFF;
+            }
+        }
+        return new Frame(type, width, height, timestamp, sequence, deviceId, step, values);
+    }
+
+    /**
+     * Length of the frame that starts at {@code offset}, read from its header, so frames written one after the other
+     * can be split without decoding them
+     *
+     * @return the length in bytes, or -1 if the buffer ends before the frame does
+     * @throws IOException if there is no frame at {@code offset}
+     */
+    static int recordLength(ByteBuffer buffer, int offset) throws IOException {
+        //magic, version, type, width, height, timestamp, sequence
+        int position = offset + 26;
+        if (position + 2 > buffer.limit()) {
+            return -1;
+        }
+        if (buffer.getInt(offset) != MAGIC) {
+            throw new IOException("not a radiometric frame at " + offset);
+        }
+        int type = buffer.get(offset + 5) & 0xFF;
+        position += 2 + (buffer.getShort(position) & 0xFFFF);
+        if (type == TYPE_DELTA) {
+            position += 4;
+        }
+        if (position + 4 > buffer.limit()) {
+            return -1;
+        }
+        int payloadLength = buffer.getInt(position);
+        if (payloadLength < 0) {
+            throw new IOException("corrupt header at " + offset);
+        }
+        long end = (long) position + 4 + payloadLength;
+        return end > buffer.limit() ? -1 : (int) (end - offset);
+    }
+
+    static int toCentiKelvin(double celsius) {
+        if (celsius != celsius) {
+            return NO_DATA;
+        }
+        long value = Math.round((celsius + KELVIN_OFFSET) * 100.0);
+        if (value < 1) {
+            return 1;
+        }
+        return value > 0xFFFF ? 0xFFFF : (int) value;
+    }
+
+    static double toCelsius(int centiKelvin) {
+        return centiKelvin == NO_DATA ? Double.NaN : centiKelvin / 100.0 - KELVIN_OFFSET;
+    }
+
+    private static int zigzag(int difference) {
+        int residual = (short) difference;
+        return ((residual << 1) ^ (residual >> 31)) & 0xFFFF;
+    }
+
+    private static int unzigzag(int residual) {
+        return (residual >>> 1) ^ -(residual & 1);
+    }
+}
@@ -0,0 +1,154 @@
+package com.samples.flironecamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a recording written by {@link FrameRecorder}. The file is memory-mapped, frames are split on their
+ * headers and decoded one at the time, so a recording of any length plays with the memory of one frame.
+ * <p>
+ * Frames are paced by their recorded timestamps divided by {@code speed}, a speed of 0 or less plays as fast as the
+ * listener takes them. A gap of more than a second, or a timestamp going back, is where a recording was appended to
+ * and plays as one frame interval. A looped recording starts over at the end. The frames get the wall clock time at which they
+ * are played, so the trackers downstream see time moving forward also when looping. An incomplete last frame, eg
+ * from a recording that was cut short, ends the recording.
+ * <p>
+ * Frames are delivered on a thread of the source.
+ */
+class RecordedFrameSource implements FrameSource {
+
+    private static final long MAX_GAP_MILLIS = 1000;
+
+    private final File file;
+    private final double speed;
+    private final boolean loop;
+
+    private Thread thread;
+    private volatile boolean running;
+    private long frames, loops;
+    private volatile IOException error;
+
+    /**
+     * @param speed 1 for real time, 0 or less for as fast as possible
+     */
+    RecordedFrameSource(File file, double speed, boolean loop) {
+        this.file = file;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) throws IOException {
+        if (running) {
+            return;
+        }
+        MappedByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            //The mapping stays valid after the channel is closed
+            buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+        }
+        if (RadiometricFrameCodec.recordLength(buffer, 0) <= 0) {
+            throw new IOException(file + " holds no complete frame");
+        }
+        running = true;
+        thread = new Thread(() -> run(buffer, listener), "RecordedFrameSource");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            running = false;
+            worker = thread;
+            thread = null;
+        }
+        if (worker == null) {
+            return;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Why the playback ended early, null if it didn't
+     */
+    IOException getError() {
+        return error;
+    }
+
+    private void run(MappedByteBuffer buffer, Listener listener) {
+        byte[] scratch = new byte[0];
+        try {
+            do {
+                DeltaFrameEncoder.Decoder decoder = new DeltaFrameEncoder.Decoder();
+                long previousTimestamp = Long.MIN_VALUE;
+                long intervalMillis = 0;
+                long dueNanos = System.nanoTime();
+                int offset = 0;
+                int length;
+                while (running && (length = RadiometricFrameCodec.recordLength(buffer, offset)) > 0) {
+                    if (scratch.length < length) {
+                        scratch = new byte[length];
+                    }
+                    buffer.position(offset);
+                    buffer.get(scratch, 0, length);
+                    offset += length;
+                    RadiometricFrameCodec.Frame frame = decoder.decode(scratch, 0, length);
+
+                    if (previousTimestamp != Long.MIN_VALUE) {
+                        long gap = frame.timestamp - previousTimestamp;
+                        if (gap >= 0 && gap <= MAX_GAP_MILLIS) {
+                            intervalMillis = gap;
+                        }
+                    }
+                    previousTimestamp = frame.timestamp;
+                    if (speed > 0) {
+                        dueNanos += (long) (intervalMillis * 1e6 / speed);
+                        long sleepNanos = dueNanos - System.nanoTime();
+                        if (sleepNanos > 0) {
+                            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                        } else {
+                            //Behind, don't try to catch up with a burst
+                            dueNanos = System.nanoTime();
+                        }
+                    }
+
+                    double[] temperatures = new double[frame.centiKelvin.length];
+                    for (int i = 0; i < temperatures.length; i++) {
+                        temperatures[i] = RadiometricFrameCodec.toCelsius(frame.centiKelvin[i]);
+                    }
+                    listener.frame(new TemperatureFrame(temperatures, frame.width, frame.height, System.currentTimeMillis()));
+                    synchronized (this) {
+                        frames++;
+                    }
+                }
+                synchronized (this) {
+                    loops++;
+                }
+            } while (running && loop);
+        } catch (InterruptedException e) {
+            //Stopped
+        } catch (IOException e) {
+            //A corrupt frame ends the playback like the end of the file
+            error = e;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RecordedFrameSource{" + file + ", speed=" + speed + ", loop=" + loop + ", frames=" + frames
+                + ", loops=" + loops + (error != null ? ", error=" + error : "") + "}";
+    }
+}
@@ -0,0 +1,196 @@
+package com.samples.flironecamera;
+
+import java.util.Random;
+
+/**
+ * Generates thermal frames without a camera, for load tests: warm bodies with a face-like temperature profile move
+ * over a cooler background with sensor noise and a slow drift of the ambient temperature.
+ * <p>
+ * Bodies move in a straight line and bounce off the edges. Every body peaks at about 36.5 degrees in its center and
+ * cools to about 33 at its edge. The ambient temperature follows a sine with a period of a minute and an amplitude
+ * of {@code drift} degrees, the noise is gaussian with a standard deviation of {@code noise} degrees. The same seed
+ * gives the same frames.
+ * <p>
+ * Frames are delivered on a thread of the source.
+ */
+class SyntheticFrameSource implements FrameSource {
+
+    private static final double AMBIENT = 24.0;
+    private static final double BODY_PEAK = 36.5;
+    private static final double BODY_EDGE = 33.0;
+    private static final double DRIFT_PERIOD_MILLIS = 60_000;
+    //Precomputed noise, indexed from a random offset every frame, per pixel gaussians are too slow at full speed
+    private static final int NOISE_TABLE_SIZE = 1 << 16;
+
+    private final int width, height;
+    private final double fps;
+    private final double drift;
+    private final double[] noiseTable = new double[NOISE_TABLE_SIZE];
+    private final Random random;
+    private final Body[] bodies;
+
+    private Thread thread;
+    private volatile boolean running;
+    private long frames;
+
+    private static final class Body {
+        double x, y, vx, vy, radius;
+    }
+
+    /**
+     * @param fps    frames per second, 0 or less for as fast as the listener takes them
+     * @param bodies number of warm bodies in view
+     * @param noise  standard deviation of the pixel noise in degrees
+     * @param drift  amplitude of the ambient drift in degrees
+     */
+    SyntheticFrameSource(int width, int height, double fps, int bodies, double noise, double drift, long seed) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.drift = drift;
+        this.random = new Random(seed);
+        for (int i = 0; i < NOISE_TABLE_SIZE; i++) {
+            noiseTable[i] = random.nextGaussian() * noise;
+        }
+        this.bodies = new Body[bodies];
+        int size = Math.min(width, height);
+        for (int i = 0; i < bodies; i++) {
+            Body body = new Body();
+            body.radius = size * (0.08 + 0.06 * random.nextDouble());
+            body.x = body.radius + random.nextDouble() * (width - 2 * body.radius);
+            body.y = body.radius + random.nextDouble() * (height - 2 * body.radius);
+            //Up to a fifth of the frame per second
+            double speed = size * 0.2 * random.nextDouble();
+            double angle = random.nextDouble() * 2 * Math.PI;
+            body.vx = speed * Math.cos(angle);
+            body.vy = speed * Math.sin(angle);
+            this.bodies[i] = body;
+        }
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(() -> run(listener), "SyntheticFrameSource");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread worker;
+        synchronized (this) {
+            running = false;
+            worker = thread;
+            thread = null;
+        }
+        if (worker == null) {
+            return;
+        }
+        worker.interrupt();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    synchronized long getFrames() {
+        return frames;
+    }
+
+    private void run(Listener listener) {
+        long intervalNanos = fps > 0 ? (long) (1e9 / fps) : 0;
+        long startNanos = System.nanoTime();
+        long nextNanos = startNanos;
+        long previousNanos = startNanos;
+        while (running) {
+            long now = System.nanoTime();
+            double[] temperatures = next((now - previousNanos) / 1e9, (now - startNanos) / 1e6);
+            previousNanos = now;
+            listener.frame(new TemperatureFrame(temperatures, width, height, System.currentTimeMillis()));
+            synchronized (this) {
+                frames++;
+            }
+            if (intervalNanos > 0) {
+                nextNanos += intervalNanos;
+                long sleepNanos = nextNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    try {
+                        Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                } else {
+                    //Behind, don't try to catch up with a burst
+                    nextNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     * Render a frame on the calling thread, for benchmarks that need frames without the source running
+     *
+     * @param seconds       since the previous frame, the bodies move that far
+     * @param elapsedMillis since the first frame, sets the ambient drift
+     */
+    double[] next(double seconds, double elapsedMillis) {
+        move(seconds);
+        return render(AMBIENT + drift * Math.sin(2 * Math.PI * elapsedMillis / DRIFT_PERIOD_MILLIS));
+    }
+
+    private void move(double seconds) {
+        for (Body body : bodies) {
+            body.x += body.vx * seconds;
+            body.y += body.vy * seconds;
+            if (body.x < body.radius || body.x > width - body.radius) {
+                body.vx = -body.vx;
+                body.x = Math.max(body.radius, Math.min(width - body.radius, body.x));
+            }
+            if (body.y < body.radius || body.y > height - body.radius) {
+                body.vy = -body.vy;
+                body.y = Math.max(body.radius, Math.min(height - body.radius, body.y));
+            }
+        }
+    }
+
+    private double[] render(double ambient) {
+        double[] temperatures = new double[width * height];
+        int noise = random.nextInt(NOISE_TABLE_SIZE);
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = ambient + noiseTable[(noise + i) & (NOISE_TABLE_SIZE - 1)];
+        }
+        for (Body body : bodies) {
+            int minX = Math.max(0, (int) (body.x - body.radius));
+            int maxX = Math.min(width - 1, (int) (body.x + body.radius));
+            int minY = Math.max(0, (int) (body.y - body.radius));
+            int maxY = Math.min(height - 1, (int) (body.y + body.radius));
+            double radiusSquared = body.radius * body.radius;
+            for (int y = minY; y <= maxY; y++) {
+                double dy = y - body.y;
+                int row = y * width;
+                for (int x = minX; x <= maxX; x++) {
+                    double dx = x - body.x;
+                    double distance = (dx * dx + dy * dy) / radiusSquared;
+                    if (distance <= 1) {
+                        int i = row + x;
+                        double temperature = BODY_PEAK - (BODY_PEAK - BODY_EDGE) * distance
+                                + noiseTable[(noise + i) & (NOISE_TABLE_SIZE - 1)];
+                        if (temperature > temperatures[i]) {
+                            temperatures[i] = temperature;
+                        }
+                    }
+                }
+            }
+        }
+        return temperatures;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticFrameSource{" + width + "x" + height + ", bodies=" + bodies.length + ", frames=" + getFrames() + "}";
+    }
+}
@@ -0,0 +1,272 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Converts the temperature matrix from {@code ThermalImage.getValues} into opaque grayscale ARGB pixels.
+ * <p>
+ * The mapping is the one the app has always used: clamp to [min, max] and scale to 0..255 with {@link Math#round(double)}.
+ * Instead of evaluating it per pixel, the range is split in {@link #BUCKET_COUNT} buckets and every bucket that maps
+ * to a single gray level is answered from a lookup table. The few buckets that straddle a rounding boundary fall
+ * back to the exact formula, so the output is identical to the per-pixel computation.
+ * <p>
+ * Pixels are written row-major (index {@code x + y * width}) into a caller owned int[] that can be handed to
+ * {@code Bitmap.setPixels} in one call. Rows can be split in bands over several threads. The same pass can fill
+ * {@link FrameStatistics}, every band counts into its own accumulator and they are merged at the end.
+ * <p>
+ * The range can be changed between frames with {@link #setRange}, eg for auto-ranging; it rebuilds the table.
+ */
+class TemperatureConverter {
+
+    static final int BUCKET_COUNT = 4096;
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private double minTemperature;
+    private double maxTemperature;
+    private double scale;
+    private double bucketsPerDegree;
+    private int lowPixel;
+    private int highPixel;
+
+    //ARGB value per bucket, 0 when the bucket is ambiguous and has to use the exact formula
+    private final int[] lut = new int[BUCKET_COUNT];
+
+    private final int threads;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    //Statistics of every band, merged into the caller's accumulator
+    private final FrameStatistics[] bandStatistics;
+
+    TemperatureConverter(double minTemperature, double maxTemperature) {
+        this(minTemperature, maxTemperature, 1);
+    }
+
+    /**
+     * @param threads number of row bands converted in parallel, 1 converts on the calling thread
+     */
+    TemperatureConverter(double minTemperature, double maxTemperature, int threads) {
+        this(minTemperature, maxTemperature, threads, threads > 1 ? Executors.newFixedThreadPool(threads) : null, true);
+    }
+
+    /**
+     * Convert on a pool shared with other work, eg a {@link FairExecutor.Lane}, {@link #shutdown()} leaves it running
+     *
+     * @param bands number of row bands, eg the number of threads of the pool
+     */
+    TemperatureConverter(double minTemperature, double maxTemperature, int bands, ExecutorService executor) {
+        this(minTemperature, maxTemperature, bands, executor, false);
+    }
+
+    private TemperatureConverter(double minTemperature, double maxTemperature, int threads, ExecutorService executor,
+                                 boolean ownsExecutor) {
+        this.threads = Math.max(1, threads);
+        this.executor = this.threads > 1 ? executor : null;
+        this.ownsExecutor = ownsExecutor;
+        this.bandStatistics = new FrameStatistics[this.threads];
+        for (int i = 0; i < this.threads; i++) {
+            bandStatistics[i] = new FrameStatistics();
+        }
+        setRange(minTemperature, maxTemperature);
+    }
+
+    /**
+     * Change the range mapped to 0..255, not while a conversion is running
+     */
+    void setRange(double minTemperature, double maxTemperature) {
+        if (!(maxTemperature > minTemperature)) {
+            throw new IllegalArgumentException("maxTemperature must be larger than minTemperature");
+        }
+        this.minTemperature = minTemperature;
+        this.maxTemperature = maxTemperature;
+        this.scale = 255.0 / (maxTemperature - minTemperature);
+        this.bucketsPerDegree = BUCKET_COUNT / (maxTemperature - minTemperature);
+        this.lowPixel = toGray(exactLevel(minTemperature));
+        this.highPixel = toGray(exactLevel(maxTemperature));
+        buildLut();
+    }
+
+    double getMinTemperature() {
+        return minTemperature;
+    }
+
+    double getMaxTemperature() {
+        return maxTemperature;
+    }
+
+    /**
+     * The reference mapping, one temperature to a gray level 0..255
+     */
+    int exactLevel(double temperature) {
+        if (temperature < minTemperature)
+            temperature = minTemperature;
+        else if (temperature > maxTemperature)
+            temperature = maxTemperature;
+
+        int scaledTemp = (int) Math.round((temperature - minTemperature) * scale);
+        return (scaledTemp > 255) ? 255 : scaledTemp;
+    }
+
+    /**
+     * Convert {@code width * height} temperatures into {@code pixels}, both row-major
+     *
+     * @return false if the thread was interrupted, see {@link #convert(double[], int[], int, int, FrameStatistics)}
+     */
+    boolean convert(double[] temperatures, int[] pixels, int width, int height) {
+        return convert(temperatures, pixels, width, height, null);
+    }
+
+    /**
+     * Convert {@code width * height} temperatures into {@code pixels}, both row-major, and add them to
+     * {@code statistics}
+     * <p>
+     * When the thread is interrupted the bands that haven't started are skipped, and the call still waits for the
+     * ones that are running: once it returns nothing writes to {@code pixels} anymore, so they can be reused.
+     *
+     * @param statistics reset first, null to skip the statistics
+     * @return false if the thread was interrupted, the pixels and statistics are incomplete then and the interrupt
+     * is set again
+     */
+    boolean convert(double[] temperatures, int[] pixels, int width, int height, FrameStatistics statistics) {
+        int count = width * height;
+        if (temperatures.length < count || pixels.length < count) {
+            throw new IllegalArgumentException("buffers smaller than " + width + "x" + height);
+        }
+        if (statistics != null) {
+            statistics.reset();
+        }
+        if (executor == null || height < threads) {
+            convertRows(temperatures, pixels, width, 0, height, statistics);
+            return true;
+        }
+
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        List<Future<?>> bands = new ArrayList<>(threads);
+        int rowsPerBand = (height + threads - 1) / threads;
+        for (int firstRow = 0; firstRow < height; firstRow += rowsPerBand) {
+            final int from = firstRow;
+            final int to = Math.min(height, firstRow + rowsPerBand);
+            final FrameStatistics band = statistics == null ? null : bandStatistics[bands.size()];
+            if (band != null) {
+                band.reset();
+            }
+            bands.add(executor.submit(() -> {
+                if (!interrupted.get()) {
+                    convertRows(temperatures, pixels, width, from, to, band);
+                }
+            }));
+        }
+        //Not cancelled when interrupted, a cancelled future is done while its band may still be writing
+        Throwable failure = null;
+        for (Future<?> band : bands) {
+            while (true) {
+                try {
+                    band.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                } catch (ExecutionException e) {
+                    failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted.get()) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (failure != null) {
+            throw new IllegalStateException("conversion failed", failure);
+        }
+        if (statistics != null) {
+            for (int i = 0; i < bands.size(); i++) {
+                statistics.merge(bandStatistics[i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the worker threads it created, the converter can't be used afterwards
+     */
+    void shutdown() {
+        if (executor != null && ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void convertRows(double[] temperatures, int[] pixels, int width, int fromRow, int toRow,
+                             FrameStatistics statistics) {
+        final double min = minTemperature;
+        final double max = maxTemperature;
+        final double bucketScale = bucketsPerDegree;
+        final int[] table = lut;
+
+        //Statistics are counted in locals and stored once per band
+        final boolean collect = statistics != null;
+        final int[] histogram = collect ? statistics.histogram : null;
+        final double binScale = 1 / FrameStatistics.BIN_WIDTH;
+        final int lastBin = FrameStatistics.BIN_COUNT - 1;
+        int count = 0;
+        double sum = 0;
+        double low = Double.POSITIVE_INFINITY;
+        double high = Double.NEGATIVE_INFINITY;
+
+        int end = toRow * width;
+        for (int i = fromRow * width; i < end; i++) {
+            double temperature = temperatures[i];
+            if (temperature <= min) {
+                pixels[i] = lowPixel;
+            } else if (temperature >= max) {
+                pixels[i] = highPixel;
+            } else {
+                //NaN ends up here as well, the cast gives bucket 0 which is never trusted for NaN below
+                int bucket = (int) ((temperature - min) * bucketScale);
+                int pixel = bucket < BUCKET_COUNT ? table[bucket] : 0;
+                pixels[i] = pixel != 0 && temperature == temperature ? pixel : toGray(exactLevel(temperature));
+            }
+            //false for NaN
+            if (collect && temperature == temperature) {
+                count++;
+                sum += temperature;
+                if (temperature < low) {
+                    low = temperature;
+                }
+                if (temperature > high) {
+                    high = temperature;
+                }
+                int bin = (int) ((temperature - FrameStatistics.HISTOGRAM_MIN) * binScale);
+                histogram[bin < 0 ? 0 : bin > lastBin ? lastBin : bin]++;
+            }
+        }
+        if (collect) {
+            statistics.count += count;
+            statistics.sum += sum;
+            statistics.min = Math.min(statistics.min, low);
+            statistics.max = Math.max(statistics.max, high);
+        }
+    }
+
+    private void buildLut() {
+        double bucketWidth = (maxTemperature - minTemperature) / BUCKET_COUNT;
+        //Bucket lookup can be off by a rounding error, widen every bucket by a small margin before
+        //trusting it. The mapping is monotonic so checking both widened edges covers the whole bucket.
+        double margin = bucketWidth / 64;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            double low = minTemperature + bucket * bucketWidth - margin;
+            double high = minTemperature + (bucket + 1) * bucketWidth + margin;
+            int lowLevel = exactLevel(low);
+            lut[bucket] = lowLevel == exactLevel(high) ? toGray(lowLevel) : 0;
+        }
+    }
+
+    private static int toGray(int level) {
+        return OPAQUE | (level << 16) | (level << 8) | level;
+    }
+}
@@ -0,0 +1,258 @@
+package com.samples.flironecamera;
+
+import java.util.Arrays;
+
+/**
+ * Temperature measurements on one frame: spots, boxes and lines, read from the raw temperature matrix instead of the
+ * 8 bit bitmap.
+ * <p>
+ * {@link #build} makes one pass over the matrix and fills a summed-area table of the temperatures and of the number
+ * of valid (not NaN) pixels, so the mean of any box takes four lookups, plus the max of every
+ * {@value #BLOCK}x{@value #BLOCK} block, so the max of a box only scans the pixels of the blocks on its border.
+ * A line is sampled pixel by pixel along its length.
+ * <p>
+ * A query object is reused for many frames, its tables only grow when the frame size does. Queries can be made from
+ * any thread once it is built and published, eg through the app's {@code FrameDataHolder}.
+ */
+class TemperatureQuery {
+
+    static final int BLOCK = 8;
+
+    private double[] temperatures;
+    private int width, height;
+    private int blocksX, blocksY;
+
+    //(width + 1) * (height + 1), row and column 0 are zero
+    private double[] sums = new double[0];
+    private int[] counts = new int[0];
+    //NEGATIVE_INFINITY for a block without valid pixels
+    private double[] blockMax = new double[0];
+
+    /**
+     * Prepare the queries for a row-major {@code width * height} matrix in Celsius, NaN is no data.
+     * The matrix is kept by reference and must not change while this query is used.
+     */
+    TemperatureQuery build(double[] temperatures, int width, int height) {
+        this.temperatures = temperatures;
+        this.width = width;
+        this.height = height;
+        blocksX = (width + BLOCK - 1) / BLOCK;
+        blocksY = (height + BLOCK - 1) / BLOCK;
+        int stride = width + 1;
+        if (sums.length < stride * (height + 1)) {
+            sums = new double[stride * (height + 1)];
+            counts = new int[stride * (height + 1)];
+        }
+        if (blockMax.length < blocksX * blocksY) {
+            blockMax = new double[blocksX * blocksY];
+        }
+        Arrays.fill(sums, 0, stride, 0);
+        Arrays.fill(counts, 0, stride, 0);
+        Arrays.fill(blockMax, 0, blocksX * blocksY, Double.NEGATIVE_INFINITY);
+
+        for (int y = 0; y < height; y++) {
+            double rowSum = 0;
+            int rowCount = 0;
+            int in = y * width;
+            int out = (y + 1) * stride;
+            int above = y * stride;
+            int blockRow = (y / BLOCK) * blocksX;
+            sums[out] = 0;
+            counts[out] = 0;
+            for (int x = 0; x < width; x++) {
+                double temperature = temperatures[in + x];
+                //false for NaN
+                if (temperature == temperature) {
+                    rowSum += temperature;
+                    rowCount++;
+                    int block = blockRow + x / BLOCK;
+                    if (temperature > blockMax[block]) {
+                        blockMax[block] = temperature;
+                    }
+                }
+                sums[out + x + 1] = sums[above + x + 1] + rowSum;
+                counts[out + x + 1] = counts[above + x + 1] + rowCount;
+            }
+        }
+        return this;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Temperature of one pixel, NaN if it has no data
+     */
+    double spot(int x, int y) {
+        checkPoint(x, y);
+        return temperatures[y * width + x];
+    }
+
+    /**
+     * Mean temperature of the box between two corners, inclusive and in any order, clipped to the frame
+     *
+     * @return NaN if the box has no valid pixels
+     */
+    double mean(int x0, int y0, int x1, int y1) {
+        if (outside(x0, y0, x1, y1)) {
+            return Double.NaN;
+        }
+        int left = clamp(Math.min(x0, x1), width);
+        int right = clamp(Math.max(x0, x1), width) + 1;
+        int top = clamp(Math.min(y0, y1), height);
+        int bottom = clamp(Math.max(y0, y1), height) + 1;
+        int stride = width + 1;
+        int count = counts[bottom * stride + right] - counts[top * stride + right]
+                - counts[bottom * stride + left] + counts[top * stride + left];
+        if (count == 0) {
+            return Double.NaN;
+        }
+        double sum = sums[bottom * stride + right] - sums[top * stride + right]
+                - sums[bottom * stride + left] + sums[top * stride + left];
+        return sum / count;
+    }
+
+    /**
+     * Number of valid pixels in the box, see {@link #mean}
+     */
+    int count(int x0, int y0, int x1, int y1) {
+        if (outside(x0, y0, x1, y1)) {
+            return 0;
+        }
+        int left = clamp(Math.min(x0, x1), width);
+        int right = clamp(Math.max(x0, x1), width) + 1;
+        int top = clamp(Math.min(y0, y1), height);
+        int bottom = clamp(Math.max(y0, y1), height) + 1;
+        int stride = width + 1;
+        return counts[bottom * stride + right] - counts[top * stride + right]
+                - counts[bottom * stride + left] + counts[top * stride + left];
+    }
+
+    /**
+     * Max temperature of the box between two corners, inclusive and in any order, clipped to the frame
+     *
+     * @return NaN if the box has no valid pixels
+     */
+    double max(int x0, int y0, int x1, int y1) {
+        if (outside(x0, y0, x1, y1)) {
+            return Double.NaN;
+        }
+        int left = clamp(Math.min(x0, x1), width);
+        int right = clamp(Math.max(x0, x1), width);
+        int top = clamp(Math.min(y0, y1), height);
+        int bottom = clamp(Math.max(y0, y1), height);
+        double max = Double.NEGATIVE_INFINITY;
+        for (int by = top / BLOCK; by <= bottom / BLOCK; by++) {
+            int blockTop = by * BLOCK;
+            int blockBottom = Math.min(blockTop + BLOCK, height) - 1;
+            for (int bx = left / BLOCK; bx <= right / BLOCK; bx++) {
+                int blockLeft = bx * BLOCK;
+                int blockRight = Math.min(blockLeft + BLOCK, width) - 1;
+                double candidate = blockMax[by * blocksX + bx];
+                if (candidate <= max) {
+                    continue;
+                }
+                if (blockLeft >= left && blockRight <= right && blockTop >= top && blockBottom <= bottom) {
+                    max = candidate;
+                    continue;
+                }
+                //Block on the border of the box, only part of it counts
+                for (int y = Math.max(top, blockTop); y <= Math.min(bottom, blockBottom); y++) {
+                    int row = y * width;
+                    for (int x = Math.max(left, blockLeft); x <= Math.min(right, blockRight); x++) {
+                        double temperature = temperatures[row + x];
+                        if (temperature > max) {
+                            max = temperature;
+                        }
+                    }
+                }
+            }
+        }
+        return max == Double.NEGATIVE_INFINITY ? Double.NaN : max;
+    }
+
+    /**
+     * Mean temperature of the pixels on the line between two points, clipped to the frame
+     *
+     * @return NaN if the line has no valid pixels
+     */
+    double lineMean(int x0, int y0, int x1, int y1) {
+        if (x0 == x1 || y0 == y1) {
+            return mean(x0, y0, x1, y1);
+        }
+        return walkLine(x0, y0, x1, y1, false);
+    }
+
+    /**
+     * Max temperature of the pixels on the line between two points, clipped to the frame
+     *
+     * @return NaN if the line has no valid pixels
+     */
+    double lineMax(int x0, int y0, int x1, int y1) {
+        if (x0 == x1 || y0 == y1) {
+            return max(x0, y0, x1, y1);
+        }
+        return walkLine(x0, y0, x1, y1, true);
+    }
+
+    private double walkLine(int x0, int y0, int x1, int y1, boolean max) {
+        //Bresenham, pixels outside the frame are skipped
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int stepX = x0 < x1 ? 1 : -1;
+        int stepY = y0 < y1 ? 1 : -1;
+        int error = dx + dy;
+        double sum = 0;
+        double highest = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        int x = x0;
+        int y = y0;
+        while (true) {
+            if (x >= 0 && x < width && y >= 0 && y < height) {
+                double temperature = temperatures[y * width + x];
+                if (temperature == temperature) {
+                    sum += temperature;
+                    count++;
+                    if (temperature > highest) {
+                        highest = temperature;
+                    }
+                }
+            }
+            if (x == x1 && y == y1) {
+                break;
+            }
+            int error2 = 2 * error;
+            if (error2 >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (error2 <= dx) {
+                error += dx;
+                y += stepY;
+            }
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return max ? highest : sum / count;
+    }
+
+    private void checkPoint(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") outside " + width + "x" + height);
+        }
+    }
+
+    private boolean outside(int x0, int y0, int x1, int y1) {
+        return Math.max(x0, x1) < 0 || Math.min(x0, x1) >= width || Math.max(y0, y1) < 0 || Math.min(y0, y1) >= height;
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+}
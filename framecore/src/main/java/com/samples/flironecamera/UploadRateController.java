@@ -0,0 +1,144 @@
+package com.samples.flironecamera;
+
+/**
+ * Decides how often frames are uploaded, based on how the server keeps up.
+ * <p>
+ * The rate grows additively towards the ceiling (the send freq chosen by the user) while responses come back faster
+ * than the target round trip time, and is cut multiplicatively when they get slower or fail. No new upload is started
+ * while {@code maxInFlight} requests are still waiting for an answer, so calls can't pile up in OkHttp's dispatcher.
+ * <p>
+ * Not thread safe, in this app it is only used from the UI thread (Retrofit posts its callbacks there).
+ */
+class UploadRateController {
+
+    private static final double MIN_RATE = 0.05;  // Hz
+    private static final double INCREASE_FRACTION = 0.1;  // of the ceiling, per good response
+    private static final double SLOW_DECREASE = 0.75;
+    private static final double FAILURE_DECREASE = 0.5;
+
+    private int maxInFlight;
+    private long targetRttMillis;
+
+    private double ceiling;
+    private double rate;
+    private int inFlight;
+    private long smoothedRttMillis = -1;
+    private long completed, failed, skipped;
+
+    /**
+     * @param maxInFlight     max number of uploads waiting for a response
+     * @param targetRttMillis round trip time above which the rate is lowered
+     * @param ceiling         max rate in Hz
+     */
+    UploadRateController(int maxInFlight, long targetRttMillis, double ceiling) {
+        this.maxInFlight = maxInFlight;
+        this.targetRttMillis = targetRttMillis;
+        this.ceiling = ceiling;
+        this.rate = ceiling;
+    }
+
+    /**
+     * Change the in-flight limit and target round trip time, eg when uploads are sent in batches and stay in flight
+     * until their batch is sent
+     */
+    void setLimits(int maxInFlight, long targetRttMillis) {
+        this.maxInFlight = maxInFlight;
+        this.targetRttMillis = targetRttMillis;
+    }
+
+    /**
+     * Set the max rate in Hz, the current rate is lowered right away if it is above
+     */
+    void setCeiling(double ceiling) {
+        this.ceiling = ceiling;
+        if (rate > ceiling) {
+            rate = ceiling;
+        }
+    }
+
+    /**
+     * Reserve an in-flight slot for a new upload
+     *
+     * @return false if too many uploads are still waiting for a response
+     */
+    boolean tryAcquire() {
+        if (inFlight >= maxInFlight) {
+            skipped++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Give back a slot that was acquired but never used, eg because the encoder was busy
+     */
+    void cancel() {
+        inFlight--;
+    }
+
+    /**
+     * A response arrived after {@code rttMillis}, an unsuccessful response counts as a failure
+     */
+    void onResponse(long rttMillis, boolean successful) {
+        inFlight--;
+        if (!successful) {
+            failed++;
+            rate = Math.max(MIN_RATE, rate * FAILURE_DECREASE);
+            return;
+        }
+        completed++;
+        smoothedRttMillis = smoothedRttMillis < 0 ? rttMillis : (7 * smoothedRttMillis + rttMillis) / 8;
+        if (smoothedRttMillis > targetRttMillis) {
+            rate = Math.max(MIN_RATE, rate * SLOW_DECREASE);
+        } else {
+            rate = Math.min(ceiling, rate + ceiling * INCREASE_FRACTION);
+        }
+    }
+
+    /**
+     * The upload failed, eg timeout or no connection
+     */
+    void onFailure() {
+        inFlight--;
+        failed++;
+        rate = Math.max(MIN_RATE, rate * FAILURE_DECREASE);
+    }
+
+    /**
+     * Delay until the next upload at the current rate
+     */
+    long getIntervalMillis() {
+        return (long) (1000 / rate);
+    }
+
+    double getRate() {
+        return rate;
+    }
+
+    int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Smoothed round trip time, -1 before the first response
+     */
+    long getSmoothedRttMillis() {
+        return smoothedRttMillis;
+    }
+
+    long getCompleted() {
+        return completed;
+    }
+
+    long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Upload ticks skipped because {@code maxInFlight} was reached
+     */
+    long getSkipped() {
+        return skipped;
+    }
+}
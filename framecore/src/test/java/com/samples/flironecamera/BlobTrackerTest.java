@@ -0,0 +1,195 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scripted sequences of people walking through the view, fed to the tracker as regions or as frames through the
+ * {@link HotSpotDetector}.
+ */
+public class BlobTrackerTest {
+
+    private static final int MAX_MISSED = 3;
+    private static final int MIN_HITS = 3;
+
+    private final List<BlobTracker.Track> improved = new ArrayList<>();
+    private final List<BlobTracker.Track> confirmed = new ArrayList<>();
+    private final List<BlobTracker.Track> noise = new ArrayList<>();
+
+    private final BlobTracker tracker = new BlobTracker(0.3, 20, MAX_MISSED, MIN_HITS, new BlobTracker.Listener() {
+        @Override
+        public void improved(BlobTracker.Track track) {
+            improved.add(track);
+        }
+
+        @Override
+        public void ended(BlobTracker.Track track, boolean isConfirmed) {
+            (isConfirmed ? confirmed : noise).add(track);
+        }
+    });
+
+    /**
+     * A square region of {@code 2 * half + 1} pixels a side around (x, y)
+     */
+    private static HotSpotDetector.Region region(int x, int y, int half, double peak) {
+        int side = 2 * half + 1;
+        return new HotSpotDetector.Region(side * side, x - half, y - half, x + half, y + half, x, y,
+                peak, peak - 1, x, y);
+    }
+
+    private int[] update(long timestamp, HotSpotDetector.Region... regions) {
+        int[] ids = new int[regions.length];
+        tracker.update(regions, timestamp, ids);
+        return ids;
+    }
+
+    @Test
+    public void personWalkingThroughKeepsOneId() {
+        int id = update(0, region(10, 50, 8, 36.0))[0];
+        for (int frame = 1; frame < 20; frame++) {
+            assertEquals(id, update(frame, region(10 + frame * 4, 50, 8, 36.0))[0]);
+        }
+        for (int frame = 20; frame <= 20 + MAX_MISSED; frame++) {
+            update(frame);
+        }
+
+        assertEquals(0, tracker.getTrackCount());
+        assertEquals(1, confirmed.size());
+        assertEquals(id, confirmed.get(0).id);
+        assertEquals(20, confirmed.get(0).hits);
+        assertEquals(1, tracker.getSubjects());
+    }
+
+    @Test
+    public void bestFrameHasTheHighestPeak() {
+        double[] peaks = {35.0, 35.5, 36.8, 36.2, 36.8, 35.9};
+        for (int frame = 0; frame < peaks.length; frame++) {
+            update(frame * 100, region(50 + frame, 50, 8, peaks[frame]));
+        }
+        tracker.clear();
+
+        BlobTracker.Track track = confirmed.get(0);
+        assertEquals(36.8, track.best.peak, 0);
+        //The first frame that reached it
+        assertEquals(200, track.bestTimestamp);
+        //Started, then 35.5 and 36.8
+        assertEquals(3, improved.size());
+    }
+
+    @Test
+    public void shortOcclusionKeepsTheId() {
+        int id = update(0, region(30, 30, 6, 36.0))[0];
+        update(1, region(32, 30, 6, 36.0));
+        for (int frame = 2; frame < 2 + MAX_MISSED; frame++) {
+            update(frame);
+        }
+
+        assertEquals(id, update(2 + MAX_MISSED, region(40, 30, 6, 36.0))[0]);
+        assertTrue(confirmed.isEmpty());
+    }
+
+    @Test
+    public void flickerIsDroppedAsNoise() {
+        update(0, region(30, 30, 2, 34.5));
+        for (int frame = 1; frame <= 1 + MAX_MISSED; frame++) {
+            update(frame);
+        }
+
+        assertEquals(1, noise.size());
+        assertTrue(confirmed.isEmpty());
+        assertEquals(1, tracker.getDropped());
+        assertEquals(0, tracker.getSubjects());
+    }
+
+    @Test
+    public void neighboursPassingEachOtherKeepTheirIds() {
+        //Two lanes 16 pixels apart, walking in opposite directions, so their centroids come closer than maxDistance
+        int[] first = update(0, region(10, 40, 6, 36.0), region(110, 56, 6, 36.0));
+        for (int frame = 1; frame <= 25; frame++) {
+            int[] ids = update(frame, region(10 + frame * 4, 40, 6, 36.0), region(110 - frame * 4, 56, 6, 36.0));
+            assertEquals("frame " + frame, first[0], ids[0]);
+            assertEquals("frame " + frame, first[1], ids[1]);
+        }
+    }
+
+    @Test
+    public void tenPeopleInAQueueGetOneEventEach() {
+        //A queue of ten people walking through a 320x240 view, in lanes 22 pixels apart, at different speeds,
+        //drawn as warm squares and found by the detector
+        int width = 320;
+        int height = 240;
+        int people = 10;
+        HotSpotDetector detector = new HotSpotDetector(34.0, 20, 32);
+        double[] frame = new double[width * height];
+        int frames = 60;
+        //Lane of every track id
+        int[] laneOfId = new int[64];
+        Arrays.fill(laneOfId, -1);
+        int[] ids = new int[32];
+
+        for (int f = 0; f < frames; f++) {
+            Arrays.fill(frame, 24.0);
+            for (int lane = 0; lane < people; lane++) {
+                int x = 10 + f * (2 + lane % 3);
+                int y = 12 + lane * 22;
+                //Peaks highest in the middle of the view
+                double peak = 36.0 + 0.5 * Math.sin(Math.PI * f / frames) + lane * 0.01;
+                for (int py = y - 7; py <= y + 7; py++) {
+                    for (int px = Math.max(0, x - 7); px <= Math.min(width - 1, x + 7); px++) {
+                        frame[px + py * width] = px == x && py == y ? peak : 35.0;
+                    }
+                }
+            }
+            HotSpotDetector.Region[] regions = detector.detect(frame, width, height);
+            assertEquals("frame " + f, people, regions.length);
+
+            tracker.update(regions, f, ids);
+            for (int r = 0; r < regions.length; r++) {
+                int lane = (int) Math.round((regions[r].centroidY - 12) / 22);
+                if (laneOfId[ids[r]] < 0) {
+                    laneOfId[ids[r]] = lane;
+                }
+                assertEquals("frame " + f + " id " + ids[r], lane, laneOfId[ids[r]]);
+            }
+        }
+        assertEquals(people, tracker.getTrackCount());
+
+        //Everyone leaves the view
+        for (int f = frames; f <= frames + MAX_MISSED; f++) {
+            tracker.update(HotSpotDetector.NO_REGIONS, f, ids);
+        }
+
+        assertEquals(people, confirmed.size());
+        Set<Integer> lanes = new HashSet<>();
+        for (BlobTracker.Track track : confirmed) {
+            assertEquals(frames, track.hits);
+            lanes.add(laneOfId[track.id]);
+            //The best frame is from the middle of the walk
+            assertTrue(track.toString(), track.bestTimestamp > frames / 4 && track.bestTimestamp < frames * 3 / 4);
+        }
+        assertEquals(people, lanes.size());
+        assertTrue(noise.isEmpty());
+    }
+
+    @Test
+    public void clearEndsEveryTrack() {
+        update(0, region(20, 20, 5, 36.0), region(80, 20, 5, 36.0));
+        update(1, region(21, 20, 5, 36.0), region(81, 20, 5, 36.0));
+        update(2, region(22, 20, 5, 36.0), region(82, 20, 5, 36.0));
+
+        tracker.clear();
+
+        assertEquals(0, tracker.getTrackCount());
+        assertEquals(2, confirmed.size());
+        assertFalse(confirmed.get(0).id == confirmed.get(1).id);
+    }
+}
@@ -0,0 +1,141 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A stream of keyframes and deltas through {@link DeltaFrameEncoder.Decoder}: within tolerance, no drift between
+ * keyframes, and deltas that don't follow their reference are refused.
+ */
+public class DeltaFrameEncoderTest {
+
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+
+    private final List<Integer> types = new ArrayList<>();
+
+    private byte[][] encode(DeltaFrameEncoder encoder, List<double[]> frames) throws IOException {
+        byte[][] encoded = new byte[frames.size()][];
+        for (int i = 0; i < frames.size(); i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            types.add(encoder.encode(frames.get(i), WIDTH, HEIGHT, i * 111L, i, "device", out));
+            encoded[i] = out.toByteArray();
+        }
+        return encoded;
+    }
+
+    private static List<double[]> sequence(int count) {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 0, 4, 0.05, 0.5, 11);
+        List<double[]> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            frames.add(source.next(i / 9.0, i * 111L).clone());
+        }
+        return frames;
+    }
+
+    @Test
+    public void everyFrameIsWithinTolerance() throws IOException {
+        int tolerance = 5;
+        List<double[]> frames = sequence(40);
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(15, tolerance);
+        byte[][] encoded = encode(encoder, frames);
+
+        DeltaFrameEncoder.Decoder decoder = new DeltaFrameEncoder.Decoder();
+        for (int i = 0; i < encoded.length; i++) {
+            RadiometricFrameCodec.Frame frame = decoder.decode(encoded[i], 0, encoded[i].length);
+            assertEquals(i, frame.sequence);
+            double[] expected = frames.get(i);
+            for (int p = 0; p < expected.length; p++) {
+                int error = Math.abs(frame.centiKelvin[p] - RadiometricFrameCodec.toCentiKelvin(expected[p]));
+                assertTrue("frame " + i + " pixel " + p + " off by " + error, error <= tolerance);
+            }
+        }
+        assertEquals(3, encoder.getKeyframes());
+        assertEquals(RadiometricFrameCodec.TYPE_FULL, (int) types.get(0));
+        assertEquals(RadiometricFrameCodec.TYPE_DELTA, (int) types.get(1));
+        assertEquals(RadiometricFrameCodec.TYPE_FULL, (int) types.get(15));
+    }
+
+    @Test
+    public void zeroToleranceIsLossless() throws IOException {
+        List<double[]> frames = sequence(10);
+        byte[][] encoded = encode(new DeltaFrameEncoder(100, 0), frames);
+
+        DeltaFrameEncoder.Decoder decoder = new DeltaFrameEncoder.Decoder();
+        for (int i = 0; i < encoded.length; i++) {
+            RadiometricFrameCodec.Frame frame = decoder.decode(encoded[i], 0, encoded[i].length);
+            for (int p = 0; p < frame.centiKelvin.length; p++) {
+                assertEquals(RadiometricFrameCodec.toCentiKelvin(frames.get(i)[p]), frame.centiKelvin[p]);
+            }
+        }
+    }
+
+    @Test
+    public void deltasAreSmallerThanKeyframes() throws IOException {
+        List<double[]> frames = sequence(20);
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(100, 5);
+        byte[][] encoded = encode(encoder, frames);
+
+        assertTrue(encoded[1].length < encoded[0].length);
+        assertTrue(encoder.getCompressionRatio() > 1);
+    }
+
+    @Test
+    public void noDataSwitchForcesAKeyframe() throws IOException {
+        List<double[]> frames = sequence(3);
+        frames.get(2)[7] = Double.NaN;
+        encode(new DeltaFrameEncoder(100, 5), frames);
+
+        assertEquals(Arrays.asList(RadiometricFrameCodec.TYPE_FULL, RadiometricFrameCodec.TYPE_DELTA,
+                RadiometricFrameCodec.TYPE_FULL), types);
+    }
+
+    @Test
+    public void requestedKeyframeIsSent() throws IOException {
+        DeltaFrameEncoder encoder = new DeltaFrameEncoder(100, 5);
+        List<double[]> frames = sequence(3);
+        encode(encoder, frames.subList(0, 2));
+        encoder.requestKeyframe();
+        encode(encoder, frames.subList(2, 3));
+
+        assertEquals(RadiometricFrameCodec.TYPE_FULL, (int) types.get(2));
+    }
+
+    @Test
+    public void deltaAfterALostFrameIsRejected() throws IOException {
+        byte[][] encoded = encode(new DeltaFrameEncoder(100, 5), sequence(3));
+        DeltaFrameEncoder.Decoder decoder = new DeltaFrameEncoder.Decoder();
+        decoder.decode(encoded[0], 0, encoded[0].length);
+
+        try {
+            decoder.decode(encoded[2], 0, encoded[2].length);
+            fail("applied delta 2 to frame 0");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void deltaWithoutAKeyframeIsRejected() throws IOException {
+        byte[][] encoded = encode(new DeltaFrameEncoder(100, 5), sequence(2));
+
+        try {
+            new DeltaFrameEncoder.Decoder().decode(encoded[1], 0, encoded[1].length);
+            fail("decoded a delta without its keyframe");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeToleranceIsRejected() {
+        new DeltaFrameEncoder(10, -1);
+    }
+}
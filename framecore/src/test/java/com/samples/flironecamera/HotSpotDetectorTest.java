@@ -0,0 +1,271 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regions found on synthetic frames, drawn by hand and checked against a plain flood fill.
+ */
+public class HotSpotDetectorTest {
+
+    private static final double BACKGROUND = 22.0;
+    private static final double THRESHOLD = 34.0;
+
+    private static double[] background(int width, int height) {
+        double[] frame = new double[width * height];
+        Arrays.fill(frame, BACKGROUND);
+        return frame;
+    }
+
+    private static void rectangle(double[] frame, int width, int x0, int y0, int x1, int y1, double temperature) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                frame[x + y * width] = temperature;
+            }
+        }
+    }
+
+    @Test
+    public void emptySceneHasNoRegions() {
+        HotSpotDetector detector = new HotSpotDetector(THRESHOLD, 1, 10);
+
+        assertSame(HotSpotDetector.NO_REGIONS, detector.detect(background(40, 30), 40, 30));
+    }
+
+    @Test
+    public void rectangleIsMeasured() {
+        int width = 40;
+        double[] frame = background(width, 30);
+        rectangle(frame, width, 5, 10, 14, 14, 36.0);
+        frame[12 + 12 * width] = 37.5;
+
+        HotSpotDetector.Region[] regions = new HotSpotDetector(THRESHOLD, 1, 10).detect(frame, width, 30);
+
+        assertEquals(1, regions.length);
+        HotSpotDetector.Region region = regions[0];
+        assertEquals(50, region.area);
+        assertEquals(5, region.minX);
+        assertEquals(10, region.minY);
+        assertEquals(14, region.maxX);
+        assertEquals(14, region.maxY);
+        assertEquals(9.5, region.centroidX, 1e-9);
+        assertEquals(12.0, region.centroidY, 1e-9);
+        assertEquals(37.5, region.peak, 0);
+        assertEquals(12, region.peakX);
+        assertEquals(12, region.peakY);
+        assertEquals((49 * 36.0 + 37.5) / 50, region.mean, 1e-9);
+    }
+
+    @Test
+    public void shapeJoinedBelowIsOneRegion() {
+        //A U: the two arms get different labels and are only joined by the bottom row
+        int width = 20;
+        double[] frame = background(width, 20);
+        rectangle(frame, width, 2, 2, 3, 10, 35.0);
+        rectangle(frame, width, 10, 2, 11, 10, 36.0);
+        rectangle(frame, width, 2, 11, 11, 11, 35.0);
+
+        HotSpotDetector.Region[] regions = new HotSpotDetector(THRESHOLD, 1, 10).detect(frame, width, 20);
+
+        assertEquals(1, regions.length);
+        assertEquals(9 * 2 * 2 + 10, regions[0].area);
+        assertEquals(2, regions[0].minX);
+        assertEquals(11, regions[0].maxX);
+        assertEquals(36.0, regions[0].peak, 0);
+    }
+
+    @Test
+    public void diagonalNeighboursAreSeparateRegions() {
+        int width = 10;
+        double[] frame = background(width, 10);
+        frame[3 + 3 * width] = 35.0;
+        frame[4 + 4 * width] = 35.0;
+
+        assertEquals(2, new HotSpotDetector(THRESHOLD, 1, 10).detect(frame, width, 10).length);
+    }
+
+    @Test
+    public void nanIsBackground() {
+        int width = 10;
+        double[] frame = background(width, 10);
+        rectangle(frame, width, 2, 2, 6, 2, 35.0);
+        frame[4 + 2 * width] = Double.NaN;
+
+        HotSpotDetector.Region[] regions = new HotSpotDetector(THRESHOLD, 1, 10).detect(frame, width, 10);
+
+        assertEquals(2, regions.length);
+        assertEquals(2, regions[0].area);
+        assertEquals(2, regions[1].area);
+    }
+
+    @Test
+    public void smallRegionsAreIgnoredAndLargestAreKept() {
+        int width = 60;
+        double[] frame = background(width, 40);
+        rectangle(frame, width, 1, 1, 1, 1, 40.0);
+        rectangle(frame, width, 5, 5, 9, 9, 35.0);
+        rectangle(frame, width, 20, 5, 29, 14, 35.0);
+        rectangle(frame, width, 40, 5, 46, 11, 35.0);
+
+        HotSpotDetector detector = new HotSpotDetector(THRESHOLD, 4, 2);
+        HotSpotDetector.Region[] regions = detector.detect(frame, width, 40);
+
+        assertEquals(2, regions.length);
+        assertEquals(100, regions[0].area);
+        assertEquals(49, regions[1].area);
+
+        detector.setMinArea(1);
+        detector.setThreshold(39.0);
+        regions = detector.detect(frame, width, 40);
+        assertEquals(1, regions.length);
+        assertEquals(1, regions[0].area);
+    }
+
+    @Test
+    public void checkerboardFillsEveryLabel() {
+        //The most provisional labels a frame can have, one per two pixels
+        int width = 33;
+        int height = 21;
+        double[] frame = background(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = (y % 2); x < width; x += 2) {
+                frame[x + y * width] = 35.0;
+            }
+        }
+
+        HotSpotDetector.Region[] regions = new HotSpotDetector(THRESHOLD, 1, Integer.MAX_VALUE).detect(frame, width, height);
+
+        assertEquals((width * height + 1) / 2, regions.length);
+    }
+
+    @Test
+    public void matchesFloodFillOnRandomFrames() {
+        Random random = new Random(5);
+        HotSpotDetector detector = new HotSpotDetector(THRESHOLD, 1, Integer.MAX_VALUE);
+        //Sizes change between frames, the working arrays are reused and grown
+        int[][] sizes = {{64, 48}, {17, 90}, {120, 20}, {64, 48}, {3, 3}, {1, 50}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            for (int density = 1; density <= 9; density += 2) {
+                double[] frame = new double[width * height];
+                for (int i = 0; i < frame.length; i++) {
+                    frame[i] = random.nextInt(10) < density ? 34.0 + random.nextDouble() * 5 : BACKGROUND;
+                }
+
+                long[][] expected = floodFill(frame, width, height);
+                HotSpotDetector.Region[] regions = detector.detect(frame, width, height);
+                long[][] actual = new long[regions.length][];
+                for (int i = 0; i < regions.length; i++) {
+                    HotSpotDetector.Region region = regions[i];
+                    actual[i] = new long[]{region.area, region.minX, region.minY, region.maxX, region.maxY,
+                            Double.doubleToLongBits(region.peak)};
+                }
+                sort(actual);
+                assertArrayEquals(width + "x" + height + " density " + density, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void syntheticBodiesAreFound() {
+        int width = 160;
+        int height = 120;
+        //Five warm bodies on a room temperature background, with sensor noise
+        double[] frame = new SyntheticFrameSource(width, height, 0, 5, 0.05, 0, 3).next(0, 0);
+
+        HotSpotDetector.Region[] regions = new HotSpotDetector(THRESHOLD, 20, 10).detect(frame, width, height);
+
+        //Bodies can overlap, so count the regions of at least 20 pixels the flood fill finds
+        int expected = 0;
+        for (long[] region : floodFill(frame, width, height)) {
+            if (region[0] >= 20) {
+                expected++;
+            }
+        }
+        assertTrue(expected > 0);
+        assertEquals(expected, regions.length);
+        for (HotSpotDetector.Region region : regions) {
+            assertEquals(frame[region.peakX + region.peakY * width], region.peak, 0);
+        }
+    }
+
+    @Test
+    public void scaledRegionCoversTheSamePixels() {
+        HotSpotDetector.Region region = new HotSpotDetector.Region(4, 1, 2, 2, 3, 1.5, 2.5, 36.0, 35.5, 2, 3);
+
+        HotSpotDetector.Region scaled = region.scaled(4, 16, 15);
+
+        assertEquals(64, scaled.area);
+        assertEquals(4, scaled.minX);
+        assertEquals(8, scaled.minY);
+        assertEquals(11, scaled.maxX);
+        assertEquals(14, scaled.maxY);
+        assertEquals(7.5, scaled.centroidX, 1e-9);
+        assertEquals(11.5, scaled.centroidY, 1e-9);
+    }
+
+    /**
+     * Area, bounding box and peak of every 4-connected region, found the slow way
+     */
+    private static long[][] floodFill(double[] frame, int width, int height) {
+        boolean[] seen = new boolean[frame.length];
+        List<long[]> regions = new ArrayList<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int start = 0; start < frame.length; start++) {
+            if (seen[start] || !(frame[start] >= THRESHOLD)) {
+                continue;
+            }
+            long area = 0;
+            int minX = width, minY = height, maxX = -1, maxY = -1;
+            double peak = Double.NEGATIVE_INFINITY;
+            seen[start] = true;
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                int i = stack.pop();
+                int x = i % width;
+                int y = i / width;
+                area++;
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                peak = Math.max(peak, frame[i]);
+                int[] neighbours = {x > 0 ? i - 1 : -1, x < width - 1 ? i + 1 : -1, y > 0 ? i - width : -1,
+                        y < height - 1 ? i + width : -1};
+                for (int n : neighbours) {
+                    if (n >= 0 && !seen[n] && frame[n] >= THRESHOLD) {
+                        seen[n] = true;
+                        stack.push(n);
+                    }
+                }
+            }
+            regions.add(new long[]{area, minX, minY, maxX, maxY, Double.doubleToLongBits(peak)});
+        }
+        long[][] result = regions.toArray(new long[0][]);
+        sort(result);
+        return result;
+    }
+
+    private static void sort(long[][] regions) {
+        Arrays.sort(regions, (a, b) -> {
+            for (int i = 0; i < a.length; i++) {
+                int compare = Long.compare(a[i], b[i]);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return 0;
+        });
+    }
+}
@@ -0,0 +1,176 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Full frames through the container and back, and the decoder on data it has to refuse.
+ */
+public class RadiometricFrameCodecTest {
+
+    private static final int WIDTH = 80;
+    private static final int HEIGHT = 60;
+
+    private static byte[] encode(double[] celsius, int width, int height, int sequence) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RadiometricFrameCodec().encode(celsius, width, height, 1234567890123L, sequence, "FLIR ONE 42", out);
+        return out.toByteArray();
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            RadiometricFrameCodec.decode(data, 0, data.length);
+            fail("decoded a broken frame");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void roundTripKeepsEveryCentiKelvin() throws IOException {
+        double[] celsius = new SyntheticFrameSource(WIDTH, HEIGHT, 0, 3, 0.05, 0.5, 7).next(0.1, 0);
+        byte[] data = encode(celsius, WIDTH, HEIGHT, 9);
+
+        RadiometricFrameCodec.Frame frame = RadiometricFrameCodec.decode(data, 0, data.length);
+
+        assertEquals(RadiometricFrameCodec.TYPE_FULL, frame.type);
+        assertEquals(WIDTH, frame.width);
+        assertEquals(HEIGHT, frame.height);
+        assertEquals(1234567890123L, frame.timestamp);
+        assertEquals(9, frame.sequence);
+        assertEquals("FLIR ONE 42", frame.deviceId);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int i = x + y * WIDTH;
+                assertEquals(RadiometricFrameCodec.toCentiKelvin(celsius[i]), frame.centiKelvin[i]);
+                assertEquals(celsius[i], frame.getCelsius(x, y), 0.005 + 1e-9);
+            }
+        }
+        assertTrue("no smaller than the raw matrix: " + data.length, data.length < WIDTH * HEIGHT * 2);
+    }
+
+    @Test
+    public void largeStepsBetweenNeighboursRoundTrip() throws IOException {
+        //Every residual of the predictor is a 16-bit wrap around, from the coldest to the hottest value and back
+        double[] celsius = new double[WIDTH * HEIGHT];
+        for (int i = 0; i < celsius.length; i++) {
+            celsius[i] = i % 2 == 0 ? -273.14 : 380.0;
+        }
+        byte[] data = encode(celsius, WIDTH, HEIGHT, 0);
+
+        RadiometricFrameCodec.Frame frame = RadiometricFrameCodec.decode(data, 0, data.length);
+
+        for (int i = 0; i < celsius.length; i++) {
+            assertEquals(RadiometricFrameCodec.toCentiKelvin(celsius[i]), frame.centiKelvin[i]);
+        }
+    }
+
+    @Test
+    public void nanIsNoData() throws IOException {
+        double[] celsius = new double[WIDTH * HEIGHT];
+        Arrays.fill(celsius, 36.6);
+        celsius[0] = Double.NaN;
+        celsius[WIDTH + 5] = Double.NaN;
+        byte[] data = encode(celsius, WIDTH, HEIGHT, 0);
+
+        RadiometricFrameCodec.Frame frame = RadiometricFrameCodec.decode(data, 0, data.length);
+
+        assertEquals(RadiometricFrameCodec.NO_DATA, frame.centiKelvin[0]);
+        assertTrue(Double.isNaN(frame.getCelsius(0, 0)));
+        assertTrue(Double.isNaN(frame.getCelsius(5, 1)));
+        assertEquals(36.6, frame.getCelsius(1, 0), 0.005);
+    }
+
+    @Test
+    public void outOfRangeTemperaturesAreClamped() {
+        assertEquals(1, RadiometricFrameCodec.toCentiKelvin(-300));
+        assertEquals(0xFFFF, RadiometricFrameCodec.toCentiKelvin(1000));
+        assertEquals(0xFFFF, RadiometricFrameCodec.toCentiKelvin(Double.POSITIVE_INFINITY));
+        assertEquals(31015, RadiometricFrameCodec.toCentiKelvin(37.0));
+    }
+
+    @Test
+    public void recordLengthSplitsConsecutiveFrames() throws IOException {
+        double[] celsius = new SyntheticFrameSource(WIDTH, HEIGHT, 0, 3, 0.05, 0.5, 7).next(0.1, 0);
+        byte[] first = encode(celsius, WIDTH, HEIGHT, 1);
+        byte[] second = encode(celsius, WIDTH, HEIGHT, 2);
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length);
+        buffer.put(first).put(second).flip();
+
+        assertEquals(first.length, RadiometricFrameCodec.recordLength(buffer, 0));
+        assertEquals(second.length, RadiometricFrameCodec.recordLength(buffer, first.length));
+
+        buffer.limit(buffer.limit() - 1);
+        assertEquals(-1, RadiometricFrameCodec.recordLength(buffer, first.length));
+    }
+
+    @Test
+    public void truncatedPayloadIsRejected() throws IOException {
+        double[] celsius = new SyntheticFrameSource(WIDTH, HEIGHT, 0, 3, 0.05, 0.5, 7).next(0.1, 0);
+        byte[] data = encode(celsius, WIDTH, HEIGHT, 0);
+
+        assertRejected(Arrays.copyOf(data, data.length - 1));
+        assertRejected(Arrays.copyOf(data, 20));
+    }
+
+    @Test
+    public void corruptPayloadIsRejected() throws IOException {
+        double[] celsius = new SyntheticFrameSource(WIDTH, HEIGHT, 0, 3, 0.05, 0.5, 7).next(0.1, 0);
+        byte[] data = encode(celsius, WIDTH, HEIGHT, 0);
+        //The payload follows the header, 26 bytes, the device id and the length
+        int payload = 26 + 2 + "FLIR ONE 42".length() + 4;
+        for (int i = payload; i < payload + 8; i++) {
+            data[i] = (byte) 0xFF;
+        }
+
+        assertRejected(data);
+    }
+
+    @Test
+    public void wrongMagicAndVersionAreRejected() throws IOException {
+        byte[] data = encode(new double[4], 2, 2, 0);
+        byte[] magic = data.clone();
+        magic[0] = 'X';
+        byte[] version = data.clone();
+        version[4] = RadiometricFrameCodec.VERSION + 1;
+
+        assertRejected(magic);
+        assertRejected(version);
+    }
+
+    /**
+     * A header claiming {@code width * height} pixels, without a payload
+     */
+    private static byte[] header(int width, int height) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RadiometricFrameCodec.MAGIC);
+        out.writeByte(RadiometricFrameCodec.VERSION);
+        out.writeByte(RadiometricFrameCodec.TYPE_FULL);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeLong(0);
+        out.writeInt(0);
+        out.writeUTF("");
+        out.writeInt(0);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void oversizedOrOverflowingHeaderIsRejectedBeforeAllocating() throws IOException {
+        //65536 * 65536 is 0 in int arithmetic and 46341 * 46341 is negative
+        assertRejected(header(65536, 65536));
+        assertRejected(header(46341, 46341));
+        assertRejected(header(4097, 4096));
+        assertRejected(header(0, 10));
+        assertRejected(header(-1, -1));
+    }
+}
@@ -0,0 +1,194 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The lookup table kernel against the per-pixel loop it replaced, which has to give the same pixels bit for bit.
+ */
+public class TemperatureConverterTest {
+
+    private static final double MIN = 30.0;
+    private static final double MAX = 45.0;
+
+    /**
+     * The loop of the original CameraHandler.handleIncomingImage, column-major, with Color.argb(255, v, v, v) written
+     * out
+     */
+    private static int[] reference(double[] temperatures, int width, int height, double min, double max) {
+        int[] pixels = new int[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                double temperature = temperatures[x + y * width];
+
+                if (temperature < min)
+                    temperature = min;
+                else if (temperature > max)
+                    temperature = max;
+
+                int scaledTemp = (int) Math.round((temperature - min) * (255.0 / (max - min)));
+                scaledTemp = (scaledTemp > 255) ? 255 : scaledTemp;
+                pixels[x + y * width] = (255 << 24) | (scaledTemp << 16) | (scaledTemp << 8) | scaledTemp;
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] convert(TemperatureConverter converter, double[] temperatures, int width, int height) {
+        int[] pixels = new int[width * height];
+        converter.convert(temperatures, pixels, width, height);
+        return pixels;
+    }
+
+    @Test
+    public void everyStepOfTheRangeMatchesTheReference() {
+        //A tenth of a millikelvin apart from 5 degrees below to 5 degrees above the range
+        int count = (int) Math.round((MAX - MIN + 10) * 10000) + 1;
+        double[] temperatures = new double[count];
+        for (int i = 0; i < count; i++) {
+            temperatures[i] = MIN - 5 + i / 10000.0;
+        }
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        assertArrayEquals(reference(temperatures, count, 1, MIN, MAX), convert(converter, temperatures, count, 1));
+    }
+
+    @Test
+    public void roundingBoundariesMatchTheReference() {
+        //Every level's rounding edge, and the doubles right next to it
+        double[] temperatures = new double[256 * 3];
+        for (int level = 0; level < 256; level++) {
+            double edge = MIN + (level + 0.5) * (MAX - MIN) / 255.0;
+            temperatures[level * 3] = Math.nextDown(edge);
+            temperatures[level * 3 + 1] = edge;
+            temperatures[level * 3 + 2] = Math.nextUp(edge);
+        }
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        assertArrayEquals(reference(temperatures, temperatures.length, 1, MIN, MAX),
+                convert(converter, temperatures, temperatures.length, 1));
+    }
+
+    @Test
+    public void specialValuesMatchTheReference() {
+        double[] temperatures = {Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -Double.MAX_VALUE,
+                Double.MAX_VALUE, MIN, MAX, Math.nextDown(MIN), Math.nextUp(MAX), 0.0, -0.0};
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        assertArrayEquals(reference(temperatures, temperatures.length, 1, MIN, MAX),
+                convert(converter, temperatures, temperatures.length, 1));
+    }
+
+    @Test
+    public void syntheticFrameMatchesTheReference() {
+        int width = 480;
+        int height = 640;
+        double[] temperatures = new SyntheticFrameSource(width, height, 0, 5, 0.05, 0.5, 1).next(0.1, 0);
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        assertArrayEquals(reference(temperatures, width, height, MIN, MAX), convert(converter, temperatures, width, height));
+    }
+
+    @Test
+    public void bandsOnSeveralThreadsMatchTheReference() {
+        int width = 480;
+        int height = 640;
+        double[] temperatures = new SyntheticFrameSource(width, height, 0, 5, 0.05, 0.5, 2).next(0.1, 0);
+        int[] expected = reference(temperatures, width, height, MIN, MAX);
+
+        //Including band counts that don't divide the height
+        for (int threads : new int[]{2, 3, 4, 7}) {
+            TemperatureConverter converter = new TemperatureConverter(MIN, MAX, threads);
+            try {
+                assertArrayEquals("threads " + threads, expected, convert(converter, temperatures, width, height));
+            } finally {
+                converter.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void interruptedConversionWaitsForTheBandsAndSkipsTheRest() throws InterruptedException {
+        int width = 48;
+        int height = 64;
+        double[] temperatures = new SyntheticFrameSource(width, height, 0, 5, 0.05, 0.5, 2).next(0.1, 0);
+        int[] pixels = new int[width * height];
+        //The only thread of the pool is busy until after the interrupt, so no band has started by then
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch busy = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            busy.countDown();
+        });
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX, 4, executor);
+        try {
+            releaser.start();
+            Thread.currentThread().interrupt();
+            assertFalse(converter.convert(temperatures, pixels, width, height, new FrameStatistics()));
+            assertTrue(Thread.interrupted());
+            //Once convert() returned every band had its turn on the pool and skipped its rows
+            assertArrayEquals(new int[width * height], pixels);
+            releaser.join();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void otherRangesMatchTheReference() {
+        Random random = new Random(3);
+        double[] temperatures = new double[100_000];
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = -30 + random.nextDouble() * 180;
+        }
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        //The ranges auto-ranging picks, narrow and wide
+        double[][] ranges = {{20, 25}, {33.17, 38.42}, {-20, 140}, {36.9, 37.0}};
+        for (double[] range : ranges) {
+            converter.setRange(range[0], range[1]);
+            assertArrayEquals(range[0] + ".." + range[1], reference(temperatures, temperatures.length, 1, range[0], range[1]),
+                    convert(converter, temperatures, temperatures.length, 1));
+        }
+    }
+
+    @Test
+    public void exactLevelIsTheReferenceMapping() {
+        TemperatureConverter converter = new TemperatureConverter(MIN, MAX);
+
+        assertEquals(0, converter.exactLevel(MIN - 1));
+        assertEquals(0, converter.exactLevel(MIN));
+        assertEquals(128, converter.exactLevel((MIN + MAX) / 2));
+        assertEquals(255, converter.exactLevel(MAX));
+        assertEquals(255, converter.exactLevel(MAX + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyRangeIsRejected() {
+        new TemperatureConverter(MAX, MAX);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallBuffersAreRejected() {
+        new TemperatureConverter(MIN, MAX).convert(new double[10], new int[9], 10, 1);
+    }
+}
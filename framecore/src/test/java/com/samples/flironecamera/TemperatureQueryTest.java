@@ -0,0 +1,237 @@
+package com.samples.flironecamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Spots, boxes and lines on random frames with NaN holes, against brute force over the pixels, for boxes inside the
+ * frame, across its edges and down to single pixels.
+ */
+public class TemperatureQueryTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Temperatures from 20 to 40 degrees, a tenth of the pixels NaN, and a NaN rectangle larger than a block
+     */
+    private static double[] frame(Random random, int width, int height) {
+        double[] frame = new double[width * height];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = random.nextDouble() < 0.1 ? Double.NaN : 20 + 20 * random.nextDouble();
+        }
+        int holeX = random.nextInt(width);
+        int holeY = random.nextInt(height);
+        for (int y = holeY; y < Math.min(height, holeY + 2 * TemperatureQuery.BLOCK + 3); y++) {
+            for (int x = holeX; x < Math.min(width, holeX + 2 * TemperatureQuery.BLOCK + 3); x++) {
+                frame[x + y * width] = Double.NaN;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Mean, max and count of the valid pixels of the box, inclusive corners in any order, clipped to the frame
+     */
+    private static double[] bruteForce(double[] frame, int width, int height, int x0, int y0, int x1, int y1) {
+        double sum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int y = Math.max(0, Math.min(y0, y1)); y <= Math.min(height - 1, Math.max(y0, y1)); y++) {
+            for (int x = Math.max(0, Math.min(x0, x1)); x <= Math.min(width - 1, Math.max(x0, x1)); x++) {
+                double temperature = frame[x + y * width];
+                if (!Double.isNaN(temperature)) {
+                    sum += temperature;
+                    max = Math.max(max, temperature);
+                    count++;
+                }
+            }
+        }
+        return count == 0 ? new double[]{Double.NaN, Double.NaN, 0} : new double[]{sum / count, max, count};
+    }
+
+    private static void assertBox(String message, TemperatureQuery query, double[] frame, int width, int height,
+                                  int x0, int y0, int x1, int y1) {
+        double[] expected = bruteForce(frame, width, height, x0, y0, x1, y1);
+        assertEquals(message + " count", (int) expected[2], query.count(x0, y0, x1, y1));
+        assertEquals(message + " mean", expected[0], query.mean(x0, y0, x1, y1), TOLERANCE);
+        //The max is one of the pixels, not a sum of them
+        assertEquals(message + " max", expected[1], query.max(x0, y0, x1, y1), 0);
+    }
+
+    @Test
+    public void randomBoxesMatchBruteForce() {
+        Random random = new Random(13);
+        TemperatureQuery query = new TemperatureQuery();
+        //Sizes that are and aren't multiples of the block, the same query object grows and shrinks with them
+        int[][] sizes = {{64, 48}, {37, 29}, {8, 8}, {1, 1}, {3, 50}, {120, 160}, {9, 17}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            double[] frame = frame(random, width, height);
+            query.build(frame, width, height);
+            assertEquals(width, query.getWidth());
+            assertEquals(height, query.getHeight());
+            for (int i = 0; i < 500; i++) {
+                //Corners up to 10 pixels outside the frame, in any order
+                int x0 = random.nextInt(width + 20) - 10;
+                int y0 = random.nextInt(height + 20) - 10;
+                int x1 = random.nextInt(width + 20) - 10;
+                int y1 = random.nextInt(height + 20) - 10;
+                assertBox(width + "x" + height + " (" + x0 + ", " + y0 + ")-(" + x1 + ", " + y1 + ")",
+                        query, frame, width, height, x0, y0, x1, y1);
+            }
+        }
+    }
+
+    @Test
+    public void boxesAcrossTheEdgesAreClipped() {
+        Random random = new Random(17);
+        int width = 45;
+        int height = 31;
+        double[] frame = frame(random, width, height);
+        TemperatureQuery query = new TemperatureQuery().build(frame, width, height);
+
+        assertBox("whole frame", query, frame, width, height, 0, 0, width - 1, height - 1);
+        assertBox("larger than the frame", query, frame, width, height, -100, -100, 100, 100);
+        assertBox("left edge", query, frame, width, height, -5, 3, 4, 20);
+        assertBox("right edge", query, frame, width, height, width - 3, 3, width + 5, 20);
+        assertBox("top edge", query, frame, width, height, 10, -7, 30, 2);
+        assertBox("bottom edge", query, frame, width, height, 10, height - 2, 30, height + 7);
+        assertBox("corner", query, frame, width, height, width + 2, height + 2, width - 9, height - 9);
+
+        //Entirely outside
+        assertEquals(0, query.count(-10, 0, -1, 5));
+        assertTrue(Double.isNaN(query.mean(width, 0, width + 5, 5)));
+        assertTrue(Double.isNaN(query.max(0, -9, 5, -1)));
+        assertTrue(Double.isNaN(query.max(0, height, 5, height + 3)));
+    }
+
+    @Test
+    public void singlePixelBoxesAreTheSpot() {
+        Random random = new Random(19);
+        int width = 21;
+        int height = 19;
+        double[] frame = frame(random, width, height);
+        TemperatureQuery query = new TemperatureQuery().build(frame, width, height);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double spot = query.spot(x, y);
+                assertEquals(frame[x + y * width], spot, 0);
+                assertEquals(Double.isNaN(spot) ? 0 : 1, query.count(x, y, x, y));
+                //The mean comes out of the summed-area table, with its rounding
+                assertEquals(spot, query.mean(x, y, x, y), TOLERANCE);
+                assertEquals(spot, query.max(x, y, x, y), 0);
+                assertEquals(spot, query.lineMean(x, y, x, y), TOLERANCE);
+                assertEquals(spot, query.lineMax(x, y, x, y), 0);
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void spotOutsideTheFrameIsRejected() {
+        new TemperatureQuery().build(new double[12], 4, 3).spot(4, 0);
+    }
+
+    @Test
+    public void straightLinesAreBoxes() {
+        Random random = new Random(23);
+        int width = 50;
+        int height = 40;
+        double[] frame = frame(random, width, height);
+        TemperatureQuery query = new TemperatureQuery().build(frame, width, height);
+
+        for (int i = 0; i < 200; i++) {
+            int x0 = random.nextInt(width + 20) - 10;
+            int x1 = random.nextInt(width + 20) - 10;
+            int y = random.nextInt(height);
+            double[] row = bruteForce(frame, width, height, x0, y, x1, y);
+            assertEquals(row[0], query.lineMean(x0, y, x1, y), TOLERANCE);
+            assertEquals(row[1], query.lineMax(x0, y, x1, y), 0);
+
+            int x = random.nextInt(width);
+            int y0 = random.nextInt(height + 20) - 10;
+            int y1 = random.nextInt(height + 20) - 10;
+            double[] column = bruteForce(frame, width, height, x, y0, x, y1);
+            assertEquals(column[0], query.lineMean(x, y0, x, y1), TOLERANCE);
+            assertEquals(column[1], query.lineMax(x, y0, x, y1), 0);
+        }
+    }
+
+    /**
+     * Mean and max of the valid pixels nearest to the exact line, one per step along the longer axis, skipping the
+     * ones outside the frame. The longer axis has to span an odd number of pixels, so no point is halfway between two.
+     */
+    private static double[] nearestPixels(double[] frame, int width, int height, int x0, int y0, int x1, int y1) {
+        int steps = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+        double sum = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int i = 0; i <= steps; i++) {
+            int x = (int) Math.round(x0 + (double) (x1 - x0) * i / steps);
+            int y = (int) Math.round(y0 + (double) (y1 - y0) * i / steps);
+            if (x < 0 || x >= width || y < 0 || y >= height) {
+                continue;
+            }
+            double temperature = frame[x + y * width];
+            if (!Double.isNaN(temperature)) {
+                sum += temperature;
+                max = Math.max(max, temperature);
+                count++;
+            }
+        }
+        return count == 0 ? new double[]{Double.NaN, Double.NaN} : new double[]{sum / count, max};
+    }
+
+    @Test
+    public void slantedLinesSampleTheNearestPixels() {
+        Random random = new Random(29);
+        int width = 60;
+        int height = 45;
+        double[] frame = frame(random, width, height);
+        TemperatureQuery query = new TemperatureQuery().build(frame, width, height);
+
+        int checked = 0;
+        while (checked < 500) {
+            //Ends up to 10 pixels outside the frame
+            int x0 = random.nextInt(width + 20) - 10;
+            int y0 = random.nextInt(height + 20) - 10;
+            int x1 = random.nextInt(width + 20) - 10;
+            int y1 = random.nextInt(height + 20) - 10;
+            int dx = Math.abs(x1 - x0);
+            int dy = Math.abs(y1 - y0);
+            if (dx == 0 || dy == 0 || Math.max(dx, dy) % 2 == 0) {
+                continue;
+            }
+            double[] expected = nearestPixels(frame, width, height, x0, y0, x1, y1);
+            String message = "(" + x0 + ", " + y0 + ")-(" + x1 + ", " + y1 + ")";
+            assertEquals(message, expected[0], query.lineMean(x0, y0, x1, y1), TOLERANCE);
+            assertEquals(message, expected[1], query.lineMax(x0, y0, x1, y1), 0);
+            //The same pixels walked the other way
+            assertEquals(message, expected[0], query.lineMean(x1, y1, x0, y0), TOLERANCE);
+            checked++;
+        }
+    }
+
+    @Test
+    public void diagonalCoversOnePixelPerRow() {
+        int width = 16;
+        int height = 16;
+        double[] frame = new double[width * height];
+        for (int i = 0; i < width; i++) {
+            frame[i + i * width] = 30 + i;
+        }
+        TemperatureQuery query = new TemperatureQuery().build(frame, width, height);
+
+        //30 + 0..15, every other pixel of the frame is 0
+        assertEquals(37.5, query.lineMean(0, 0, width - 1, height - 1), TOLERANCE);
+        assertEquals(45, query.lineMax(0, 0, width - 1, height - 1), 0);
+        //Clipped to the frame at both ends
+        assertEquals(37.5, query.lineMean(-4, -4, width + 3, height + 3), TOLERANCE);
+        assertEquals(0, query.lineMax(0, height - 1, width - 1, 0), 0);
+    }
+}
@@ -0,0 +1,169 @@
+package com.samples.flironecamera;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The payloads the simulated devices send, encoded once up front so the load generator measures the server and not
+ * its own encoder. Every frame is rendered with the app's {@link TemperatureConverter} and its default range,
+ * compressed to a JPEG at the app's quality and kept together with its scene statistics and its radiometric record.
+ * <p>
+ * The JPEG is sent as both the photo and the thermal image, like the app does for sources without a visual camera.
+ * Radiometric records are a keyframe every 10 frames and deltas in between, as the app's uploader sends them; the
+ * device id inside the records is the same for every device, the device_id part is not.
+ */
+final class LoadFrames {
+
+    //Default range and uploader settings of the app, see CameraSession and MainActivity
+    private static final double MIN_TEMPERATURE = 30.0;
+    private static final double MAX_TEMPERATURE = 45.0;
+    private static final float JPEG_QUALITY = 1f;
+    private static final int KEYFRAME_INTERVAL = 10;
+    private static final int TOLERANCE = 5;
+    private static final String DEVICE_ID = "loadtest";
+
+    static final class Frame {
+        final byte[] jpeg;
+        final byte[] statistics;
+        final byte[] radiometric;
+        final int minTemp, maxTemp;
+
+        Frame(byte[] jpeg, byte[] statistics, byte[] radiometric, int minTemp, int maxTemp) {
+            this.jpeg = jpeg;
+            this.statistics = statistics;
+            this.radiometric = radiometric;
+            this.minTemp = minTemp;
+            this.maxTemp = maxTemp;
+        }
+    }
+
+    private final List<Frame> frames;
+    private final long imageBytes, radiometricBytes;
+
+    private LoadFrames(List<Frame> frames) {
+        this.frames = frames;
+        long image = 0, radiometric = 0;
+        for (Frame frame : frames) {
+            image += 2 * frame.jpeg.length + frame.statistics.length;
+            radiometric += frame.radiometric.length;
+        }
+        this.imageBytes = image / frames.size();
+        this.radiometricBytes = radiometric / frames.size();
+    }
+
+    /**
+     * {@code count} frames of a {@link SyntheticFrameSource} a tenth of a second apart
+     */
+    static LoadFrames synthetic(int width, int height, int count, long seed) throws IOException {
+        SyntheticFrameSource source = new SyntheticFrameSource(width, height, 0, 3, 0.05, 0.5, seed);
+        List<FrameSource.Frame> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.add(new FrameSource.TemperatureFrame(source.next(0.1, i * 100), width, height, i * 100L));
+        }
+        return encode(frames);
+    }
+
+    /**
+     * The first {@code count} frames of a recording, from the start again if it holds fewer
+     */
+    static LoadFrames recorded(File file, int count) throws IOException {
+        List<FrameSource.Frame> frames = new ArrayList<>(count);
+        CountDownLatch done = new CountDownLatch(1);
+        RecordedFrameSource source = new RecordedFrameSource(file, 0, true);
+        source.start(frame -> {
+            synchronized (frames) {
+                if (frames.size() < count) {
+                    frames.add(new FrameSource.TemperatureFrame(frame.getTemperatures(), frame.getWidth(),
+                            frame.getHeight(), frame.getTimestamp()));
+                } else {
+                    done.countDown();
+                }
+            }
+        });
+        try {
+            if (!done.await(60, TimeUnit.SECONDS)) {
+                throw new IOException("Reading " + file + " timed out");
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted reading " + file, e);
+        } finally {
+            source.stop();
+        }
+        if (source.getError() != null) {
+            throw source.getError();
+        }
+        return encode(frames);
+    }
+
+    private static LoadFrames encode(List<FrameSource.Frame> sourceFrames) throws IOException {
+        TemperatureConverter converter = new TemperatureConverter(MIN_TEMPERATURE, MAX_TEMPERATURE);
+        FrameStatistics statistics = new FrameStatistics();
+        DeltaFrameEncoder radiometricEncoder = new DeltaFrameEncoder(KEYFRAME_INTERVAL, TOLERANCE);
+        List<Frame> frames = new ArrayList<>(sourceFrames.size());
+        int sequence = 0;
+        for (FrameSource.Frame source : sourceFrames) {
+            int width = source.getWidth();
+            int height = source.getHeight();
+            double[] temperatures = source.getTemperatures();
+            int[] pixels = new int[width * height];
+            converter.convert(temperatures, pixels, width, height, statistics);
+
+            ByteArrayOutputStream radiometric = new ByteArrayOutputStream();
+            radiometricEncoder.encode(temperatures, width, height, source.getTimestamp(), sequence++, DEVICE_ID, radiometric);
+            frames.add(new Frame(jpeg(pixels, width, height), statistics.snapshot().toJson().getBytes(UTF_8),
+                    radiometric.toByteArray(), (int) MIN_TEMPERATURE, (int) MAX_TEMPERATURE));
+        }
+        converter.shutdown();
+        return new LoadFrames(frames);
+    }
+
+    private static byte[] jpeg(int[] pixels, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    Frame get(long index) {
+        return frames.get((int) (index % frames.size()));
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    /**
+     * Average size of an image upload, both JPEGs and the statistics
+     */
+    long getImageBytes() {
+        return imageBytes;
+    }
+
+    long getRadiometricBytes() {
+        return radiometricBytes;
+    }
+}
@@ -0,0 +1,245 @@
+package com.samples.flironecamera;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import retrofit2.Retrofit;
+import retrofit2.converter.scalars.ScalarsConverterFactory;
+
+/**
+ * Command line load test of the ingest server: {@code --devices} simulated phones, each with its own device_id and
+ * HTTP client, upload frames through {@link ApiServices} at {@code --rate} per second for {@code --duration}
+ * seconds. Prints throughput, error rate and latency percentiles every {@code --report} seconds and for the whole run.
+ * <p>
+ * Options, with their defaults:
+ * <pre>
+ * --url http://localhost:8000/   ingest server, eg a {@link StandInServer}
+ * --devices 10
+ * --rate 0.5                     uploads per second per device, the app's default send frequency
+ * --fixed                        keep the rate instead of adapting it like the app
+ * --max-in-flight 2              uploads a device waits for before it skips a tick
+ * --target-rtt 1000              ms, slower responses lower an adaptive rate
+ * --endpoint image               image for api/image/, radiometric for api/radiometric/
+ * --batch 1                      frames per request, more are sent together to api/image/batch/
+ * --batch-delay 2000             ms a batch that doesn't fill up waits for more frames
+ * --recording FILE               send frames of a recording instead of synthetic ones
+ * --size 480x640                 synthetic frame size
+ * --frames 30                    distinct frames, every device cycles through them
+ * --duration 60                  seconds
+ * --report 5                     seconds between reports
+ * </pre>
+ * A batching device holds an in-flight slot per frame, so like the app it allows at least {@code 2 * batch} frames in
+ * flight and waits {@code batch-delay} longer for a response before it slows down. Run the same load with
+ * {@code --batch 1} and {@code --batch 8} to compare requests per second, bytes on the wire and client CPU per frame.
+ */
+public final class LoadGenerator {
+
+    private String url = "http://localhost:8000/";
+    private int devices = 10;
+    private double rate = 0.5;
+    private boolean adaptive = true;
+    private int maxInFlight = 2;
+    private long targetRttMillis = 1000;
+    private boolean radiometric;
+    private int batchFrames = 1;
+    private long batchDelayMillis = 2000;
+    private File recording;
+    private int width = 480, height = 640;
+    private int frameCount = 30;
+    private long durationSeconds = 60;
+    private long reportSeconds = 5;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        generator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--fixed")) {
+                adaptive = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--url":
+                    url = value.endsWith("/") ? value : value + "/";
+                    break;
+                case "--devices":
+                    devices = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--max-in-flight":
+                    maxInFlight = Integer.parseInt(value);
+                    break;
+                case "--target-rtt":
+                    targetRttMillis = Long.parseLong(value);
+                    break;
+                case "--endpoint":
+                    if (!value.equals("image") && !value.equals("radiometric")) {
+                        throw new IllegalArgumentException("Unknown endpoint " + value + ", image or radiometric");
+                    }
+                    radiometric = value.equals("radiometric");
+                    break;
+                case "--batch":
+                    batchFrames = Integer.parseInt(value);
+                    break;
+                case "--batch-delay":
+                    batchDelayMillis = Long.parseLong(value);
+                    break;
+                case "--recording":
+                    recording = new File(value);
+                    break;
+                case "--size":
+                    String[] size = value.split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--frames":
+                    frameCount = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "--report":
+                    reportSeconds = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (devices < 1 || rate <= 0 || maxInFlight < 1 || frameCount < 1 || batchFrames < 1 || batchDelayMillis < 1) {
+            throw new IllegalArgumentException("devices, rate, max-in-flight, frames, batch and batch-delay must be positive");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        LoadFrames frames = recording != null ? LoadFrames.recorded(recording, frameCount)
+                : LoadFrames.synthetic(width, height, frameCount, 42);
+        int deviceMaxInFlight = batchFrames > 1 ? Math.max(maxInFlight, 2 * batchFrames) : maxInFlight;
+        long deviceTargetRttMillis = batchFrames > 1 ? targetRttMillis + batchDelayMillis : targetRttMillis;
+        System.out.println(String.format(Locale.US,
+                "%d devices at %s%.2f Hz to %sapi/%s/, %d frames of %d bytes, %d in flight per device%s",
+                devices, adaptive ? "up to " : "", rate, url, batchFrames > 1 ? "image/batch" : radiometric ? "radiometric" : "image",
+                frames.size(), radiometric ? frames.getRadiometricBytes() : frames.getImageBytes(), deviceMaxInFlight,
+                batchFrames > 1 ? String.format(Locale.US, ", %s batches of %d frames or %dms",
+                        radiometric ? "radiometric" : "image", batchFrames, batchDelayMillis) : ""));
+
+        //Every device has its own connections and dispatcher limits like a phone, they share the threads
+        ExecutorService httpThreads = Executors.newCachedThreadPool(daemon("http"));
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), daemon("device"));
+        LoadStats stats = new LoadStats();
+        OkHttpClient baseClient = new OkHttpClient.Builder()
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .callTimeout(30, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .eventListener(new EventListener() {
+                    @Override
+                    public void requestHeadersEnd(Call call, Request request) {
+                        //Request line and headers as HTTP/1.1 writes them
+                        stats.wrote(request.method().length() + request.url().encodedPath().length()
+                                + (request.url().encodedQuery() != null ? request.url().encodedQuery().length() + 1 : 0)
+                                + " HTTP/1.1\r\n\r\n".length() + 1 + request.headers().byteCount());
+                    }
+
+                    @Override
+                    public void requestBodyEnd(Call call, long byteCount) {
+                        stats.wrote(byteCount);
+                    }
+                })
+                .build();
+        List<SimulatedDevice> simulated = new ArrayList<>(devices);
+        List<OkHttpClient> clients = new ArrayList<>(devices);
+        Random random = new Random();
+        long intervalMillis = (long) (1000 / rate);
+        for (int i = 0; i < devices; i++) {
+            OkHttpClient client = baseClient.newBuilder()
+                    .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                    .dispatcher(new Dispatcher(httpThreads))
+                    .build();
+            ApiServices service = new Retrofit.Builder()
+                    .baseUrl(url)
+                    .client(client)
+                    .addConverterFactory(ScalarsConverterFactory.create())
+                    .build()
+                    .create(ApiServices.class);
+            SimulatedDevice device = new SimulatedDevice(String.format(Locale.US, "loadtest-%04d", i), service, frames,
+                    radiometric, rate, adaptive, deviceMaxInFlight, deviceTargetRttMillis, batchFrames, batchDelayMillis,
+                    scheduler, stats);
+            clients.add(client);
+            simulated.add(device);
+            device.start((long) (random.nextDouble() * intervalMillis));
+        }
+
+        long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        while (System.nanoTime() < endNanos) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(reportSeconds),
+                    Math.max(1, TimeUnit.NANOSECONDS.toMillis(endNanos - System.nanoTime()))));
+            System.out.println(stats.interval() + String.format(Locale.US, " | rate=%.2f Hz", averageRate(simulated)));
+        }
+
+        for (SimulatedDevice device : simulated) {
+            device.stop();
+        }
+        //Give the last uploads their call timeout to finish
+        long drainEndNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (stats.getInFlight() > 0 && System.nanoTime() < drainEndNanos) {
+            Thread.sleep(100);
+        }
+        System.out.println(stats.summary());
+        scheduler.shutdownNow();
+        httpThreads.shutdownNow();
+        for (OkHttpClient client : clients) {
+            client.connectionPool().evictAll();
+        }
+    }
+
+    private static double averageRate(List<SimulatedDevice> devices) {
+        double sum = 0;
+        for (SimulatedDevice device : devices) {
+            sum += device.getRate();
+        }
+        return sum / devices.size();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
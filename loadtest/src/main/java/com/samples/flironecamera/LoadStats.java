@@ -0,0 +1,165 @@
+package com.samples.flironecamera;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a load test, for the whole run and for the current report interval, updated from the OkHttp threads of
+ * every simulated device.
+ * <p>
+ * Latency is the time from enqueueing a call to its response or failure, so it includes waiting for a connection.
+ * Only successful responses count in the latency histograms.
+ * <p>
+ * Payload bytes are the frames as the app encodes them. Wire bytes are what OkHttp actually writes: request lines,
+ * headers and multipart bodies. CPU is the time the whole process spent from the creation of the stats on, that is
+ * the client side of the run.
+ */
+final class LoadStats {
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong httpErrors = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    //Responses by status and failures by exception, guarded by themselves
+    private final Map<Integer, Long> statuses = new TreeMap<>();
+    private final Map<String, Long> exceptions = new TreeMap<>();
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();
+    private long intervalStartNanos = System.nanoTime();
+    private long intervalSent, intervalOk, intervalErrors, intervalBytes;
+    private final long startNanos = intervalStartNanos;
+    private final long startCpuNanos = processCpuNanos();
+
+    /**
+     * A request with {@code frameCount} frames of {@code payloadBytes} together was enqueued
+     */
+    void sent(int frameCount, long payloadBytes) {
+        sent.incrementAndGet();
+        frames.addAndGet(frameCount);
+        bytes.addAndGet(payloadBytes);
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Bytes of a request line, headers or body written to a connection
+     */
+    void wrote(long wire) {
+        wireBytes.addAndGet(wire);
+    }
+
+    /**
+     * An upload tick skipped because the device had too many uploads in flight
+     */
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void response(int status, long micros) {
+        inFlight.decrementAndGet();
+        if (status >= 200 && status < 300) {
+            ok.incrementAndGet();
+            latency.record(micros);
+            intervalLatency.record(micros);
+        } else {
+            httpErrors.incrementAndGet();
+        }
+        synchronized (statuses) {
+            statuses.merge(status, 1L, Long::sum);
+        }
+    }
+
+    void failure(Throwable t) {
+        inFlight.decrementAndGet();
+        failures.incrementAndGet();
+        synchronized (exceptions) {
+            exceptions.merge(t.getClass().getSimpleName(), 1L, Long::sum);
+        }
+    }
+
+    long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * One line for the interval since the previous call, and start a new interval
+     */
+    synchronized String interval() {
+        long now = System.nanoTime();
+        double seconds = (now - intervalStartNanos) / 1e9;
+        long sentNow = sent.get(), okNow = ok.get(), errorsNow = httpErrors.get() + failures.get(), bytesNow = bytes.get();
+        String line = String.format(Locale.US,
+                "%6.1fs sent=%.1f/s ok=%.1f/s errors=%.1f/s %.2f MB/s in flight=%d | %s",
+                (now - startNanos) / 1e9,
+                (sentNow - intervalSent) / seconds, (okNow - intervalOk) / seconds, (errorsNow - intervalErrors) / seconds,
+                (bytesNow - intervalBytes) / seconds / 1e6, inFlight.get(), percentiles(intervalLatency));
+        intervalSent = sentNow;
+        intervalOk = okNow;
+        intervalErrors = errorsNow;
+        intervalBytes = bytesNow;
+        intervalStartNanos = now;
+        intervalLatency.reset();
+        return line;
+    }
+
+    /**
+     * Totals of the whole run
+     */
+    String summary() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long sentTotal = sent.get();
+        long framesTotal = Math.max(1, frames.get());
+        long errors = httpErrors.get() + failures.get();
+        long cpuNanos = startCpuNanos < 0 ? -1 : processCpuNanos() - startCpuNanos;
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "duration=%.1fs sent=%d ok=%d http errors=%d failures=%d skipped=%d%n",
+                seconds, sentTotal, ok.get(), httpErrors.get(), failures.get(), skipped.get()));
+        builder.append(String.format(Locale.US, "throughput=%.1f req/s %.1f frames/s %.2f MB/s, error rate=%.2f%%%n",
+                ok.get() / seconds, frames.get() / seconds, bytes.get() / seconds / 1e6,
+                sentTotal > 0 ? 100.0 * errors / sentTotal : 0));
+        builder.append(String.format(Locale.US, "frames=%d (%.1f per request) payload=%d bytes per frame wire=%d bytes per frame%n",
+                frames.get(), sentTotal > 0 ? (double) frames.get() / sentTotal : 0, bytes.get() / framesTotal,
+                wireBytes.get() / framesTotal));
+        builder.append(cpuNanos < 0 ? "cpu=unknown" : String.format(Locale.US, "cpu=%.2fs %.3f ms per frame",
+                cpuNanos / 1e9, cpuNanos / 1e6 / framesTotal)).append(String.format(Locale.US, "%n"));
+        builder.append("latency ").append(percentiles(latency)).append(String.format(Locale.US, "%n"));
+        synchronized (statuses) {
+            builder.append("statuses ").append(statuses);
+        }
+        synchronized (exceptions) {
+            if (!exceptions.isEmpty()) {
+                builder.append(" failures ").append(exceptions);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * CPU time of the process, -1 when the JVM doesn't tell
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return "no responses";
+        }
+        return String.format(Locale.US, "p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                histogram.percentile(0.5) / 1e3, histogram.percentile(0.9) / 1e3, histogram.percentile(0.99) / 1e3,
+                histogram.getMaxMicros() / 1e3);
+    }
+}
@@ -0,0 +1,141 @@
+package com.samples.flironecamera;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A multipart/form-data request body split in its parts, enough of RFC 7578 for what OkHttp's
+ * {@code MultipartBody} sends: a boundary, a {@code Content-Disposition} with a name and maybe a filename, and an
+ * optional {@code Content-Type} per part. Parts keep pointing into the body, nothing is copied.
+ */
+final class MultipartForm {
+
+    static final class Part {
+        final String name;
+        final String fileName;
+        final String contentType;
+        final byte[] body;
+        final int offset, length;
+
+        Part(String name, String fileName, String contentType, byte[] body, int offset, int length) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.body = body;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        String text() {
+            return new String(body, offset, length, UTF_8);
+        }
+    }
+
+    private final Map<String, Part> parts = new LinkedHashMap<>();
+
+    /**
+     * @param contentType the request's Content-Type header
+     * @throws IOException if the body is not multipart/form-data or is cut off
+     */
+    static MultipartForm parse(String contentType, byte[] body) throws IOException {
+        String boundary = parameter(contentType, "boundary");
+        if (contentType == null || !contentType.toLowerCase(Locale.US).startsWith("multipart/form-data") || boundary == null) {
+            throw new IOException("Not multipart/form-data: " + contentType);
+        }
+        byte[] delimiter = ("--" + boundary).getBytes(ISO_8859_1);
+        byte[] nextDelimiter = ("\r\n--" + boundary).getBytes(ISO_8859_1);
+        MultipartForm form = new MultipartForm();
+        int position = indexOf(body, delimiter, 0);
+        if (position < 0) {
+            throw new IOException("No boundary in body");
+        }
+        position += delimiter.length;
+        while (true) {
+            if (position + 2 > body.length) {
+                throw new IOException("Body ends without the closing boundary");
+            }
+            if (body[position] == '-' && body[position + 1] == '-') {
+                return form;
+            }
+            //Skip the CRLF after the boundary
+            position += 2;
+            int headersEnd = indexOf(body, new byte[]{'\r', '\n', '\r', '\n'}, position);
+            if (headersEnd < 0) {
+                throw new IOException("Part without the end of its headers");
+            }
+            String name = null, fileName = null, partType = null;
+            for (String header : new String(body, position, headersEnd - position, ISO_8859_1).split("\r\n")) {
+                int colon = header.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String key = header.substring(0, colon).trim();
+                String value = header.substring(colon + 1).trim();
+                if (key.equalsIgnoreCase("Content-Disposition")) {
+                    name = parameter(value, "name");
+                    fileName = parameter(value, "filename");
+                } else if (key.equalsIgnoreCase("Content-Type")) {
+                    partType = value;
+                }
+            }
+            int start = headersEnd + 4;
+            int end = indexOf(body, nextDelimiter, start);
+            if (end < 0) {
+                throw new IOException("Part " + name + " is cut off");
+            }
+            if (name == null) {
+                throw new IOException("Part without a name");
+            }
+            form.parts.put(name, new Part(name, fileName, partType, body, start, end - start));
+            position = end + nextDelimiter.length;
+        }
+    }
+
+    Part get(String name) {
+        return parts.get(name);
+    }
+
+    Collection<Part> getParts() {
+        return parts.values();
+    }
+
+    /**
+     * {@code key=value} or {@code key="value"} out of a header value, null if absent
+     */
+    private static String parameter(String header, String key) {
+        if (header == null) {
+            return null;
+        }
+        for (String parameter : header.split(";")) {
+            parameter = parameter.trim();
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).trim().equalsIgnoreCase(key)) {
+                String value = parameter.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
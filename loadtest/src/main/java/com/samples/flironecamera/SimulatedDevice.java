@@ -0,0 +1,237 @@
+package com.samples.flironecamera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * One phone uploading frames with its own device id and its own HTTP client, paced like the app: an
+ * {@link UploadRateController} with the send frequency as its ceiling, no new upload while {@code maxInFlight} are
+ * waiting for a response. With a fixed rate the controller only limits the uploads in flight and the rate never
+ * adapts, which keeps the offered load constant.
+ * <p>
+ * With batching the frames are collected and sent with {@link ApiServices#sendBatch} like the app's FrameUploader
+ * does: when {@code batchFrames} are waiting or {@code batchDelayMillis} after the first one, whichever comes first.
+ * Every frame keeps its in-flight slot until its batch is answered.
+ */
+final class SimulatedDevice {
+
+    private static final MediaType IMAGE = MediaType.parse("image/*");
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final String deviceId;
+    private final ApiServices service;
+    private final LoadFrames frames;
+    private final boolean radiometric;
+    private final boolean adaptive;
+    private final double rate;
+    private final long fixedIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LoadStats stats;
+    private final int batchFrames;
+    private final long batchDelayMillis;
+    //Guarded by this, like the UI thread guards it in the app
+    private final UploadRateController controller;
+
+    private boolean running;
+    private long next;
+    //Frames waiting for their batch to be sent, guarded by this
+    private final List<LoadFrames.Frame> batch = new ArrayList<>();
+    private final List<Long> batchStartNanos = new ArrayList<>();
+    private int batchGeneration;
+
+    /**
+     * @param rate     uploads per second, the ceiling when {@code adaptive}
+     * @param adaptive    lower the rate when responses get slow or fail, as the app does
+     * @param batchFrames frames per request, 1 sends every frame on its own
+     */
+    SimulatedDevice(String deviceId, ApiServices service, LoadFrames frames, boolean radiometric, double rate,
+                    boolean adaptive, int maxInFlight, long targetRttMillis, int batchFrames, long batchDelayMillis,
+                    ScheduledExecutorService scheduler, LoadStats stats) {
+        this.deviceId = deviceId;
+        this.service = service;
+        this.frames = frames;
+        this.radiometric = radiometric;
+        this.adaptive = adaptive;
+        this.rate = rate;
+        this.fixedIntervalMillis = (long) (1000 / rate);
+        this.scheduler = scheduler;
+        this.stats = stats;
+        this.batchFrames = batchFrames;
+        this.batchDelayMillis = batchDelayMillis;
+        this.controller = new UploadRateController(maxInFlight, targetRttMillis, rate);
+    }
+
+    /**
+     * @param delayMillis before the first upload, spreads the devices over an interval
+     */
+    synchronized void start(long delayMillis) {
+        running = true;
+        scheduler.schedule(this::tick, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop uploading, a batch being collected is sent
+     */
+    void stop() {
+        synchronized (this) {
+            running = false;
+        }
+        flushBatch(-1);
+    }
+
+    synchronized double getRate() {
+        return adaptive ? controller.getRate() : rate;
+    }
+
+    private void tick() {
+        long intervalMillis;
+        LoadFrames.Frame frame;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            intervalMillis = adaptive ? controller.getIntervalMillis() : fixedIntervalMillis;
+            scheduler.schedule(this::tick, intervalMillis, TimeUnit.MILLISECONDS);
+            if (!controller.tryAcquire()) {
+                stats.skipped();
+                return;
+            }
+            frame = frames.get(next++);
+            if (batchFrames > 1) {
+                batch.add(frame);
+                batchStartNanos.add(System.nanoTime());
+                if (batch.size() == 1) {
+                    final int generation = batchGeneration;
+                    scheduler.schedule(() -> flushBatch(generation), batchDelayMillis, TimeUnit.MILLISECONDS);
+                }
+                if (batch.size() < batchFrames) {
+                    return;
+                }
+            }
+        }
+        if (batchFrames > 1) {
+            flushBatch(-1);
+            return;
+        }
+
+        Call<String> call;
+        long bytes;
+        if (radiometric) {
+            call = service.sendRadiometric(deviceId, radiometricPart("radiometric_frame", frame));
+            bytes = frame.radiometric.length;
+        } else {
+            call = service.sendImage(deviceId, frame.minTemp, frame.maxTemp,
+                    imagePart("photo_image", "photoImage.jpg", frame),
+                    imagePart("thermal_image", "thermalImage.jpg", frame),
+                    statisticsPart("scene_statistics", frame));
+            bytes = 2L * frame.jpeg.length + frame.statistics.length;
+        }
+        List<Long> startNanos = new ArrayList<>(1);
+        startNanos.add(System.nanoTime());
+        send(call, 1, bytes, startNanos);
+    }
+
+    /**
+     * Send the frames collected so far in one request
+     *
+     * @param generation the batch a delayed flush was scheduled for, -1 for whatever is waiting
+     */
+    private void flushBatch(int generation) {
+        List<LoadFrames.Frame> frames;
+        List<Long> startNanos;
+        synchronized (this) {
+            if (batch.isEmpty() || (generation >= 0 && generation != batchGeneration)) {
+                return;
+            }
+            frames = new ArrayList<>(batch);
+            startNanos = new ArrayList<>(batchStartNanos);
+            batch.clear();
+            batchStartNanos.clear();
+            batchGeneration++;
+        }
+
+        //The manifest of the app's UploadRecord.toBatchCall, the parts of frame i renamed to f<i>_<name>
+        StringBuilder manifest = new StringBuilder(64 + frames.size() * 96).append("{\"frames\":[");
+        List<MultipartBody.Part> parts = new ArrayList<>();
+        long bytes = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            LoadFrames.Frame frame = frames.get(i);
+            String prefix = "f" + i + "_";
+            if (i > 0) {
+                manifest.append(',');
+            }
+            manifest.append("{\"kind\":").append(radiometric ? 1 : 0)
+                    .append(",\"min_temperature\":").append(frame.minTemp)
+                    .append(",\"max_temperature\":").append(frame.maxTemp)
+                    .append(",\"parts\":[");
+            if (radiometric) {
+                manifest.append('"').append(prefix).append("radiometric_frame\"");
+                parts.add(radiometricPart(prefix + "radiometric_frame", frame));
+                bytes += frame.radiometric.length;
+            } else {
+                manifest.append('"').append(prefix).append("photo_image\",\"")
+                        .append(prefix).append("thermal_image\",\"")
+                        .append(prefix).append("scene_statistics\"");
+                parts.add(imagePart(prefix + "photo_image", "photoImage.jpg", frame));
+                parts.add(imagePart(prefix + "thermal_image", "thermalImage.jpg", frame));
+                parts.add(statisticsPart(prefix + "scene_statistics", frame));
+                bytes += 2L * frame.jpeg.length + frame.statistics.length;
+            }
+            manifest.append("]}");
+        }
+        manifest.append("]}");
+        send(service.sendBatch(deviceId, manifest.toString(), parts), frames.size(), bytes, startNanos);
+    }
+
+    /**
+     * Enqueue the call of {@code startNanos.size()} frames, every frame is answered with the time since its own tick
+     */
+    private void send(Call<String> call, int frameCount, long bytes, List<Long> startNanos) {
+        long requestStartNanos = System.nanoTime();
+        stats.sent(frameCount, bytes);
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                long now = System.nanoTime();
+                stats.response(response.code(), (now - requestStartNanos) / 1000);
+                synchronized (SimulatedDevice.this) {
+                    for (long start : startNanos) {
+                        controller.onResponse((now - start) / 1_000_000, response.isSuccessful());
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                stats.failure(t);
+                synchronized (SimulatedDevice.this) {
+                    for (int i = 0; i < startNanos.size(); i++) {
+                        controller.onFailure();
+                    }
+                }
+            }
+        });
+    }
+
+    private static MultipartBody.Part imagePart(String name, String fileName, LoadFrames.Frame frame) {
+        return MultipartBody.Part.createFormData(name, fileName, RequestBody.create(IMAGE, frame.jpeg));
+    }
+
+    private static MultipartBody.Part statisticsPart(String name, LoadFrames.Frame frame) {
+        return MultipartBody.Part.createFormData(name, "statistics.json", RequestBody.create(JSON, frame.statistics));
+    }
+
+    private static MultipartBody.Part radiometricPart(String name, LoadFrames.Frame frame) {
+        return MultipartBody.Part.createFormData(name, "frame.awrf", RequestBody.create(OCTET_STREAM, frame.radiometric));
+    }
+}
@@ -0,0 +1,257 @@
+package com.samples.flironecamera;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Local stand-in for the ingest server, accepting the multipart contract of {@link ApiServices} on its four
+ * endpoints. Every request is parsed and checked for the parts its endpoint requires, radiometric frames for a
+ * complete {@link RadiometricFrameCodec} record, and answered with a small JSON body; nothing is stored.
+ * <p>
+ * To find out how clients behave near the server's limit it can be made slower or smaller than the real one:
+ * <pre>
+ * --port 8000
+ * --threads 8        requests handled at the same time, the others queue
+ * --latency 0        ms every request takes on top of parsing
+ * --capacity 0       requests per second, more are answered 503, 0 for no limit
+ * --error-rate 0     fraction of requests answered 500
+ * --report 5         seconds between reports
+ * </pre>
+ * A missing part is answered 400, a method other than POST 405.
+ */
+public final class StandInServer {
+
+    private static final String[] IMAGE_PARTS = {"device_id", "min_temperature", "max_temperature", "photo_image", "thermal_image"};
+    private static final String[] RADIOMETRIC_PARTS = {"device_id", "radiometric_frame"};
+    private static final String[] SUBJECT_PARTS = {"device_id", "min_temperature", "max_temperature", "subject", "photo_image", "thermal_image"};
+    private static final String[] BATCH_PARTS = {"device_id", "manifest"};
+
+    private int port = 8000;
+    private int threads = 8;
+    private long latencyMillis;
+    private double capacity;
+    private double errorRate;
+    private long reportSeconds = 5;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Set<String> devices = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram handling = new LatencyHistogram();
+
+    //Token bucket of --capacity, guarded by this
+    private double tokens;
+    private long refillNanos = System.nanoTime();
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        StandInServer server = new StandInServer();
+        try {
+            server.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        server.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--latency":
+                    latencyMillis = Long.parseLong(value);
+                    break;
+                case "--capacity":
+                    capacity = Double.parseDouble(value);
+                    break;
+                case "--error-rate":
+                    errorRate = Double.parseDouble(value);
+                    break;
+                case "--report":
+                    reportSeconds = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        tokens = capacity;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 256);
+        server.createContext("/api/image/", exchange -> handle(exchange, IMAGE_PARTS));
+        server.createContext("/api/radiometric/", exchange -> handle(exchange, RADIOMETRIC_PARTS));
+        server.createContext("/api/subject/", exchange -> handle(exchange, SUBJECT_PARTS));
+        server.createContext("/api/image/batch/", exchange -> handle(exchange, BATCH_PARTS));
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.start();
+        System.out.println(String.format(Locale.US, "Listening on port %d, %d threads, latency %d ms, capacity %s, error rate %.2f",
+                port, threads, latencyMillis, capacity > 0 ? capacity + "/s" : "unlimited", errorRate));
+
+        long previousNanos = System.nanoTime();
+        long previousRequests = 0, previousBytes = 0;
+        while (true) {
+            Thread.sleep(reportSeconds * 1000);
+            long now = System.nanoTime();
+            double seconds = (now - previousNanos) / 1e9;
+            long requestsNow = requests.get(), bytesNow = bytes.get();
+            System.out.println(String.format(Locale.US,
+                    "%.1f req/s %.2f MB/s | accepted=%d rejected=%d invalid=%d failed=%d devices=%d | handling p50=%.1fms p99=%.1fms",
+                    (requestsNow - previousRequests) / seconds, (bytesNow - previousBytes) / seconds / 1e6,
+                    accepted.get(), rejected.get(), invalid.get(), failed.get(), devices.size(),
+                    handling.percentile(0.5) / 1e3, handling.percentile(0.99) / 1e3));
+            handling.reset();
+            previousNanos = now;
+            previousRequests = requestsNow;
+            previousBytes = bytesNow;
+        }
+    }
+
+    private void handle(HttpExchange exchange, String[] requiredParts) throws IOException {
+        long startNanos = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+            bytes.addAndGet(body.length);
+            if (!exchange.getRequestMethod().equals("POST")) {
+                invalid.incrementAndGet();
+                respond(exchange, 405, "method not allowed");
+                return;
+            }
+            if (!acquire()) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "over capacity");
+                return;
+            }
+            MultipartForm form;
+            try {
+                form = MultipartForm.parse(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            } catch (IOException e) {
+                invalid.incrementAndGet();
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+            String problem = check(form, requiredParts);
+            if (problem != null) {
+                invalid.incrementAndGet();
+                respond(exchange, 400, problem);
+                return;
+            }
+            devices.add(form.get("device_id").text());
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                failed.incrementAndGet();
+                respond(exchange, 500, "simulated error");
+                return;
+            }
+            accepted.incrementAndGet();
+            respond(exchange, 200, "ok");
+        } finally {
+            handling.record((System.nanoTime() - startNanos) / 1000);
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return what is wrong with the request, null if it is complete
+     */
+    private static String check(MultipartForm form, String[] requiredParts) {
+        for (String name : requiredParts) {
+            if (form.get(name) == null) {
+                return "missing part " + name;
+            }
+        }
+        MultipartForm.Part radiometric = form.get("radiometric_frame");
+        if (radiometric != null) {
+            try {
+                int length = RadiometricFrameCodec.recordLength(
+                        ByteBuffer.wrap(radiometric.body, radiometric.offset, radiometric.length).slice(), 0);
+                if (length != radiometric.length) {
+                    return "radiometric_frame is not one complete record";
+                }
+            } catch (IOException e) {
+                return "radiometric_frame: " + e.getMessage();
+            }
+        }
+        if (form.get("manifest") != null && form.getParts().size() <= 2) {
+            return "batch without frames";
+        }
+        return null;
+    }
+
+    private synchronized boolean acquire() {
+        if (capacity <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        //At most a second worth of burst
+        tokens = Math.min(capacity, tokens + (now - refillNanos) / 1e9 * capacity);
+        refillNanos = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Answer in the {@code kode}/{@code pesan} shape of the app's {@code ResponseApiModel}
+     */
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] response = String.format(Locale.US, "{\"kode\":\"%d\",\"pesan\":\"%s\"}", status, message.replace("\"", "'"))
+                .getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}